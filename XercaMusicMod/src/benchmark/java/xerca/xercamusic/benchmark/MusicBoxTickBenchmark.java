@@ -0,0 +1,75 @@
+package xerca.xercamusic.benchmark;
+
+import net.minecraft.command.Commands;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.server.FMLServerStartingEvent;
+import xerca.benchmark.TickTimeBenchmark;
+import xerca.xercamusic.common.XercaMusic;
+import xerca.xercamusic.common.block.Blocks;
+
+/**
+ * In-game harness for idle music boxes, on a server started with gradlew runBenchmarkServer.
+ * /xercamusic benchmark musicboxes &lt;count&gt; fills a layer above the world spawn, where there should be only air,
+ * with count unpowered music boxes and compares the overworld tick time with and without them.
+ * It also reports how many of them were added to the ticking tile entities, which should be none.
+ * The boxes are removed afterwards.
+ *
+ * This needs a running server world, there is no headless benchmark of the music boxes.
+ */
+@Mod.EventBusSubscriber(modid = XercaMusic.MODID)
+public class MusicBoxTickBenchmark extends TickTimeBenchmark {
+    private static final int layerWidth = 128;
+    private static final int layerY = 100;
+    private static final MusicBoxTickBenchmark instance = new MusicBoxTickBenchmark();
+
+    private int placed;
+    private int tickingBefore;
+
+    private MusicBoxTickBenchmark() {
+        super("musicboxes");
+    }
+
+    @SubscribeEvent
+    public static void onServerStarting(FMLServerStartingEvent event) {
+        event.getCommandDispatcher().register(Commands.literal("xercamusic")
+                .requires(source -> source.hasPermissionLevel(2))
+                .then(instance.command(layerWidth * layerWidth)));
+    }
+
+    @SubscribeEvent
+    public static void onTick(TickEvent.WorldTickEvent event) {
+        instance.onWorldTick(event);
+    }
+
+    private static BlockPos boxPos(ServerWorld world, int i) {
+        BlockPos spawn = world.getSpawnPoint();
+        return new BlockPos(spawn.getX() - layerWidth / 2 + i % layerWidth, layerY, spawn.getZ() - layerWidth / 2 + i / layerWidth);
+    }
+
+    @Override
+    protected int place(ServerWorld world, int count) {
+        tickingBefore = world.tickableTileEntities.size();
+        placed = count;
+        for (int i = 0; i < count; i++) {
+            world.setBlockState(boxPos(world, i), Blocks.MUSIC_BOX.getDefaultState(), 3);
+        }
+        return count;
+    }
+
+    @Override
+    protected void report(ServerWorld world, double baselineMillis, double loadedMillis) {
+        feedback(tickTimes(baselineMillis, loadedMillis, placed));
+        feedback("Ticking tile entities added: " + (world.tickableTileEntities.size() - tickingBefore));
+    }
+
+    @Override
+    protected void remove(ServerWorld world) {
+        for (int i = 0; i < placed; i++) {
+            world.removeBlock(boxPos(world, i), false);
+        }
+    }
+}
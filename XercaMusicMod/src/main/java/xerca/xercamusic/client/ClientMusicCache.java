@@ -0,0 +1,217 @@
+package xerca.xercamusic.client;
+
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercamusic.common.MusicStore;
+import xerca.xercamusic.common.XercaMusic;
+import xerca.xercamusic.common.packets.MusicDataRequestPacket;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Client side cache of encoded music sheet notes, keyed by their {@link MusicStore} hash.
+ * Misses are looked up in the on-disk cache first and then requested from the server,
+ * a few hashes per tick. The cache is content addressed, so it is shared by all worlds and servers.
+ *
+ * A hash the server did not have, or did not answer in time, can be requested again after a delay that doubles with each miss,
+ * or as soon as the server shares it again with a music box or music spirit.
+ */
+@OnlyIn(Dist.CLIENT)
+@Mod.EventBusSubscriber(modid = XercaMusic.MODID, value = Dist.CLIENT)
+public class ClientMusicCache {
+    private static final int requestsPerTick = 8;
+    private static final int maxInFlight = 32;
+    private static final int requestTimeoutTicks = 200;
+    private static final int firstRetryTicks = 20;
+    private static final int maxRetryTicks = 1200;
+    private static final Pattern hashPattern = Pattern.compile("[0-9a-f]{64}");
+
+    private static final Map<String, byte[]> memory = new ConcurrentHashMap<>();
+    // Hashes that are being loaded from disk or fetched
+    private static final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private static final Queue<String> fetchQueue = new ConcurrentLinkedQueue<>();
+    // Tick each hash was requested at
+    private static final Map<String, Integer> inFlight = new ConcurrentHashMap<>();
+    // Hashes that were missed, with the tick they can be requested again at
+    private static final Map<String, Miss> misses = new ConcurrentHashMap<>();
+    private static volatile int ticks = 0;
+    private static final ExecutorService diskExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Music cache IO");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class Miss {
+        final int count;
+        final int retryTick;
+
+        Miss(int count, int retryTick) {
+            this.count = count;
+            this.retryTick = retryTick;
+        }
+    }
+
+    /**
+     * Returns the data if it is available right away, otherwise starts loading it and returns null
+     */
+    @Nullable
+    public static byte[] get(String hash) {
+        byte[] data = memory.get(hash);
+        if (data != null) {
+            return data;
+        }
+        // Integrated server
+        data = MusicStore.lookup(hash);
+        if (data != null) {
+            return data;
+        }
+        Miss miss = misses.get(hash);
+        if (miss != null && ticks < miss.retryTick) {
+            return null;
+        }
+        if (hashPattern.matcher(hash).matches() && pending.add(hash)) {
+            diskExecutor.execute(() -> loadFromDisk(hash));
+        }
+        return null;
+    }
+
+    public static void put(String hash, byte[] data) {
+        if (!hashPattern.matcher(hash).matches() || !MusicStore.hashOf(data).equals(hash)) {
+            XercaMusic.LOGGER.warn("Received music data does not match its hash " + hash);
+            return;
+        }
+        if (memory.put(hash, data) == null) {
+            diskExecutor.execute(() -> saveToDisk(hash, data));
+        }
+        misses.remove(hash);
+        pending.remove(hash);
+    }
+
+    /**
+     * Called when the server answers a request. Empty data means the server does not have it.
+     */
+    public static void onReceived(String hash, byte[] data) {
+        boolean wasInFlight = inFlight.remove(hash) != null;
+        if (data.length > 0) {
+            put(hash, data);
+        } else if (wasInFlight) {
+            XercaMusic.LOGGER.debug("Server has no music data " + hash);
+            missed(hash);
+        }
+    }
+
+    /**
+     * Called when the server sends a hash again, it has the notes in its store then, so a miss can be requested right away
+     */
+    public static void onShared(String hash) {
+        misses.remove(hash);
+    }
+
+    /**
+     * Stops waiting for the hash, the next {@link #get} after the backoff delay asks for it again
+     */
+    private static void missed(String hash) {
+        Miss miss = misses.get(hash);
+        int count = miss == null ? 0 : Math.min(miss.count + 1, 16);
+        misses.put(hash, new Miss(count, ticks + Math.min(maxRetryTicks, firstRetryTicks << count)));
+        pending.remove(hash);
+    }
+
+    private static File cacheDir() {
+        return new File(Minecraft.getInstance().gameDir, "xercamusic_cache");
+    }
+
+    private static void loadFromDisk(String hash) {
+        File file = new File(cacheDir(), hash);
+        if (file.isFile()) {
+            try {
+                byte[] data = Files.readAllBytes(file.toPath());
+                if (MusicStore.hashOf(data).equals(hash)) {
+                    memory.put(hash, data);
+                    misses.remove(hash);
+                    pending.remove(hash);
+                    return;
+                }
+                XercaMusic.LOGGER.warn("Corrupt music cache file " + file);
+            } catch (IOException e) {
+                XercaMusic.LOGGER.warn("Could not read music cache file " + file + ": " + e);
+            }
+        }
+        fetchQueue.add(hash);
+    }
+
+    private static void saveToDisk(String hash, byte[] data) {
+        File dir = cacheDir();
+        File file = new File(dir, hash);
+        if (file.isFile()) {
+            return;
+        }
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+            Files.write(file.toPath(), data);
+        } catch (IOException e) {
+            XercaMusic.LOGGER.warn("Could not write music cache file " + file + ": " + e);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || Minecraft.getInstance().getConnection() == null) {
+            return;
+        }
+        final int now = ++ticks;
+        // Requests the server dropped are missed too
+        inFlight.entrySet().removeIf(entry -> {
+            if (now - entry.getValue() > requestTimeoutTicks) {
+                missed(entry.getKey());
+                return true;
+            }
+            return false;
+        });
+        if (fetchQueue.isEmpty()) {
+            return;
+        }
+        List<String> hashes = new ArrayList<>(requestsPerTick);
+        while (hashes.size() < requestsPerTick && inFlight.size() < maxInFlight) {
+            String hash = fetchQueue.poll();
+            if (hash == null) {
+                break;
+            }
+            if (inFlight.putIfAbsent(hash, now) == null) {
+                hashes.add(hash);
+            }
+        }
+        if (!hashes.isEmpty()) {
+            XercaMusic.NETWORK_HANDLER.sendToServer(new MusicDataRequestPacket(hashes));
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        // Requests do not survive the connection, try again on the next server
+        pending.clear();
+        fetchQueue.clear();
+        inFlight.clear();
+        misses.clear();
+    }
+}
@@ -6,7 +6,9 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.SoundEvent;
 import net.minecraft.util.text.TranslationTextComponent;
+import net.minecraft.world.World;
 import net.minecraftforge.fml.client.registry.RenderingRegistry;
+import xerca.xercamusic.common.BeatListener;
 import xerca.xercamusic.common.Proxy;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.entity.Entities;
@@ -15,6 +17,8 @@ import xerca.xercamusic.common.item.ItemInstrument;
 import xerca.xercamusic.common.item.ItemMusicSheet;
 import xerca.xercamusic.common.packets.MusicEndedPacket;
 
+import javax.annotation.Nullable;
+
 public class ClientProxy implements Proxy {
 
     public void preInit() {
@@ -53,6 +57,16 @@ public class ClientProxy implements Proxy {
         return sound;
     }
 
+    @Override
+    public void startMusic(Object key, World world, long startTime, int pause, int length, BeatListener listener) {
+        MusicSequencer.start(key, world, startTime, pause, length, listener);
+    }
+
+    @Override
+    public void stopMusic(Object key) {
+        MusicSequencer.stop(key);
+    }
+
     @Override
     public void endMusic(int spiritID, int playerID) {
         if (playerID == Minecraft.getInstance().player.getEntityId()) {
@@ -60,4 +74,15 @@ public class ClientProxy implements Proxy {
             XercaMusic.NETWORK_HANDLER.sendToServer(pack);
         }
     }
+
+    @Nullable
+    @Override
+    public byte[] getMusicData(String hash) {
+        return ClientMusicCache.get(hash);
+    }
+
+    @Override
+    public void onMusicShared(String hash) {
+        ClientMusicCache.onShared(hash);
+    }
 }
@@ -18,6 +18,7 @@ import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 import org.apache.commons.lang3.ArrayUtils;
 import org.lwjgl.glfw.GLFW;
+import xerca.xercamusic.common.MusicCodec;
 import xerca.xercamusic.common.SoundEvents;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.item.ItemInstrument;
@@ -143,7 +144,7 @@ public class GuiMusicSheet extends Screen {
         super(title);
         this.editingPlayer = player;
         if (noteTag != null && !noteTag.isEmpty()) {
-            byte[] nbtMusic = noteTag.getByteArray("music");
+            byte[] nbtMusic = MusicCodec.readMusic(noteTag);
             this.length = noteTag.getInt("length");
             this.pause = noteTag.getByte("pause");
             this.isSigned = noteTag.getInt("generation") > 0;
@@ -158,7 +159,9 @@ public class GuiMusicSheet extends Screen {
                 this.selfSigned = true;
             }
 
-            this.music =  Arrays.copyOfRange(nbtMusic, 0, totalBeats);
+            if(nbtMusic != null){
+                this.music = Arrays.copyOfRange(nbtMusic, 0, totalBeats);
+            }
         } else {
             this.isSigned = false;
         }
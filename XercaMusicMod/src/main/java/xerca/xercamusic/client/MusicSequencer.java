@@ -0,0 +1,158 @@
+package xerca.xercamusic.client;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.network.play.ClientPlayNetHandler;
+import net.minecraft.client.network.play.NetworkPlayerInfo;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.World;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercamusic.common.BeatListener;
+import xerca.xercamusic.common.XercaMusic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times the beats of music boxes and music spirits against the monotonic system clock instead of counting game ticks,
+ * so notes land on time between ticks and the tempo does not drop with the tick rate.
+ * Music starts at a game time given by the server, converted to the system clock once when it starts.
+ * The game time of the client trails the server by the time its updates take to arrive, half of the ping,
+ * which is added back so music started together on the server plays together on every client.
+ *
+ * Beats are checked every frame on the render thread, as sounds can only be played from there.
+ * Beats that became due since the last frame are all played, so fast music keeps its notes at low frame rates.
+ * Only after a stall that left more than {@link #maxLateBeats} beats due, the music jumps to the beat that is due now
+ * instead of rushing through the notes it missed.
+ */
+@OnlyIn(Dist.CLIENT)
+@Mod.EventBusSubscriber(modid = XercaMusic.MODID, value = Dist.CLIENT)
+public class MusicSequencer {
+    private static final long nanosPerTick = 50_000_000L;
+    private static final long maxJoinLateNanos = 100_000_000L;
+    private static final int maxLateBeats = 8;
+    private static final int maxLatencyMillis = 1000;
+
+    // Only used on the render thread
+    private static final Map<Object, Track> tracks = new HashMap<>();
+    private static long lastUpdate = System.nanoTime();
+
+    private static class Track {
+        final World world;
+        final long beatNanos;
+        final int length;
+        final BeatListener listener;
+        long startNanos;
+        int nextBeat = 0;
+
+        Track(World world, long startNanos, long beatNanos, int length, BeatListener listener) {
+            this.world = world;
+            this.startNanos = startNanos;
+            this.beatNanos = beatNanos;
+            this.length = length;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Starts playing music that started at the game time startTime, with a beat every pause ticks.
+     * Replaces the music that was playing for the key.
+     */
+    public static void start(Object key, World world, long startTime, int pause, int length, BeatListener listener) {
+        if (pause <= 0) {
+            XercaMusic.LOGGER.error("Tried to play music with pause " + pause);
+            return;
+        }
+        double now = world.getGameTime() + Minecraft.getInstance().getRenderPartialTicks() + latencyMillis() / 50.0;
+        long nanoTime = System.nanoTime();
+        long startNanos = nanoTime - (long) ((now - startTime) * nanosPerTick);
+        Track track = new Track(world, startNanos, pause * nanosPerTick, length, listener);
+        // Music joined late starts at the first beat that is not too late, instead of going through every missed beat at once
+        long missedNanos = nanoTime - maxJoinLateNanos - startNanos;
+        if (missedNanos > 0) {
+            track.nextBeat = (int) Math.min(length, (missedNanos + track.beatNanos - 1) / track.beatNanos);
+        }
+        tracks.put(key, track);
+    }
+
+    /**
+     * Estimated time the game time updates of the server take to arrive
+     */
+    private static int latencyMillis() {
+        Minecraft minecraft = Minecraft.getInstance();
+        ClientPlayNetHandler connection = minecraft.getConnection();
+        if (connection == null || minecraft.player == null) {
+            return 0;
+        }
+        NetworkPlayerInfo info = connection.getPlayerInfo(minecraft.player.getUniqueID());
+        if (info == null) {
+            return 0;
+        }
+        return MathHelper.clamp(info.getResponseTime() / 2, 0, maxLatencyMillis);
+    }
+
+    public static void stop(Object key) {
+        tracks.remove(key);
+    }
+
+    @SubscribeEvent
+    public static void onRenderTick(TickEvent.RenderTickEvent event) {
+        if (event.phase == TickEvent.Phase.START) {
+            update();
+        }
+    }
+
+    private static void update() {
+        final long now = System.nanoTime();
+        final long elapsed = now - lastUpdate;
+        lastUpdate = now;
+        if (tracks.isEmpty()) {
+            return;
+        }
+        Minecraft minecraft = Minecraft.getInstance();
+        // The game clock stops while the game is paused, so does the music
+        final boolean paused = minecraft.isGamePaused();
+        List<BeatListener> ended = new ArrayList<>();
+        Iterator<Track> iterator = tracks.values().iterator();
+        while (iterator.hasNext()) {
+            Track track = iterator.next();
+            if (track.world != minecraft.world) {
+                iterator.remove();
+                continue;
+            }
+            if (paused) {
+                track.startNanos += elapsed;
+                continue;
+            }
+            while (true) {
+                long due = track.startNanos + track.nextBeat * track.beatNanos;
+                if (due > now) {
+                    break;
+                }
+                if (track.nextBeat >= track.length) {
+                    iterator.remove();
+                    ended.add(track.listener);
+                    break;
+                }
+                // Beats due after this one
+                long behind = (now - due) / track.beatNanos;
+                if (behind >= maxLateBeats) {
+                    track.nextBeat = (int) Math.min(track.length, track.nextBeat + behind);
+                    continue;
+                }
+                track.listener.onBeat(track.nextBeat);
+                track.nextBeat++;
+            }
+        }
+        // Listeners may stop other music when they end
+        for (BeatListener listener : ended) {
+            listener.onEnd();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package xerca.xercamusic.common;
+
+/**
+ * Music that the client plays through {@link Proxy#startMusic}, told when each of its beats is due
+ */
+public interface BeatListener {
+    /**
+     * Plays the note of the beat, called on the render thread
+     */
+    void onBeat(int beat);
+
+    /**
+     * Called once the last beat is over, unless the music was stopped
+     */
+    void onEnd();
+}
@@ -0,0 +1,175 @@
+package xerca.xercamusic.common;
+
+import net.minecraft.nbt.CompoundNBT;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Sparse encoding of music sheet notes as note events, so rests cost nothing.
+ *
+ * Layout (version 1):
+ *   byte    version
+ *   varint  event count
+ *   per event: varint beats since the previous event (since the start for the first one), byte note
+ *
+ * In memory, music is a dense array with one byte per beat where 0 means rest.
+ */
+public class MusicCodec {
+    public static final byte VERSION = 1;
+    // Beats on a music sheet
+    public static final int MAX_LENGTH = 240;
+
+    // NBT key of the encoded notes. "music" is the legacy dense byte array key.
+    public static final String TAG_KEY = "notes";
+    public static final String LEGACY_TAG_KEY = "music";
+
+    /**
+     * Encodes the first length beats of dense music
+     */
+    public static byte[] encode(byte[] music, int length) {
+        length = Math.min(length, music.length);
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (music[i] != 0) {
+                count++;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2 + count * 2);
+        out.write(VERSION);
+        writeVarInt(out, count);
+        int last = 0;
+        for (int i = 0; i < length; i++) {
+            if (music[i] != 0) {
+                writeVarInt(out, i - last);
+                out.write(music[i]);
+                last = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes notes written by {@link #encode} into a dense array of maxLength beats.
+     * Returns null if the data is malformed, of an unknown version, or has notes after maxLength.
+     */
+    @Nullable
+    public static byte[] decode(byte[] data, int maxLength) {
+        int[] pos = {0};
+        try {
+            if (readByte(data, pos) != VERSION) {
+                return null;
+            }
+            int count = readVarInt(data, pos);
+            if (count < 0 || count > maxLength) {
+                return null;
+            }
+            byte[] music = new byte[maxLength];
+            int time = 0;
+            for (int i = 0; i < count; i++) {
+                int delta = readVarInt(data, pos);
+                time += delta;
+                if (delta < 0 || (i > 0 && delta == 0) || time >= maxLength) {
+                    return null;
+                }
+                byte note = readByte(data, pos);
+                if (note == 0) {
+                    return null;
+                }
+                music[time] = note;
+            }
+            return music;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Upper bound of the encoded size of music with the given length
+     */
+    public static int maxEncodedSize(int length) {
+        return 1 + 5 + length * 6;
+    }
+
+    public static boolean hasMusic(@Nullable CompoundNBT tag) {
+        return tag != null && (tag.contains(TAG_KEY, 7) || tag.contains(MusicStore.HASH_KEY, 8) || tag.contains(LEGACY_TAG_KEY, 7));
+    }
+
+    /**
+     * Reads the music of a sheet tag as a dense array of MAX_LENGTH beats, accepting the encoded and the legacy dense format,
+     * and on clients a {@link MusicStore} hash. Returns null if the tag has no (valid) music, or its notes are being fetched.
+     */
+    @Nullable
+    public static byte[] readMusic(@Nullable CompoundNBT tag) {
+        if (tag == null) {
+            return null;
+        }
+        if (tag.contains(TAG_KEY, 7)) {
+            byte[] music = decode(tag.getByteArray(TAG_KEY), MAX_LENGTH);
+            if (music == null) {
+                XercaMusic.LOGGER.warn("Invalid encoded notes in music sheet " + tag.getString("title"));
+            }
+            return music;
+        }
+        if (tag.contains(MusicStore.HASH_KEY, 8)) {
+            // Null while the client is still fetching the notes
+            byte[] data = XercaMusic.proxy.getMusicData(tag.getString(MusicStore.HASH_KEY));
+            return data == null ? null : decode(data, MAX_LENGTH);
+        }
+        if (tag.contains(LEGACY_TAG_KEY, 7)) {
+            byte[] legacy = tag.getByteArray(LEGACY_TAG_KEY);
+            byte[] music = new byte[MAX_LENGTH];
+            System.arraycopy(legacy, 0, music, 0, Math.min(legacy.length, MAX_LENGTH));
+            return music;
+        }
+        return null;
+    }
+
+    public static void writeMusic(CompoundNBT tag, byte[] music, int length) {
+        tag.putByteArray(TAG_KEY, encode(music, length));
+        tag.remove(LEGACY_TAG_KEY);
+    }
+
+    /**
+     * Converts a legacy dense "music" array in the tag to the encoded format, in place.
+     * Returns true if the tag was changed.
+     */
+    public static boolean migrate(@Nullable CompoundNBT tag) {
+        if (tag != null && !tag.contains(TAG_KEY, 7) && tag.contains(LEGACY_TAG_KEY, 7)) {
+            byte[] music = readMusic(tag);
+            writeMusic(tag, music, MAX_LENGTH);
+            return true;
+        }
+        return false;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & -128) != 0) {
+            out.write(value & 127 | 128);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static byte readByte(byte[] data, int[] pos) {
+        if (pos[0] >= data.length) {
+            throw new IndexOutOfBoundsException("Unexpected end of note data");
+        }
+        return data[pos[0]++];
+    }
+
+    private static int readVarInt(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift >= 35) {
+                throw new IndexOutOfBoundsException("VarInt too big");
+            }
+            b = readByte(data, pos);
+            value |= (b & 127) << shift;
+            shift += 7;
+        } while ((b & 128) != 0);
+        return value;
+    }
+}
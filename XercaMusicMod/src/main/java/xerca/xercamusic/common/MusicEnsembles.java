@@ -0,0 +1,67 @@
+package xerca.xercamusic.common;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IWorld;
+import net.minecraft.world.World;
+import xerca.xercamusic.common.tile_entity.TileEntityMetronome;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Powered metronomes of a world and the beat grid they keep, so music started near one of them plays in time with it.
+ * Music boxes and music spirits in range of a metronome with their tempo start on the next beat of the metronome,
+ * a few ticks ahead so that every client learns the start time before it comes.
+ * Everything in a band then shares a start game time, whoever started it and whatever their latency.
+ */
+public class MusicEnsembles {
+    private static final Map<IWorld, MusicEnsembles> ensemblesByWorld = new WeakHashMap<>();
+    // Ticks between starting music in an ensemble and its first beat
+    private static final int leadTicks = 4;
+
+    // Game time of the first beat of each powered metronome and its pause, by position
+    private final Map<BlockPos, long[]> metronomes = new HashMap<>();
+
+    public static MusicEnsembles get(World world) {
+        return ensemblesByWorld.computeIfAbsent(world, w -> new MusicEnsembles());
+    }
+
+    public static void remove(IWorld world) {
+        ensemblesByWorld.remove(world);
+    }
+
+    public void putMetronome(BlockPos pos, long origin, int pause) {
+        long[] metronome = metronomes.get(pos);
+        if (metronome == null) {
+            metronomes.put(pos.toImmutable(), new long[]{origin, pause});
+        } else {
+            metronome[0] = origin;
+            metronome[1] = pause;
+        }
+    }
+
+    public void removeMetronome(BlockPos pos) {
+        metronomes.remove(pos);
+    }
+
+    /**
+     * Returns the game time at which music with a beat every pause ticks, started now at pos, should start.
+     * That is the next beat of a metronome in range with the same pause, or now if there is none.
+     */
+    public long startTime(BlockPos pos, int pause, long now) {
+        for (Map.Entry<BlockPos, long[]> entry : metronomes.entrySet()) {
+            BlockPos metronomePos = entry.getKey();
+            long[] metronome = entry.getValue();
+            if (metronome[1] == pause
+                    && Math.abs(pos.getX() - metronomePos.getX()) <= TileEntityMetronome.halfRange.getX()
+                    && Math.abs(pos.getY() - metronomePos.getY()) <= TileEntityMetronome.halfRange.getY()
+                    && Math.abs(pos.getZ() - metronomePos.getZ()) <= TileEntityMetronome.halfRange.getZ()) {
+                long earliest = now + leadTicks - metronome[0];
+                long beats = (earliest + pause - 1) / pause;
+                return metronome[0] + Math.max(beats, 0) * pause;
+            }
+        }
+        return now;
+    }
+}
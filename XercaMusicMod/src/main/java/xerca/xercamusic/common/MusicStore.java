@@ -0,0 +1,111 @@
+package xerca.xercamusic.common;
+
+import com.google.common.hash.Hashing;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.World;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Encoded music sheet notes by the hash of their content, so music boxes and music spirits send clients the hash only.
+ * Clients fetch the notes of a hash they do not have once, copies of a sheet all share the same hash.
+ *
+ * Sheet items keep their notes, the store only holds the notes the server has sent a hash of.
+ * Clients only ask for hashes the server sent them, so the store does not need to be saved and is rebuilt after a restart.
+ * For the same reason it can forget the notes used least recently when it grows too large: a box or spirit
+ * that is still playing shares its sheet again with the clients that start tracking it.
+ */
+public class MusicStore {
+    private static final Map<MinecraftServer, MusicStore> stores = new WeakHashMap<>();
+    public static final String HASH_KEY = "hash";
+    private static final int maxBytes = 16*1024*1024;
+
+    // In access order, so the least recently used notes come first
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int totalBytes = 0;
+
+    public static synchronized MusicStore get(MinecraftServer server) {
+        return stores.computeIfAbsent(server, s -> new MusicStore());
+    }
+
+    @Nullable
+    public static MusicStore get(World world) {
+        if (world.isRemote || world.getServer() == null) {
+            return null;
+        }
+        return get(world.getServer());
+    }
+
+    public static String hashOf(byte[] data) {
+        return Hashing.sha256().hashBytes(data).toString();
+    }
+
+    /**
+     * Returns the encoded notes for the hash, or null if they are not in the store.
+     * Works on the logical client too when playing on the integrated server.
+     */
+    @Nullable
+    public static byte[] lookup(String hash) {
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (server == null) {
+            return null;
+        }
+        return get(server).getData(hash);
+    }
+
+    @Nullable
+    public synchronized byte[] getData(String hash) {
+        return entries.get(hash);
+    }
+
+    public String add(byte[] data) {
+        String hash = hashOf(data);
+        synchronized (this) {
+            if (entries.get(hash) == null) {
+                entries.put(hash, data);
+                totalBytes += data.length;
+                evict();
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Forgets the least recently used notes until the store fits its budget, always keeping the newest entry
+     */
+    private void evict() {
+        Iterator<byte[]> iterator = entries.values().iterator();
+        while (totalBytes > maxBytes && entries.size() > 1) {
+            totalBytes -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns what clients need to play a music sheet: the hash of its notes, its length and its pause.
+     * Returns null if the sheet has no music.
+     */
+    @Nullable
+    public CompoundNBT share(@Nullable CompoundNBT sheetTag) {
+        byte[] music = MusicCodec.readMusic(sheetTag);
+        if (music == null) {
+            return null;
+        }
+        int length = sheetTag.getInt("length");
+        CompoundNBT result = new CompoundNBT();
+        result.putString(HASH_KEY, add(MusicCodec.encode(music, length)));
+        result.putInt("length", length);
+        result.putByte("pause", sheetTag.getByte("pause"));
+        return result;
+    }
+}
@@ -2,8 +2,11 @@ package xerca.xercamusic.common;
 
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.SoundEvent;
+import net.minecraft.world.World;
 import xerca.xercamusic.client.NoteSound;
 
+import javax.annotation.Nullable;
+
 public interface Proxy {
 
     void preInit();
@@ -16,8 +19,26 @@ public interface Proxy {
 
     void endMusic(int spiritID, int playerID);
 
+    /**
+     * Plays music on the client that started at the game time startTime, with a beat every pause ticks
+     */
+    void startMusic(Object key, World world, long startTime, int pause, int length, BeatListener listener);
+
+    void stopMusic(Object key);
+
     void showMusicGui();
 
     void showInstrumentGui();
 
+    /**
+     * Returns the encoded notes for a {@link MusicStore} hash, or null if they are not available (yet)
+     */
+    @Nullable
+    byte[] getMusicData(String hash);
+
+    /**
+     * Called on the client when the server sent a {@link MusicStore} hash with a music box or music spirit
+     */
+    void onMusicShared(String hash);
+
 }
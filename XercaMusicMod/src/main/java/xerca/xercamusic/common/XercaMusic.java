@@ -9,6 +9,7 @@ import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.SoundEvent;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.RegistryEvent;
+import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.DistExecutor;
 import net.minecraftforge.fml.InterModComms;
@@ -42,7 +43,7 @@ public class XercaMusic
     public static final Logger LOGGER = LogManager.getLogger();
     public static Proxy proxy = DistExecutor.runForDist(() -> ClientProxy::new, () -> ServerProxy::new);
 
-    private static final String PROTOCOL_VERSION = Integer.toString(1);
+    private static final String PROTOCOL_VERSION = Integer.toString(4);
     public static final SimpleChannel NETWORK_HANDLER = NetworkRegistry.ChannelBuilder
             .named(new ResourceLocation(MODID, "main_channel"))
             .clientAcceptedVersions(PROTOCOL_VERSION::equals)
@@ -57,7 +58,9 @@ public class XercaMusic
         NETWORK_HANDLER.registerMessage(msg_id++, MusicEndedPacket.class, MusicEndedPacket::encode, MusicEndedPacket::decode, MusicEndedPacketHandler::handle);
         NETWORK_HANDLER.registerMessage(msg_id++, MusicBoxUpdatePacket.class, MusicBoxUpdatePacket::encode, MusicBoxUpdatePacket::decode, MusicBoxUpdatePacketHandler::handle);
         NETWORK_HANDLER.registerMessage(msg_id++, SingleNotePacket.class, SingleNotePacket::encode, SingleNotePacket::decode, SingleNotePacketHandler::handle);
-        NETWORK_HANDLER.registerMessage(msg_id, SingleNoteClientPacket.class, SingleNoteClientPacket::encode, SingleNoteClientPacket::decode, SingleNoteClientPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, SingleNoteClientPacket.class, SingleNoteClientPacket::encode, SingleNoteClientPacket::decode, SingleNoteClientPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, MusicDataRequestPacket.class, MusicDataRequestPacket::encode, MusicDataRequestPacket::decode, MusicDataRequestPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id, MusicDataPacket.class, MusicDataPacket::encode, MusicDataPacket::decode, MusicDataPacketHandler::handle);
     }
 
     public XercaMusic() {
@@ -119,6 +122,11 @@ public class XercaMusic
         return null;
     }
 
+    @SubscribeEvent
+    public void onWorldUnload(final WorldEvent.Unload event) {
+        MusicEnsembles.remove(event.getWorld());
+    }
+
     /// Remapping events for migrating saves from the old mod
 
     @SubscribeEvent
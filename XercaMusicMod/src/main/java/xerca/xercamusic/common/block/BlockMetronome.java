@@ -88,6 +88,15 @@ public class BlockMetronome extends Block {
         }
     }
 
+    /**
+     * Forwards the start and stop events of the ticking to the tile entity
+     */
+    @Override
+    public boolean eventReceived(BlockState state, World worldIn, BlockPos pos, int id, int param) {
+        TileEntity tileentity = worldIn.getTileEntity(pos);
+        return tileentity != null && tileentity.receiveClientEvent(id, param);
+    }
+
     @Override
     protected void fillStateContainer(StateContainer.Builder<Block, BlockState> builder) {
         builder.add(BPM, POWERED, FACING);
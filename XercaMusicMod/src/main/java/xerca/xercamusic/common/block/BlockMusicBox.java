@@ -21,11 +21,13 @@ import net.minecraft.util.math.BlockRayTraceResult;
 import net.minecraft.world.IBlockReader;
 import net.minecraft.world.IWorld;
 import net.minecraft.world.World;
+import net.minecraft.world.server.ServerWorld;
 import xerca.xercamusic.common.item.ItemInstrument;
 import xerca.xercamusic.common.item.Items;
 import xerca.xercamusic.common.tile_entity.TileEntityMusicBox;
 
 import javax.annotation.Nonnull;
+import java.util.Random;
 
 public class BlockMusicBox extends HorizontalBlock {
     public static final BooleanProperty POWERED = BlockStateProperties.POWERED;
@@ -55,10 +57,20 @@ public class BlockMusicBox extends HorizontalBlock {
             }
             if (powered != state.get(POWERED)) {
                 worldIn.setBlockState(pos, state.with(POWERED, powered), 2);
+                // The box only ticks when it has something to do
+                worldIn.getPendingBlockTicks().scheduleTick(pos, this, 1);
             }
         }
     }
 
+    @Override
+    public void tick(BlockState state, ServerWorld worldIn, BlockPos pos, Random rand) {
+        TileEntity tileentity = worldIn.getTileEntity(pos);
+        if (tileentity instanceof TileEntityMusicBox && ((TileEntityMusicBox) tileentity).update()) {
+            worldIn.getPendingBlockTicks().scheduleTick(pos, this, 1);
+        }
+    }
+
     private void ejectItem(World world, BlockPos pos, BlockState state, boolean isMusic, boolean isBreaking) {
         if (!world.isRemote) {
             TileEntity tileentity = world.getTileEntity(pos);
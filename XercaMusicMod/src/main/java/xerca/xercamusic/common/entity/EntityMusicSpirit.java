@@ -13,18 +13,25 @@ import net.minecraftforge.fml.common.registry.IEntityAdditionalSpawnData;
 import net.minecraftforge.fml.network.FMLPlayMessages;
 import net.minecraftforge.fml.network.NetworkHooks;
 import xerca.xercamusic.client.NoteSound;
+import xerca.xercamusic.common.BeatListener;
+import xerca.xercamusic.common.MusicCodec;
+import xerca.xercamusic.common.MusicEnsembles;
+import xerca.xercamusic.common.MusicStore;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.item.ItemInstrument;
 import xerca.xercamusic.common.item.Items;
 
-public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnData {
+public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnData, BeatListener {
     private PlayerEntity body;
     private ItemStack note;
     private ItemInstrument instrument;
     private byte[] music;
+    // Hash of the notes on the client, kept to read them once they are fetched
+    private CompoundNBT musicTag;
     private int mLength;
-    private int mTime;
     private byte mPause;
+    // Game time at which the music started playing
+    private long startTime;
     private NoteSound lastPlayed = null;
     private boolean isPlaying = true;
 
@@ -37,14 +44,15 @@ public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnD
         this.body = body;
         this.instrument = (ItemInstrument) body.getHeldItemMainhand().getItem();
         this.note = body.getHeldItemOffhand();
-        this.mTime = 0;
         this.setPosition(body.getPosX(), body.getPosY(), body.getPosZ());
-        if (note.hasTag() && note.getTag().contains("music")) {
+        if (MusicCodec.hasMusic(note.getTag())) {
             CompoundNBT comp = note.getTag();
-            music = comp.getByteArray("music");
+            music = MusicCodec.readMusic(comp);
             mLength = comp.getInt("length");
             mPause = comp.getByte("pause");
         }
+        // Start in time with a metronome nearby
+        this.startTime = MusicEnsembles.get(worldIn).startTime(body.getPosition(), mPause, worldIn.getGameTime());
     }
 
     public EntityMusicSpirit(EntityType<EntityMusicSpirit> type, World world) {
@@ -57,7 +65,7 @@ public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnD
 
     @Override
     protected void readAdditional(CompoundNBT tagCompound) {
-        this.music = tagCompound.getByteArray("music");
+        this.music = MusicCodec.readMusic(tagCompound);
         this.mLength = tagCompound.getInt("length");
         this.mPause = tagCompound.getByte("pause");
         this.isPlaying = tagCompound.getBoolean("playing");
@@ -65,7 +73,9 @@ public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnD
 
     @Override
     protected void writeAdditional(CompoundNBT tagCompound) {
-        tagCompound.putByteArray("music", this.music);
+        if (this.music != null) {
+            MusicCodec.writeMusic(tagCompound, this.music, mLength);
+        }
         tagCompound.putInt("length", mLength);
         tagCompound.putByte("pause", mPause);
         tagCompound.putBoolean("playing", isPlaying);
@@ -79,6 +89,16 @@ public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnD
     @Override
     public void writeSpawnData(PacketBuffer buffer) {
         buffer.writeInt(body != null ? body.getEntityId() : -1);
+        // Clients get the hash of the notes instead of the notes
+        MusicStore store = MusicStore.get(world);
+        if (store != null && music != null) {
+            buffer.writeString(store.add(MusicCodec.encode(music, mLength)));
+        } else {
+            buffer.writeString("");
+        }
+        buffer.writeVarInt(mLength);
+        buffer.writeByte(mPause);
+        buffer.writeLong(startTime);
     }
 
     @Override
@@ -90,14 +110,22 @@ public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnD
         }
         this.instrument = (ItemInstrument) body.getHeldItemMainhand().getItem();
         this.note = body.getHeldItemOffhand();
-        this.mTime = 0;
         this.setPosition(body.getPosX(), body.getPosY(), body.getPosZ());
-        if (note.hasTag() && note.getTag().contains("music")) {
-            CompoundNBT comp = note.getTag();
-            music = comp.getByteArray("music");
-            mLength = comp.getInt("length");
-            mPause = comp.getByte("pause");
+        this.musicTag = new CompoundNBT();
+        String hash = additionalData.readString(64);
+        if (!hash.isEmpty()) {
+            musicTag.putString(MusicStore.HASH_KEY, hash);
+            XercaMusic.proxy.onMusicShared(hash);
+        }
+        mLength = Math.min(additionalData.readVarInt(), MusicCodec.MAX_LENGTH);
+        mPause = additionalData.readByte();
+        startTime = additionalData.readLong();
+        music = MusicCodec.readMusic(musicTag);
+        if(mPause == 0){
+            System.err.println("EntityMusicSpirit mPause is 0! THIS SHOULD NOT HAPPEN!");
+            return;
         }
+        XercaMusic.proxy.startMusic(this, world, startTime, mPause, mLength, this);
     }
 
     @Override
@@ -122,27 +150,36 @@ public class EntityMusicSpirit extends Entity implements IEntityAdditionalSpawnD
         }
         super.tick();
         this.setPosition(body.getPosX(), body.getPosY(), body.getPosZ());
-        if (this.world.isRemote) {
-            if(mPause == 0){
-                System.err.println("EntityMusicSpirit mPause is 0! THIS SHOULD NOT HAPPEN!");
-                return;
-            }
-            if (this.ticksExisted % mPause == 0) {
-                if (mTime == mLength) {
-                    XercaMusic.proxy.endMusic(getEntityId(), body.getEntityId());
-                    this.remove();
-                    return;
-                }
-                if (music[mTime] != 0 && music[mTime] <= 48) {
-                    if(instrument.shouldCutOff && lastPlayed != null){
-                        lastPlayed.stopSound();
-                    }
-                    lastPlayed = XercaMusic.proxy.playNote(instrument.getSound(music[mTime] - 1), getPosX(), getPosY() + 0.5d, getPosZ());
-                    this.world.addParticle(ParticleTypes.NOTE, getPosX(), getPosY() + 2.2D, getPosZ(), (music[mTime] -1) / 24.0D, 0.0D, 0.0D);
-
-                }
-                mTime++;
+    }
+
+    @Override
+    public void onBeat(int beat) {
+        if (music == null && musicTag != null) {
+            // The notes of the hash may have arrived since the last beat
+            music = MusicCodec.readMusic(musicTag);
+        }
+        if (music != null && beat < music.length && music[beat] != 0 && music[beat] <= 48) {
+            if(instrument.shouldCutOff && lastPlayed != null){
+                lastPlayed.stopSound();
             }
+            lastPlayed = XercaMusic.proxy.playNote(instrument.getSound(music[beat] - 1), getPosX(), getPosY() + 0.5d, getPosZ());
+            this.world.addParticle(ParticleTypes.NOTE, getPosX(), getPosY() + 2.2D, getPosZ(), (music[beat] -1) / 24.0D, 0.0D, 0.0D);
+        }
+    }
+
+    @Override
+    public void onEnd() {
+        if (body != null) {
+            XercaMusic.proxy.endMusic(getEntityId(), body.getEntityId());
+        }
+        this.remove();
+    }
+
+    @Override
+    public void remove() {
+        super.remove();
+        if (this.world.isRemote) {
+            XercaMusic.proxy.stopMusic(this);
         }
     }
 
@@ -2,6 +2,7 @@ package xerca.xercamusic.common.item;
 
 import net.minecraft.block.BlockState;
 import net.minecraft.client.util.ITooltipFlag;
+import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
@@ -18,6 +19,7 @@ import net.minecraft.util.text.TextFormatting;
 import net.minecraft.world.World;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import xerca.xercamusic.common.MusicCodec;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.block.BlockMusicBox;
 import xerca.xercamusic.common.block.Blocks;
@@ -66,11 +68,19 @@ public class ItemMusicSheet extends Item {
         return super.getDisplayName(stack);
     }
 
+    @Override
+    public void inventoryTick(ItemStack stack, World worldIn, Entity entityIn, int itemSlot, boolean isSelected) {
+        // Convert sheets written before notes were encoded
+        if (!worldIn.isRemote) {
+            MusicCodec.migrate(stack.getTag());
+        }
+    }
+
     public static byte[] getMusic(@Nonnull ItemStack stack) {
         if (stack.hasTag()) {
             CompoundNBT nbttagcompound = stack.getTag();
-            if(nbttagcompound != null && nbttagcompound.contains("music")){
-                return nbttagcompound.getByteArray("music");
+            if(MusicCodec.hasMusic(nbttagcompound)){
+                return MusicCodec.readMusic(nbttagcompound);
             }
         }
         return null;
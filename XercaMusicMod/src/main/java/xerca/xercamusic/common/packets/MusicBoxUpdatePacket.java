@@ -1,34 +1,45 @@
 package xerca.xercamusic.common.packets;
 
 import net.minecraft.item.Item;
-import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.network.PacketBuffer;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.registry.Registry;
 import net.minecraftforge.registries.ForgeRegistries;
+import xerca.xercamusic.common.MusicCodec;
+import xerca.xercamusic.common.MusicStore;
 import xerca.xercamusic.common.XercaMusic;
 
+/**
+ * Sends the music and instrument of a music box to the clients. Only what the box plays is sent:
+ * the {@link MusicStore} hash of the notes, the length and the pause of the sheet.
+ * Clients fetch the notes of hashes they do not have cached.
+ * Also tells the clients when the box starts playing, with the game time the music starts at, or stops.
+ */
 public class MusicBoxUpdatePacket {
+    private static final byte NOTE_UNCHANGED = 0;
+    private static final byte NOTE_REMOVED = 1;
+    private static final byte NOTE_SET = 2;
+    private static final byte PLAY_UNCHANGED = 0;
+    private static final byte PLAY_STOPPED = 1;
+    private static final byte PLAY_STARTED = 2;
+
     private BlockPos pos;
+    // null if the note stack did not change, empty if it was removed
     private CompoundNBT noteStackNBT;
     private String instrumentId;
+    private byte playState = PLAY_UNCHANGED;
+    private long startTime;
     private boolean messageIsValid;
 
-    public MusicBoxUpdatePacket(BlockPos pos, ItemStack noteStack, Item itemInstrument) {
+    /**
+     * noteStackNBT is null if the note stack did not change, empty if it was removed,
+     * and otherwise the {@link MusicStore#share} tag of the sheet.
+     */
+    public MusicBoxUpdatePacket(BlockPos pos, CompoundNBT noteStackNBT, Item itemInstrument) {
         this.pos = pos;
-
-        if(noteStack == null){
-            this.noteStackNBT = null;
-        }
-        else{
-            if(noteStack.hasTag()){
-                this.noteStackNBT = noteStack.getTag();
-            }else{
-                this.noteStackNBT = new CompoundNBT();
-            }
-        }
+        this.noteStackNBT = noteStackNBT;
         if(itemInstrument != null){
             ResourceLocation resourcelocation = ForgeRegistries.ITEMS.getKey(itemInstrument);
             this.instrumentId =  resourcelocation == null ? "minecraft:air" : resourcelocation.toString();
@@ -37,6 +48,15 @@ public class MusicBoxUpdatePacket {
         }
     }
 
+    /**
+     * The box started playing at startTime, or stopped. The note stack is unchanged.
+     */
+    public MusicBoxUpdatePacket(BlockPos pos, Item itemInstrument, boolean playing, long startTime) {
+        this(pos, null, itemInstrument);
+        this.playState = playing ? PLAY_STARTED : PLAY_STOPPED;
+        this.startTime = startTime;
+    }
+
     public MusicBoxUpdatePacket() {
         this.messageIsValid = false;
     }
@@ -45,8 +65,31 @@ public class MusicBoxUpdatePacket {
         MusicBoxUpdatePacket result = new MusicBoxUpdatePacket();
         try {
             result.pos = buf.readBlockPos();
-            result.noteStackNBT = buf.readCompoundTag();
+            byte noteState = buf.readByte();
+            if(noteState == NOTE_UNCHANGED){
+                result.noteStackNBT = null;
+            }
+            else if(noteState == NOTE_REMOVED){
+                result.noteStackNBT = new CompoundNBT();
+            }
+            else{
+                int length = buf.readVarInt();
+                byte pause = buf.readByte();
+                if(length < 0 || length > MusicCodec.MAX_LENGTH){
+                    XercaMusic.LOGGER.error("Invalid length in MusicBoxUpdatePacket: " + length);
+                    return null;
+                }
+                String hash = buf.readString(64);
+                result.noteStackNBT = new CompoundNBT();
+                result.noteStackNBT.putString(MusicStore.HASH_KEY, hash);
+                result.noteStackNBT.putInt("length", length);
+                result.noteStackNBT.putByte("pause", pause);
+            }
             result.instrumentId = buf.readString(255);
+            result.playState = buf.readByte();
+            if(result.playState == PLAY_STARTED){
+                result.startTime = buf.readVarLong();
+            }
         } catch (IndexOutOfBoundsException ioe) {
             XercaMusic.LOGGER.error("Exception while reading MusicBoxUpdatePacket: " + ioe);
             return null;
@@ -57,8 +100,23 @@ public class MusicBoxUpdatePacket {
 
     public static void encode(MusicBoxUpdatePacket pkt, PacketBuffer buf) {
         buf.writeBlockPos(pkt.pos);
-        buf.writeCompoundTag(pkt.noteStackNBT);
+        if(pkt.noteStackNBT == null){
+            buf.writeByte(NOTE_UNCHANGED);
+        }
+        else if(pkt.noteStackNBT.isEmpty()){
+            buf.writeByte(NOTE_REMOVED);
+        }
+        else{
+            buf.writeByte(NOTE_SET);
+            buf.writeVarInt(pkt.noteStackNBT.getInt("length"));
+            buf.writeByte(pkt.noteStackNBT.getByte("pause"));
+            buf.writeString(pkt.noteStackNBT.getString(MusicStore.HASH_KEY));
+        }
         buf.writeString(pkt.instrumentId);
+        buf.writeByte(pkt.playState);
+        if(pkt.playState == PLAY_STARTED){
+            buf.writeVarLong(pkt.startTime);
+        }
     }
 
     public boolean isMessageValid() {
@@ -82,6 +140,18 @@ public class MusicBoxUpdatePacket {
         this.instrumentId = instrumentId;
     }
 
+    public boolean isStarted() {
+        return playState == PLAY_STARTED;
+    }
+
+    public boolean isStopped() {
+        return playState == PLAY_STOPPED;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
     public BlockPos getPos() {
         return pos;
     }
@@ -10,6 +10,8 @@ import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 import net.minecraftforge.fml.network.NetworkEvent;
 import net.minecraftforge.registries.ForgeRegistries;
+import xerca.xercamusic.common.MusicStore;
+import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.item.Items;
 import xerca.xercamusic.common.tile_entity.TileEntityMusicBox;
 
@@ -42,6 +44,7 @@ public class MusicBoxUpdatePacketHandler {
                     tileEntityMusicBox.removeNoteStack();
                 }
                 else{
+                    XercaMusic.proxy.onMusicShared(msg.getNoteStackNBT().getString(MusicStore.HASH_KEY));
                     ItemStack noteStack = new ItemStack(Items.MUSIC_SHEET);
                     noteStack.setTag(msg.getNoteStackNBT());
                     tileEntityMusicBox.setNoteStack(noteStack);
@@ -53,6 +56,13 @@ public class MusicBoxUpdatePacketHandler {
             }else{
                 tileEntityMusicBox.removeInstrument();
             }
+
+            if(msg.isStarted()){
+                tileEntityMusicBox.startPlaying(msg.getStartTime());
+            }
+            else if(msg.isStopped()){
+                tileEntityMusicBox.stopPlaying();
+            }
         }
     }
 }
@@ -0,0 +1,52 @@
+package xerca.xercamusic.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+import xerca.xercamusic.common.MusicCodec;
+
+/**
+ * Notes of a music sheet, sent in answer to a {@link MusicDataRequestPacket}
+ */
+public class MusicDataPacket {
+    private String hash;
+    private byte[] data;
+    private boolean messageIsValid;
+
+    public MusicDataPacket(String hash, byte[] data) {
+        this.hash = hash;
+        this.data = data;
+    }
+
+    public MusicDataPacket() {
+        this.messageIsValid = false;
+    }
+
+    public static void encode(MusicDataPacket pkt, PacketBuffer buf) {
+        buf.writeString(pkt.hash);
+        buf.writeByteArray(pkt.data);
+    }
+
+    public static MusicDataPacket decode(PacketBuffer buf) {
+        MusicDataPacket result = new MusicDataPacket();
+        try {
+            result.hash = buf.readString(64);
+            result.data = buf.readByteArray(MusicCodec.maxEncodedSize(MusicCodec.MAX_LENGTH));
+        } catch (IndexOutOfBoundsException ioe) {
+            System.err.println("Exception while reading MusicDataPacket: " + ioe);
+            return null;
+        }
+        result.messageIsValid = true;
+        return result;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean isMessageValid() {
+        return messageIsValid;
+    }
+}
@@ -0,0 +1,26 @@
+package xerca.xercamusic.common.packets;
+
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.fml.network.NetworkEvent;
+import xerca.xercamusic.client.ClientMusicCache;
+
+import java.util.function.Supplier;
+
+public class MusicDataPacketHandler {
+    public static void handle(final MusicDataPacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+
+        // The cache is thread safe, hashing and disk writes stay off the main thread
+        processMessage(message);
+        ctx.get().setPacketHandled(true);
+    }
+
+    @OnlyIn(Dist.CLIENT)
+    private static void processMessage(MusicDataPacket msg) {
+        ClientMusicCache.onReceived(msg.getHash(), msg.getData());
+    }
+}
@@ -0,0 +1,36 @@
+package xerca.xercamusic.common.packets;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraftforge.fml.network.NetworkEvent;
+import net.minecraftforge.fml.network.PacketDistributor;
+import xerca.xercamusic.common.MusicStore;
+import xerca.xercamusic.common.XercaMusic;
+
+import java.util.function.Supplier;
+
+public class MusicDataRequestPacketHandler {
+    public static void handle(final MusicDataRequestPacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+        ServerPlayerEntity sendingPlayer = ctx.get().getSender();
+        if (sendingPlayer == null) {
+            System.err.println("EntityPlayerMP was null when MusicDataRequestPacket was received");
+            return;
+        }
+
+        ctx.get().enqueueWork(() -> processMessage(message, sendingPlayer));
+        ctx.get().setPacketHandled(true);
+    }
+
+    private static void processMessage(MusicDataRequestPacket msg, ServerPlayerEntity pl) {
+        MusicStore store = MusicStore.get(pl.server);
+        for(String hash : msg.getHashes()){
+            byte[] data = store.getData(hash);
+            // Empty data tells the client to stop waiting for it
+            MusicDataPacket pack = new MusicDataPacket(hash, data == null ? new byte[0] : data);
+            XercaMusic.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> pl), pack);
+        }
+    }
+}
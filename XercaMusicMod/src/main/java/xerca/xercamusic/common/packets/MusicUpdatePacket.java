@@ -1,12 +1,12 @@
 package xerca.xercamusic.common.packets;
 
 import net.minecraft.network.PacketBuffer;
+import xerca.xercamusic.common.MusicCodec;
 import xerca.xercamusic.common.XercaMusic;
 
-import java.util.Arrays;
-
 public class MusicUpdatePacket {
-    private byte[] music;
+    // Notes in MusicCodec encoding
+    private byte[] notes;
     private int length;
     private byte pause;
     private boolean signed;
@@ -16,14 +16,14 @@ public class MusicUpdatePacket {
     private boolean messageIsValid;
 
     public MusicUpdatePacket(byte[] music, int length, byte pause, boolean signed, String title, byte prevInstrument, boolean prevInsLocked) {
-        this.music = Arrays.copyOfRange(music, 0, length);
+        this.notes = MusicCodec.encode(music, length);
         this.length = length;
         this.pause = pause;
         this.signed = signed;
         this.title = title;
         this.prevInstrument = prevInstrument;
         this.prevInsLocked = prevInsLocked;
-        XercaMusic.LOGGER.debug("MusicUpdatePacket length: " + length + " music length: " + this.music.length);
+        XercaMusic.LOGGER.debug("MusicUpdatePacket length: " + length + " encoded notes length: " + this.notes.length);
     }
 
     public MusicUpdatePacket() {
@@ -36,9 +36,16 @@ public class MusicUpdatePacket {
             result.title = buf.readString(255);
             result.signed = buf.readBoolean();
             result.pause = buf.readByte();
-            result.length = buf.readInt();
-            result.music = new byte[result.length];
-            buf.readBytes(result.music, 0, result.length);
+            result.length = buf.readVarInt();
+            if(result.length < 0 || result.length > MusicCodec.MAX_LENGTH){
+                System.err.println("Invalid length in MusicUpdatePacket: " + result.length);
+                return null;
+            }
+            result.notes = buf.readByteArray(MusicCodec.maxEncodedSize(result.length));
+            if(MusicCodec.decode(result.notes, result.length) == null){
+                System.err.println("Invalid notes in MusicUpdatePacket");
+                return null;
+            }
             result.prevInstrument = buf.readByte();
             result.prevInsLocked = buf.readBoolean();
         } catch (IndexOutOfBoundsException ioe) {
@@ -53,14 +60,14 @@ public class MusicUpdatePacket {
         buf.writeString(pkt.title);
         buf.writeBoolean(pkt.signed);
         buf.writeByte(pkt.pause);
-        buf.writeInt(pkt.length);
-        buf.writeBytes(pkt.music);
+        buf.writeVarInt(pkt.length);
+        buf.writeByteArray(pkt.notes);
         buf.writeByte(pkt.prevInstrument);
         buf.writeBoolean(pkt.prevInsLocked);
     }
 
-    public byte[] getMusic() {
-        return music;
+    public byte[] getNotes() {
+        return notes;
     }
 
     public int getLength() {
@@ -4,6 +4,7 @@ import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraftforge.fml.network.NetworkEvent;
+import xerca.xercamusic.common.MusicCodec;
 import xerca.xercamusic.common.Triggers;
 import xerca.xercamusic.common.item.Items;
 
@@ -30,7 +31,8 @@ public class MusicUpdatePacketHandler {
         if (!note.isEmpty() && note.getItem() == Items.MUSIC_SHEET) {
             CompoundNBT comp = note.getOrCreateTag();
 
-            comp.putByteArray("music", msg.getMusic());
+            comp.putByteArray(MusicCodec.TAG_KEY, msg.getNotes());
+            comp.remove(MusicCodec.LEGACY_TAG_KEY);
             comp.putInt("length", msg.getLength());
             comp.putByte("pause", msg.getPause());
             comp.putInt("generation", 0);
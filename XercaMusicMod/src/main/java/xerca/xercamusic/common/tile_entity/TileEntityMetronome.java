@@ -9,6 +9,8 @@ import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.Vec3i;
+import xerca.xercamusic.common.BeatListener;
+import xerca.xercamusic.common.MusicEnsembles;
 import xerca.xercamusic.common.SoundEvents;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.block.BlockMetronome;
@@ -18,13 +20,19 @@ import xerca.xercamusic.common.item.Items;
 
 import java.util.List;
 
-public class TileEntityMetronome extends TileEntity implements ITickableTileEntity {
+public class TileEntityMetronome extends TileEntity implements ITickableTileEntity, BeatListener {
+    private static final int EVENT_START = 0;
+    private static final int EVENT_STOP = 1;
     public final static int[] pauseLevels = {20, 15, 12, 10, 8, 6, 5, 4, 3, 2, 1};
-    private final static Vec3i halfRange = new Vec3i(8, 2, 8);
+    public final static Vec3i halfRange = new Vec3i(8, 2, 8);
 
     private int age = 0;
     private boolean oldPoweredState = false;
     private int countDown = 0;
+    // Game time of the first beat since the metronome was powered
+    private long origin = 0;
+    // Pause the client plays the ticks with, 0 when it is not playing them
+    private int playingPause = 0;
 
     public TileEntityMetronome(){
         super(TileEntities.METRONOME);
@@ -41,33 +49,55 @@ public class TileEntityMetronome extends TileEntity implements ITickableTileEnti
 		super.read(parent);
     }
 
+    @Override
+    public CompoundNBT getUpdateTag() {
+        CompoundNBT parent = this.write(new CompoundNBT());
+        if (oldPoweredState) {
+            parent.putLong("origin", origin);
+        }
+        return parent;
+    }
+
+    @Override
+    public void handleUpdateTag(CompoundNBT nbt) {
+        this.read(nbt);
+        if (world != null && nbt.contains("origin", 4)) {
+            startTicks(nbt.getLong("origin"));
+        }
+    }
+
     @Override
     public void tick() {
         if (this.world != null) {
             BlockState state = this.getBlockState();
+            if (this.world.isRemote) {
+                // Client side, the sequencer plays the ticks. Restart them when the tempo changes.
+                if (playingPause != 0 && playingPause != pauseLevels[state.get(BlockMetronome.BPM)]) {
+                    startTicks(origin);
+                }
+                return;
+            }
+
+            // Server side
             if (state.get(BlockMetronome.POWERED)) {
                 if(!oldPoweredState){
                     age = 0;
                     countDown = 0;
+                    origin = world.getGameTime();
+                    world.addBlockEvent(pos, state.getBlock(), EVENT_START, (int) origin);
                 }
 
                 int bpmLevel = state.get(BlockMetronome.BPM);
+                MusicEnsembles.get(world).putMetronome(pos, origin, pauseLevels[bpmLevel]);
                 if (age % pauseLevels[bpmLevel] == 0) {
-                    if(this.world.isRemote){
-                        // Client side
-                        XercaMusic.proxy.playNote(SoundEvents.TICK, pos.getX(), pos.getY(), pos.getZ(), SoundCategory.BLOCKS, 1.0f, 0.9f + world.rand.nextFloat()*0.1f);
-                        world.addParticle(ParticleTypes.NOTE, (double) pos.getX() + 0.5D, (double) pos.getY() + 1.2D, (double) pos.getZ() + 0.5D, 0.0D, 0.0D, 0.0D);
-                    }
-                    else{
-                        // Server side
-                        if(countDown >= 3){
-                            List<PlayerEntity> players = world.getEntitiesWithinAABB(PlayerEntity.class, new AxisAlignedBB(this.pos.subtract(halfRange), this.pos.add(halfRange)),
-                                    player -> player.getHeldItemMainhand().getItem() instanceof ItemInstrument && player.getHeldItemOffhand().getItem() instanceof ItemMusicSheet
-                                            && player.getHeldItemOffhand().hasTag() && player.getHeldItemOffhand().getTag().getInt("pause") == pauseLevels[bpmLevel] );
-
-                            for(PlayerEntity player : players){
-                                Items.GUITAR.playMusic(world, player, false);
-                            }
+                    if(countDown >= 3){
+                        List<PlayerEntity> players = world.getEntitiesWithinAABB(PlayerEntity.class, new AxisAlignedBB(this.pos.subtract(halfRange), this.pos.add(halfRange)),
+                                player -> player.getHeldItemMainhand().getItem() instanceof ItemInstrument && player.getHeldItemOffhand().getItem() instanceof ItemMusicSheet
+                                        && player.getHeldItemOffhand().hasTag() && player.getHeldItemOffhand().getTag().getInt("pause") == pauseLevels[bpmLevel] );
+
+                        // The spirits start on a later beat of this metronome, all at the same time
+                        for(PlayerEntity player : players){
+                            Items.GUITAR.playMusic(world, player, false);
                         }
                     }
 
@@ -77,9 +107,74 @@ public class TileEntityMetronome extends TileEntity implements ITickableTileEnti
                 oldPoweredState = true;
                 age++;
             }else{
+                if(oldPoweredState){
+                    MusicEnsembles.get(world).removeMetronome(pos);
+                    world.addBlockEvent(pos, state.getBlock(), EVENT_STOP, 0);
+                }
                 oldPoweredState = false;
             }
         }
     }
 
+    @Override
+    public boolean receiveClientEvent(int id, int type) {
+        if(world != null && world.isRemote){
+            if(id == EVENT_START){
+                // Only the low bits of the time are sent, it is close to the current time
+                long now = world.getGameTime();
+                startTicks(now - (int) (now - type));
+            }
+            else if(id == EVENT_STOP){
+                stopTicks();
+            }
+        }
+        return id == EVENT_START || id == EVENT_STOP;
+    }
+
+    private void startTicks(long origin){
+        this.origin = origin;
+        this.playingPause = pauseLevels[getBlockState().get(BlockMetronome.BPM)];
+        XercaMusic.proxy.startMusic(this, world, origin, playingPause, Integer.MAX_VALUE, this);
+    }
+
+    private void stopTicks(){
+        this.playingPause = 0;
+        XercaMusic.proxy.stopMusic(this);
+    }
+
+    @Override
+    public void onBeat(int beat) {
+        XercaMusic.proxy.playNote(SoundEvents.TICK, pos.getX(), pos.getY(), pos.getZ(), SoundCategory.BLOCKS, 1.0f, 0.9f + world.rand.nextFloat()*0.1f);
+        world.addParticle(ParticleTypes.NOTE, (double) pos.getX() + 0.5D, (double) pos.getY() + 1.2D, (double) pos.getZ() + 0.5D, 0.0D, 0.0D, 0.0D);
+    }
+
+    @Override
+    public void onEnd() {
+        playingPause = 0;
+    }
+
+    @Override
+    public void remove() {
+        super.remove();
+        if(world != null){
+            if(world.isRemote){
+                stopTicks();
+            }
+            else{
+                MusicEnsembles.get(world).removeMetronome(pos);
+            }
+        }
+    }
+
+    @Override
+    public void onChunkUnloaded() {
+        if(world != null){
+            if(world.isRemote){
+                stopTicks();
+            }
+            else{
+                MusicEnsembles.get(world).removeMetronome(pos);
+            }
+        }
+    }
 }
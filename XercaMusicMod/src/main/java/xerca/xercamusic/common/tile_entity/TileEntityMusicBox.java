@@ -5,7 +5,6 @@ import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.particles.ParticleTypes;
-import net.minecraft.tileentity.ITickableTileEntity;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.Direction;
 import net.minecraft.util.ResourceLocation;
@@ -15,13 +14,21 @@ import net.minecraft.world.chunk.Chunk;
 import net.minecraftforge.fml.network.PacketDistributor;
 import net.minecraftforge.registries.ForgeRegistries;
 import xerca.xercamusic.client.NoteSound;
+import xerca.xercamusic.common.BeatListener;
+import xerca.xercamusic.common.MusicCodec;
+import xerca.xercamusic.common.MusicEnsembles;
+import xerca.xercamusic.common.MusicStore;
 import xerca.xercamusic.common.XercaMusic;
 import xerca.xercamusic.common.block.BlockMusicBox;
 import xerca.xercamusic.common.item.ItemInstrument;
 import xerca.xercamusic.common.item.ItemMusicSheet;
 import xerca.xercamusic.common.packets.MusicBoxUpdatePacket;
 
-public class TileEntityMusicBox extends TileEntity implements ITickableTileEntity {
+/**
+ * Music boxes do not tick. The block schedules a tick when the box is powered or unpowered,
+ * and keeps ticking the box only while it plays or its powering pulse is on, so idle boxes cost nothing.
+ */
+public class TileEntityMusicBox extends TileEntity implements BeatListener {
     private boolean isPlaying = false;
     private boolean oldPoweredState = false;
     private boolean stopPowering = false;
@@ -31,6 +38,8 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
     private byte[] music;
     private int mLength;
     private int mTime = 0;
+    // Game time at which the music started playing
+    private long startTime = 0;
     private byte mPause;
     private int age = 0;
     private int poweringAge = 0;
@@ -79,13 +88,25 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
     @Override
     public CompoundNBT getUpdateTag() {
 //        XercaMusic.LOGGER.debug("TileEntityMusicBox getUpdateTag called");
-        return this.write(new CompoundNBT());
+        CompoundNBT parent = this.write(new CompoundNBT());
+        // Clients get the hash of the notes instead of the notes
+        if (parent.contains("note", 10)) {
+            parent.getCompound("note").put("tag", shareNotes(noteStack));
+        }
+        // Players coming into range hear the rest of the music
+        if (isPlaying) {
+            parent.putLong("start", startTime);
+        }
+        return parent;
     }
 
     @Override
     public void handleUpdateTag(CompoundNBT nbt) {
 //        XercaMusic.LOGGER.debug("TileEntityMusicBox handleUpdateTag called");
         this.read(nbt);
+        if (world != null && nbt.contains("start", 4)) {
+            startPlaying(nbt.getLong("start"));
+        }
     }
 
     private void stopPowering(){
@@ -95,13 +116,16 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
         poweringAge = 0;
     }
 
-    @Override
-    public void tick() {
+    /**
+     * Called from the scheduled ticks of the block on the server, clients play the music with the sequencer.
+     * Returns true if the box needs to tick again on the next tick.
+     */
+    public boolean update() {
         // Powering state timer should work in all cases
         if(stopPowering){
             if(poweringAge >= 20){
                 stopPowering();
-                return;
+                return false;
             }
             else{
                 poweringAge++;
@@ -110,7 +134,12 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
 
         // Other things only work if a note stack and an instrument are present
         if(noteStack.isEmpty() || instrument == null){
-            return;
+            oldPoweredState = getBlockState().get(BlockMusicBox.POWERED);
+            if(isPlaying){
+                isPlaying = false;
+                updateClientPlaying();
+            }
+            return stopPowering;
         }
         BlockState state = this.getBlockState();
 
@@ -125,6 +154,12 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
                 mTime = 0;
                 poweringAge = 0;
                 oldPoweredState = true;
+                if(isPlaying){
+                    // Start in time with a metronome nearby, age counts up to 0 until the start
+                    startTime = MusicEnsembles.get(world).startTime(pos, mPause, world.getGameTime());
+                    age = (int) (world.getGameTime() - startTime);
+                }
+                updateClientPlaying();
             }
         }else{
             if (oldPoweredState) {
@@ -136,9 +171,10 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
         if (isPlaying) {
             if (mPause == 0) {
                 XercaMusic.LOGGER.error("TileEntityMusicBox mPause is 0! THIS SHOULD NOT HAPPEN!");
-                return;
+                isPlaying = false;
+                return stopPowering;
             }
-            if (age % mPause == 0) {
+            if (age >= 0 && age % mPause == 0) {
                 if (mTime == mLength) {
                     //System.out.println("music bitti!");
                     age = 0;
@@ -147,33 +183,72 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
                     isPlaying = false;
                     stopPowering = true;
 
-                    //if(!world.isRemote) {
-                        Direction rightSide = state.get(BlockMusicBox.HORIZONTAL_FACING).rotateY();
-                        world.setBlockState(pos, state.with(BlockMusicBox.POWERING, true));
-
-                        BlockPos neighbor = pos.offset(rightSide);
-                        world.neighborChanged(neighbor, this.getBlockState().getBlock(), pos);
-                        world.notifyNeighborsOfStateExcept(neighbor, this.getBlockState().getBlock(), rightSide.getOpposite());
+                    Direction rightSide = state.get(BlockMusicBox.HORIZONTAL_FACING).rotateY();
+                    world.setBlockState(pos, state.with(BlockMusicBox.POWERING, true));
 
-                    //}
-                    return;
+                    BlockPos neighbor = pos.offset(rightSide);
+                    world.neighborChanged(neighbor, this.getBlockState().getBlock(), pos);
+                    world.notifyNeighborsOfStateExcept(neighbor, this.getBlockState().getBlock(), rightSide.getOpposite());
+                    return true;
                 }
+                mTime++;
+            }
+        }
+        age++;
+        return isPlaying || stopPowering;
+    }
 
-                if(world.isRemote){
-                    if (music[mTime] != 0 && music[mTime] <= 48) {
+    /**
+     * Client side, plays the music in time with the server from the game time it started at
+     */
+    public void startPlaying(long startTime){
+        this.isPlaying = true;
+        this.startTime = startTime;
+        XercaMusic.proxy.startMusic(this, world, startTime, mPause, mLength, this);
+    }
 
-                        if(instrument.shouldCutOff && lastPlayed != null){
-                            lastPlayed.stopSound();
-                        }
-                        lastPlayed = XercaMusic.proxy.playNote(instrument.getSound(music[mTime] - 1), pos.getX(), pos.getY() + 0.5D, pos.getZ(), SoundCategory.RECORDS, 4.0f, 1.0f);
+    public void stopPlaying(){
+        this.isPlaying = false;
+        XercaMusic.proxy.stopMusic(this);
+    }
 
-                        this.world.addParticle(ParticleTypes.NOTE, pos.getX() + 0.5D, pos.getY() + 2.2D, pos.getZ() + 0.5D, (music[mTime] -1) / 24.0D, 0.0D, 0.0D);
-                    }
-                }
-                mTime++;
+    @Override
+    public void onBeat(int beat) {
+        if(noteStack.isEmpty() || instrument == null){
+            return;
+        }
+        if(music == null){
+            // The notes of the hash may have arrived since the last beat
+            music = MusicCodec.readMusic(noteStack.getTag());
+        }
+        if(music != null && beat < music.length && music[beat] != 0 && music[beat] <= 48){
+            if(instrument.shouldCutOff && lastPlayed != null){
+                lastPlayed.stopSound();
             }
+            lastPlayed = XercaMusic.proxy.playNote(instrument.getSound(music[beat] - 1), pos.getX(), pos.getY() + 0.5D, pos.getZ(), SoundCategory.RECORDS, 4.0f, 1.0f);
+
+            this.world.addParticle(ParticleTypes.NOTE, pos.getX() + 0.5D, pos.getY() + 2.2D, pos.getZ() + 0.5D, (music[beat] -1) / 24.0D, 0.0D, 0.0D);
+        }
+    }
+
+    @Override
+    public void onEnd() {
+        isPlaying = false;
+    }
+
+    @Override
+    public void remove() {
+        super.remove();
+        if(world != null && world.isRemote){
+            stopPlaying();
+        }
+    }
+
+    @Override
+    public void onChunkUnloaded() {
+        if(world != null && world.isRemote){
+            stopPlaying();
         }
-        age++;
     }
 
     public ItemStack getNoteStack() {
@@ -187,9 +262,10 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
             }
 
             this.noteStack = noteStack;
-            if (noteStack.hasTag() && noteStack.getTag().contains("music")) {
+            if (MusicCodec.hasMusic(noteStack.getTag())) {
                 CompoundNBT comp = noteStack.getTag();
-                music = comp.getByteArray("music");
+                MusicCodec.migrate(comp);
+                music = MusicCodec.readMusic(comp);
                 mLength = comp.getInt("length");
                 mPause = comp.getByte("pause");
             }
@@ -234,9 +310,21 @@ public class TileEntityMusicBox extends TileEntity implements ITickableTileEntit
         }
     }
 
+    private CompoundNBT shareNotes(ItemStack noteStack){
+        MusicStore store = MusicStore.get(world);
+        CompoundNBT shared = store == null ? null : store.share(noteStack.getTag());
+        return shared == null ? new CompoundNBT() : shared;
+    }
+
     // Send update to clients
     private void updateClient(ItemStack noteStack, Item itemInstrument){
-        MusicBoxUpdatePacket packet = new MusicBoxUpdatePacket(pos, noteStack, itemInstrument);
+        MusicBoxUpdatePacket packet = new MusicBoxUpdatePacket(pos, noteStack == null ? null : shareNotes(noteStack), itemInstrument);
+        XercaMusic.NETWORK_HANDLER.send(PacketDistributor.TRACKING_CHUNK.with(() -> (Chunk) world.getChunk(pos)), packet);
+    }
+
+    // Tell every client tracking the chunk that the music started or stopped, clients that load the chunk later get it with the update tag
+    private void updateClientPlaying(){
+        MusicBoxUpdatePacket packet = new MusicBoxUpdatePacket(pos, instrument, isPlaying, startTime);
         XercaMusic.NETWORK_HANDLER.send(PacketDistributor.TRACKING_CHUNK.with(() -> (Chunk) world.getChunk(pos)), packet);
     }
 
@@ -2,9 +2,14 @@ package xerca.xercamusic.server;
 
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.SoundEvent;
+import net.minecraft.world.World;
 import xerca.xercamusic.client.NoteSound;
+import xerca.xercamusic.common.BeatListener;
+import xerca.xercamusic.common.MusicStore;
 import xerca.xercamusic.common.Proxy;
 
+import javax.annotation.Nullable;
+
 public class ServerProxy implements Proxy {
     public void preInit() {
 
@@ -29,6 +34,16 @@ public class ServerProxy implements Proxy {
 
     }
 
+    @Override
+    public void startMusic(Object key, World world, long startTime, int pause, int length, BeatListener listener) {
+
+    }
+
+    @Override
+    public void stopMusic(Object key) {
+
+    }
+
     @Override
     public void showMusicGui() {
 
@@ -38,4 +53,15 @@ public class ServerProxy implements Proxy {
     public void showInstrumentGui() {
 
     }
+
+    @Nullable
+    @Override
+    public byte[] getMusicData(String hash) {
+        return MusicStore.lookup(hash);
+    }
+
+    @Override
+    public void onMusicShared(String hash) {
+
+    }
 }
@@ -0,0 +1,44 @@
+package xerca.xercapaint.benchmark;
+
+/**
+ * Minimal timing loop for the headless benchmarks: warms the code up, then reports the best of a few timed rounds.
+ */
+public final class BenchmarkTimer {
+    private static final int warmupRounds = 5;
+    private static final int timedRounds = 10;
+
+    // Keeps results alive so the JIT cannot remove the measured work
+    public static long sink;
+
+    private BenchmarkTimer() {
+    }
+
+    public interface Body {
+        /**
+         * Runs the measured work once and returns any value derived from it
+         */
+        long run();
+    }
+
+    /**
+     * Returns the best time of one run of body, in nanoseconds, out of the timed rounds of runsPerRound runs
+     */
+    public static double nanosPerRun(Body body, int runsPerRound) {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < warmupRounds + timedRounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < runsPerRound; i++) {
+                sink += body.run();
+            }
+            double perRun = (double) (System.nanoTime() - start) / runsPerRound;
+            if (round >= warmupRounds) {
+                best = Math.min(best, perRun);
+            }
+        }
+        return best;
+    }
+
+    public static void report(String name, double nanos, String unit) {
+        System.out.println(String.format("%-48s %12.1f ns/%s", name, nanos, unit));
+    }
+}
@@ -0,0 +1,112 @@
+package xerca.xercapaint.benchmark;
+
+import net.minecraft.block.Blocks;
+import net.minecraft.command.Commands;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.Direction;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.server.FMLServerStartingEvent;
+import xerca.benchmark.TickTimeBenchmark;
+import xerca.xercapaint.common.CanvasId;
+import xerca.xercapaint.common.CanvasStore;
+import xerca.xercapaint.common.CanvasType;
+import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.entity.EntityCanvas;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-game harness for the surface checks of placed canvases, on a server started with gradlew runBenchmarkServer.
+ * /xercapaint benchmark canvases &lt;count&gt; hangs count small canvases on a stone wall above the world spawn,
+ * where there should be only air, and compares the overworld tick time with and without them.
+ * It also times one onValidSurface pass over all of them, which the old tick ran for every canvas every 50 ticks.
+ * The wall and the canvases are removed afterwards.
+ */
+@Mod.EventBusSubscriber(modid = XercaPaint.MODID)
+public class CanvasTickBenchmark extends TickTimeBenchmark {
+    private static final int wallWidth = 128;
+    private static final int wallBottom = 100;
+    private static final int oldCheckInterval = 50;
+    private static final CanvasTickBenchmark instance = new CanvasTickBenchmark();
+
+    private final List<EntityCanvas> canvases = new ArrayList<>();
+    private int wallSize;
+
+    private CanvasTickBenchmark() {
+        super("canvases");
+    }
+
+    @SubscribeEvent
+    public static void onServerStarting(FMLServerStartingEvent event) {
+        event.getCommandDispatcher().register(Commands.literal("xercapaint")
+                .requires(source -> source.hasPermissionLevel(2))
+                .then(instance.command(wallWidth * 128)));
+    }
+
+    @SubscribeEvent
+    public static void onTick(TickEvent.WorldTickEvent event) {
+        instance.onWorldTick(event);
+    }
+
+    private static BlockPos wallPos(ServerWorld world, int i) {
+        BlockPos spawn = world.getSpawnPoint();
+        return new BlockPos(spawn.getX() - wallWidth / 2 + i % wallWidth, wallBottom + i / wallWidth, spawn.getZ());
+    }
+
+    @Override
+    protected int place(ServerWorld world, int count) {
+        CompoundNBT tag = new CompoundNBT();
+        CanvasStore.get(world.getServer()).setPixels(tag, new int[CanvasType.getWidth(CanvasType.SMALL) * CanvasType.getHeight(CanvasType.SMALL)]);
+        CanvasId.put(tag, CanvasId.create());
+        tag.putInt("v", 1);
+        wallSize = count;
+        for (int i = 0; i < count; i++) {
+            BlockPos pos = wallPos(world, i);
+            // No neighbour updates, so the canvases start without queued checks
+            world.setBlockState(pos, Blocks.STONE.getDefaultState(), 2);
+            world.setBlockState(pos.south(), Blocks.AIR.getDefaultState(), 2);
+        }
+        for (int i = 0; i < count; i++) {
+            EntityCanvas canvas = new EntityCanvas(world, tag.copy(), wallPos(world, i).south(), Direction.SOUTH, CanvasType.SMALL);
+            if (canvas.onValidSurface() && world.addEntity(canvas)) {
+                canvases.add(canvas);
+            }
+        }
+        return canvases.size();
+    }
+
+    @Override
+    protected void report(ServerWorld world, double baselineMillis, double loadedMillis) {
+        long bestPass = Long.MAX_VALUE;
+        int valid = 0;
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            valid = 0;
+            for (EntityCanvas canvas : canvases) {
+                if (canvas.onValidSurface()) {
+                    valid++;
+                }
+            }
+            bestPass = Math.min(bestPass, System.nanoTime() - start);
+        }
+        feedback(tickTimes(baselineMillis, loadedMillis, canvases.size()));
+        feedback(String.format("Old 50 tick polling would add %.3f ms per tick (%d of %d surfaces valid)",
+                bestPass / 1.0e6 / oldCheckInterval, valid, canvases.size()));
+    }
+
+    @Override
+    protected void remove(ServerWorld world) {
+        for (EntityCanvas canvas : canvases) {
+            canvas.remove();
+        }
+        canvases.clear();
+        for (int i = 0; i < wallSize; i++) {
+            world.setBlockState(wallPos(world, i), Blocks.AIR.getDefaultState(), 2);
+        }
+    }
+}
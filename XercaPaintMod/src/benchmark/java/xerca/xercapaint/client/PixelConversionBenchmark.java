@@ -0,0 +1,147 @@
+package xerca.xercapaint.client;
+
+import xerca.xercapaint.benchmark.BenchmarkTimer;
+import xerca.xercapaint.common.PackedColor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * Times {@link CanvasTextureAtlas.Slot#setPixels} against the per-pixel update it replaced, for a brush dab and a full repaint.
+ * The slot writes into a direct buffer with the bounds checks of NativeImage.setPixelRGBA, since uploading to the real page
+ * needs a GL context. Uploads are counted instead of done. It first checks that the slot ends up with every pixel.
+ * Run with: gradlew benchmark -Pbench=xerca.xercapaint.client.PixelConversionBenchmark
+ */
+public class PixelConversionBenchmark {
+    private static final int width = 32;
+    private static final int height = 32;
+    private static final int updates = 20000;
+
+    private static final ByteBuffer image = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder());
+    private static long uploadedPixels = 0;
+    private static int uploads = 0;
+
+    private static final CanvasTextureAtlas.Surface surface = new CanvasTextureAtlas.Surface() {
+        @Override
+        public void setPixelRGBA(int x, int y, int abgr) {
+            if (x < 0 || x >= width || y < 0 || y >= height) {
+                throw new IllegalArgumentException("Out of bounds: " + x + ", " + y);
+            }
+            image.putInt((x + y * width) * 4, abgr);
+        }
+
+        @Override
+        public void fillAreaRGBA(int x, int y, int areaWidth, int areaHeight, int abgr) {
+            for (int i = y; i < y + areaHeight; i++) {
+                for (int j = x; j < x + areaWidth; j++) {
+                    setPixelRGBA(j, i, abgr);
+                }
+            }
+        }
+
+        @Override
+        public void upload(int x, int y, int areaWidth, int areaHeight) {
+            uploadedPixels += areaWidth * areaHeight;
+            uploads++;
+        }
+    };
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        int[] canvas = randomPixels(random);
+        int[] repainted = randomPixels(random);
+        // A dab of the largest brush between two updates
+        int[] stroked = canvas.clone();
+        for (int y = 5; y < 8; y++) {
+            for (int x = 5; x < 8; x++) {
+                stroked[x + y * width] = 0xFF000000 | random.nextInt(0x1000000);
+            }
+        }
+
+        CanvasTextureAtlas.Slot slot = new CanvasTextureAtlas.Slot(surface, 0, 0, width, height);
+        check(slot, canvas);
+        check(slot, stroked);
+        check(slot, repainted);
+        check(slot, canvas);
+
+        double perPixel = BenchmarkTimer.nanosPerRun(new BenchmarkTimer.Body() {
+            int frame = 0;
+
+            @Override
+            public long run() {
+                return perPixelUpdate((frame++ & 1) == 0 ? canvas : stroked);
+            }
+        }, updates);
+        double dab = BenchmarkTimer.nanosPerRun(new BenchmarkTimer.Body() {
+            int frame = 0;
+
+            @Override
+            public long run() {
+                return slot.setPixels((frame++ & 1) == 0 ? canvas : stroked);
+            }
+        }, updates);
+        double repaint = BenchmarkTimer.nanosPerRun(new BenchmarkTimer.Body() {
+            int frame = 0;
+
+            @Override
+            public long run() {
+                return slot.setPixels((frame++ & 1) == 0 ? canvas : repainted);
+            }
+        }, updates);
+
+        slot.setPixels(canvas);
+        uploadedPixels = 0;
+        uploads = 0;
+        slot.setPixels(stroked);
+        long dabPixels = uploadedPixels;
+        int dabUploads = uploads;
+        uploadedPixels = 0;
+        uploads = 0;
+        slot.setPixels(repainted);
+
+        System.out.println("Canvas texture update of " + width + "x" + height + " pixels");
+        BenchmarkTimer.report("per pixel swapColor + setPixelRGBA (old)", perPixel, "update");
+        BenchmarkTimer.report("Slot.setPixels, brush dab", dab, "update");
+        BenchmarkTimer.report("Slot.setPixels, full repaint", repaint, "update");
+        System.out.println("Pixels uploaded per dab: " + width * height + " in 1 upload (old), " + dabPixels + " in " + dabUploads + " (new)");
+        System.out.println("Pixels uploaded per repaint: " + width * height + " in 1 upload (old), " + uploadedPixels + " in " + uploads + " (new)");
+    }
+
+    private static int[] randomPixels(Random random) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+
+    private static void check(CanvasTextureAtlas.Slot slot, int[] pixels) {
+        slot.setPixels(pixels);
+        for (int i = 0; i < pixels.length; i++) {
+            if (image.getInt(i * 4) != PackedColor.toABGR(pixels[i])) {
+                throw new AssertionError("Slot pixel " + i + " was not updated");
+            }
+        }
+    }
+
+    private static int swapColor(int color){
+        int i = (color & 16711680) >> 16;
+        int j = (color & 0xFF00) >> 8;
+        int k = (color & 255);
+        return k << 16 | j << 8 | i;
+    }
+
+    /**
+     * The update of the old canvas texture: converts and writes every pixel, then uploads all of them
+     */
+    private static long perPixelUpdate(int[] pixels) {
+        for (int i = 0; i < height; ++i) {
+            for (int j = 0; j < width; ++j) {
+                surface.setPixelRGBA(j, i, swapColor(pixels[j + i * width]));
+            }
+        }
+        surface.upload(0, 0, width, height);
+        return image.getInt(0);
+    }
+}
@@ -0,0 +1,177 @@
+package xerca.xercapaint.client;
+
+import xerca.xercapaint.benchmark.BenchmarkTimer;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Standalone harness for CanvasRasterizer. It first checks the brush masks against the brush shapes of the old editor
+ * and that lines leave no gaps, then times drag events on the largest canvas, to compare with mouse event rates.
+ * Run with: gradlew benchmark -Pbench=xerca.xercapaint.client.RasterizerBenchmark
+ */
+public class RasterizerBenchmark {
+    private static final int width = 32;
+    private static final int height = 32;
+    private static final int dragEvents = 100000;
+
+    private static int changes = 0;
+
+    public static void main(String[] args) {
+        checkBrushes();
+        checkLines();
+
+        final int[] pixels = new int[width * height];
+        final CanvasRasterizer rasterizer = new CanvasRasterizer(pixels, width, height, (index, oldColor) -> changes++);
+        final CanvasRasterizer.Mask brush = CanvasRasterizer.brushes[CanvasRasterizer.brushes.length - 1];
+
+        // A fast stroke: each event moves up to 8 canvas pixels, more than a high-DPI mouse does between two events
+        final Random random = new Random(1);
+        final int[] path = new int[2 * 4096];
+        int x = width / 2;
+        int y = height / 2;
+        for (int i = 0; i < path.length; i += 2) {
+            x = Math.max(0, Math.min(width - 1, x + random.nextInt(17) - 8));
+            y = Math.max(0, Math.min(height - 1, y + random.nextInt(17) - 8));
+            path[i] = x;
+            path[i + 1] = y;
+        }
+
+        double stroke = BenchmarkTimer.nanosPerRun(new BenchmarkTimer.Body() {
+            int event = 0;
+
+            @Override
+            public long run() {
+                int i = (event++ * 2) & (path.length - 1);
+                int j = (i + 2) & (path.length - 1);
+                rasterizer.line(brush, path[i], path[i + 1], path[j], path[j + 1], event);
+                return changes;
+            }
+        }, dragEvents);
+        double stamp = BenchmarkTimer.nanosPerRun(new BenchmarkTimer.Body() {
+            int event = 0;
+
+            @Override
+            public long run() {
+                int i = (event++ * 2) & (path.length - 1);
+                rasterizer.stamp(brush, path[i], path[i + 1], event);
+                return changes;
+            }
+        }, dragEvents);
+        double fill = BenchmarkTimer.nanosPerRun(new BenchmarkTimer.Body() {
+            int color = 0;
+
+            @Override
+            public long run() {
+                Arrays.fill(pixels, color);
+                rasterizer.floodFill(width / 2, height / 2, ++color);
+                return changes;
+            }
+        }, dragEvents / 10);
+
+        System.out.println("Brush masks and lines match the old editor");
+        System.out.println("Largest brush on a " + width + "x" + height + " canvas");
+        BenchmarkTimer.report("stamp", stamp, "event");
+        BenchmarkTimer.report("line of stamps, up to 8 pixels long", stroke, "event");
+        BenchmarkTimer.report("flood fill of the whole canvas", fill, "fill");
+        System.out.println(String.format("Drag events per second on one core: %.0f (a 1000 Hz mouse sends 1000)", 1.0e9 / stroke));
+    }
+
+    /**
+     * Each brush must paint the same pixels as the old setPixelsAt, also when clipped at the canvas edges
+     */
+    private static void checkBrushes() {
+        final int[] pixels = new int[width * height];
+        final int[] expected = new int[width * height];
+        final CanvasRasterizer rasterizer = new CanvasRasterizer(pixels, width, height, (index, oldColor) -> {});
+        for (int size = 0; size < CanvasRasterizer.brushes.length; size++) {
+            for (int y = -3; y < height + 3; y++) {
+                for (int x = -3; x < width + 3; x++) {
+                    Arrays.fill(pixels, 0);
+                    Arrays.fill(expected, 0);
+                    rasterizer.stamp(CanvasRasterizer.brushes[size], x, y, 1);
+                    oldBrush(expected, size, x, y);
+                    if (!Arrays.equals(pixels, expected)) {
+                        throw new AssertionError("Brush " + size + " differs from the old editor at " + x + ", " + y);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A line must paint every pixel between its ends: each painted pixel after the first touches the one before
+     */
+    private static void checkLines() {
+        final int[] pixels = new int[width * height];
+        final int[] lastX = new int[1];
+        final int[] lastY = new int[1];
+        final CanvasRasterizer rasterizer = new CanvasRasterizer(pixels, width, height, (index, oldColor) -> {
+            int px = index % width;
+            int py = index / width;
+            if (lastX[0] >= 0 && (Math.abs(px - lastX[0]) > 1 || Math.abs(py - lastY[0]) > 1)) {
+                throw new AssertionError("Line has a gap at " + px + ", " + py);
+            }
+            lastX[0] = px;
+            lastY[0] = py;
+        });
+        Random random = new Random(2);
+        for (int i = 0; i < 10000; i++) {
+            Arrays.fill(pixels, 0);
+            lastX[0] = -1;
+            int x0 = random.nextInt(width);
+            int y0 = random.nextInt(height);
+            int x1 = random.nextInt(width);
+            int y1 = random.nextInt(height);
+            rasterizer.line(CanvasRasterizer.brushes[0], x0, y0, x1, y1, 1);
+            if (pixels[x0 + y0 * width] != 1 || pixels[x1 + y1 * width] != 1) {
+                throw new AssertionError("Line misses an end: " + x0 + ", " + y0 + " to " + x1 + ", " + y1);
+            }
+        }
+    }
+
+    private static void oldPixel(int[] pixels, int x, int y) {
+        if (x >= 0 && y >= 0 && x < width && y < height) {
+            pixels[y * width + x] = 1;
+        }
+    }
+
+    /**
+     * The shapes of the old GuiCanvasEdit.setPixelsAt, with x and y being the rounded canvas position it computed
+     */
+    private static void oldBrush(int[] pixels, int size, int x, int y) {
+        switch (size) {
+            case 0:
+                oldPixel(pixels, x, y);
+                break;
+            case 1:
+                for (int dy = -1; dy <= 0; dy++) {
+                    for (int dx = -1; dx <= 0; dx++) {
+                        oldPixel(pixels, x + dx, y + dy);
+                    }
+                }
+                break;
+            case 2:
+                for (int dx = -1; dx <= 0; dx++) {
+                    oldPixel(pixels, x + dx, y - 1);
+                    oldPixel(pixels, x + dx, y + 2);
+                }
+                for (int dx = -2; dx <= 1; dx++) {
+                    oldPixel(pixels, x + dx, y);
+                    oldPixel(pixels, x + dx, y + 1);
+                }
+                break;
+            case 3:
+                for (int dx = -1; dx <= 1; dx++) {
+                    oldPixel(pixels, x + dx, y - 2);
+                    oldPixel(pixels, x + dx, y + 2);
+                }
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -2; dx <= 2; dx++) {
+                        oldPixel(pixels, x + dx, y + dy);
+                    }
+                }
+                break;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.Vec2f;
 import net.minecraft.util.text.ITextComponent;
+import xerca.xercapaint.common.PackedColor;
 import xerca.xercapaint.common.PaletteUtil;
 import xerca.xercapaint.common.XercaPaint;
 
@@ -25,26 +26,9 @@ public abstract class BasePalette extends Screen {
     final static int paletteHeight = 193;
     static int paletteX;
     static int paletteY;
-    final static PaletteUtil.Color waterColor = new PaletteUtil.Color(53, 118, 191);
+    final static int waterColor = PackedColor.of(53, 118, 191);
 
-    final static PaletteUtil.Color[] basicColors = {
-            new PaletteUtil.Color(0xFF1D1D21),
-            new PaletteUtil.Color(0xFFB02E26),
-            new PaletteUtil.Color(0xFF5E7C16),
-            new PaletteUtil.Color(0xFF835432),
-            new PaletteUtil.Color(0xFF3C44AA),
-            new PaletteUtil.Color(0xFF8932B8),
-            new PaletteUtil.Color(0xFF169C9C),
-            new PaletteUtil.Color(0xFF9D9D97),
-            new PaletteUtil.Color(0xFF474F52),
-            new PaletteUtil.Color(0xFFF38BAA),
-            new PaletteUtil.Color(0xFF80C71F),
-            new PaletteUtil.Color(0xFFFED83D),
-            new PaletteUtil.Color(0xFF3AB3DA),
-            new PaletteUtil.Color(0xFFC74EBD),
-            new PaletteUtil.Color(0xFFF9801D),
-            new PaletteUtil.Color(0xFFF9FFFE)
-    };
+    final static int[] basicColors = PaletteUtil.basicColors;
     final static Vec2f[] basicColorCenters = {
             new Vec2f(23.5f, 172.5f),
             new Vec2f(18.5f, 145.5f),
@@ -84,8 +68,8 @@ public abstract class BasePalette extends Screen {
     boolean isCarryingColor = false;
     boolean isCarryingWater = false;
     boolean dirty = false;
-    PaletteUtil.Color carriedColor;
-    PaletteUtil.Color currentColor = basicColors[0];
+    int carriedColor;
+    int currentColor = basicColors[0];
     PaletteUtil.CustomColor[] customColors;
     boolean[] basicColorFlags;
 
@@ -118,6 +102,10 @@ public abstract class BasePalette extends Screen {
         }
     }
 
+    static void setGLColor(int color) {
+        GlStateManager.color4f(PackedColor.red(color)/255.f, PackedColor.green(color)/255.f, PackedColor.blue(color)/255.f, 1.0f);
+    }
+
     protected void superRender(int mouseX, int mouseY, float f) {
         super.render(mouseX, mouseY, f);
     }
@@ -134,13 +122,13 @@ public abstract class BasePalette extends Screen {
             int y = paletteY + (int)basicColorCenters[i].y;
             int r = (int)basicColorRadius;
             if(basicColorFlags[i]){
-                fill(x-r, y-r, x+r+1, y+r+1, basicColors[i].rgbVal());
+                fill(x-r, y-r, x+r+1, y+r+1, basicColors[i]);
 
                 GlStateManager.color4f(1.0F, 1.0F, 1.0F, 1.0F);
                 blit(x - 8, y - 8, dyeSpriteX, i*dyeSpriteSize, dyeSpriteSize, dyeSpriteSize);
             }
             else{
-                fill(x-r, y-r, x+r+1, y+r+1, emptinessColor.rgbVal());
+                fill(x-r, y-r, x+r+1, y+r+1, emptinessColor);
             }
         }
 
@@ -148,7 +136,7 @@ public abstract class BasePalette extends Screen {
         for(int i=0; i<customColors.length; i++){
             int x = paletteX + (int)customColorCenters[i].x;
             int y = paletteY + (int)customColorCenters[i].y;
-            fill(x-6, y-7, x+7, y+6, customColors[i].getColor().rgbVal());
+            fill(x-6, y-7, x+7, y+6, customColors[i].getColor());
         }
 
         GlStateManager.color4f(1.0F, 1.0F, 1.0F, 1.0F);
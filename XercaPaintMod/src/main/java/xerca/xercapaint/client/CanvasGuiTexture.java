@@ -0,0 +1,92 @@
+package xerca.xercapaint.client;
+
+import com.mojang.blaze3d.platform.GlStateManager;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.AbstractGui;
+import net.minecraft.client.renderer.texture.DynamicTexture;
+import net.minecraft.client.renderer.texture.NativeImage;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import xerca.xercapaint.common.CanvasTiles;
+import xerca.xercapaint.common.PackedColor;
+import xerca.xercapaint.common.XercaPaint;
+
+/**
+ * Texture of the canvas shown in the canvas screens, drawn as a single scaled quad.
+ * Only the tiles marked dirty since the last frame are uploaded.
+ */
+@OnlyIn(Dist.CLIENT)
+public class CanvasGuiTexture implements AutoCloseable {
+    // Only one canvas screen is open at a time, so they all use the same location
+    private static final ResourceLocation location = new ResourceLocation(XercaPaint.MODID, "canvas_gui");
+    // Size of the largest side of a canvas on the screen
+    static final int screenSize = 160;
+
+    private final int width;
+    private final int height;
+    private final DynamicTexture texture;
+    private final CanvasTiles dirtyTiles;
+
+    CanvasGuiTexture(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.texture = new DynamicTexture(width, height, true);
+        this.dirtyTiles = new CanvasTiles(width, height);
+        Minecraft.getInstance().getTextureManager().loadTexture(location, this.texture);
+        markAllDirty();
+    }
+
+    /**
+     * Screen pixels per canvas pixel, 10 for small canvases and 5 for the other built-in sizes
+     */
+    static int pixelScale(int width, int height) {
+        return Math.max(1, Math.min(10, screenSize / Math.max(width, height)));
+    }
+
+    void markDirty(int x, int y) {
+        dirtyTiles.mark(x, y);
+    }
+
+    void markAllDirty() {
+        dirtyTiles.markAll();
+    }
+
+    private void upload(int[] pixels) {
+        if (dirtyTiles.isEmpty()) {
+            return;
+        }
+        NativeImage image = texture.getTextureData();
+        texture.bindTexture();
+        dirtyTiles.forEachDirty((left, top, tileWidth, tileHeight) -> {
+            for (int i = top; i < top + tileHeight; i++) {
+                for (int j = left; j < left + tileWidth; j++) {
+                    image.setPixelRGBA(j, i, PackedColor.toABGR(pixels[j + i * width]));
+                }
+            }
+            image.uploadTextureSub(0, left, top, left, top, tileWidth, tileHeight, false, false, false, false);
+        });
+        dirtyTiles.clear();
+    }
+
+    void render(int[] pixels, int x, int y, int scale) {
+        upload(pixels);
+        Minecraft.getInstance().getTextureManager().bindTexture(location);
+        GlStateManager.color4f(1.0F, 1.0F, 1.0F, 1.0F);
+        AbstractGui.blit(x, y, width*scale, height*scale, 0, 0, width, height, width, height);
+    }
+
+    /**
+     * Draws a canvas straight from the atlas page of a placed canvas
+     */
+    static void render(CanvasTextureAtlas.Slot slot, int x, int y, int scale) {
+        Minecraft.getInstance().getTextureManager().bindTexture(slot.getLocation());
+        GlStateManager.color4f(1.0F, 1.0F, 1.0F, 1.0F);
+        AbstractGui.blit(x, y, slot.width*scale, slot.height*scale, slot.x, slot.y, slot.width, slot.height, CanvasTextureAtlas.pageSize, CanvasTextureAtlas.pageSize);
+    }
+
+    @Override
+    public void close() {
+        texture.close();
+    }
+}
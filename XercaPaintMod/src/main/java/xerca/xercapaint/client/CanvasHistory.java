@@ -0,0 +1,164 @@
+package xerca.xercapaint.client;
+
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.IntConsumer;
+
+/**
+ * Undo and redo history of the canvas editor. Each stroke stores only the pixels it changed,
+ * with their colours before and after the stroke. The oldest strokes are dropped when the history is over its memory budget.
+ *
+ * On placed canvases other players paint too. Their changes are reported with {@link #overwritten}, and undo and redo
+ * leave those pixels alone, as well as pixels that do not hold the colour the stroke left them with.
+ */
+@OnlyIn(Dist.CLIENT)
+public class CanvasHistory {
+    // Rough size of a stroke object and its arrays, without the pixel data
+    private static final int strokeOverhead = 64;
+
+    private final int[] pixels;
+    private final int budget;
+    private final Deque<Stroke> undoStack = new ArrayDeque<>();
+    private final Deque<Stroke> redoStack = new ArrayDeque<>();
+    // Size of both stacks
+    private int usedBytes = 0;
+
+    // Stroke being recorded. recordedIn holds the id of the last stroke that recorded each pixel.
+    private final int[] recordedIn;
+    // Id of the last stroke recorded before someone else changed each pixel
+    private final int[] overwrittenIn;
+    private int strokeId = 0;
+    private boolean recording = false;
+    private int[] indices = new int[64];
+    private int[] before = new int[64];
+    private int count = 0;
+
+    CanvasHistory(int[] pixels, int budget) {
+        this.pixels = pixels;
+        this.recordedIn = new int[pixels.length];
+        this.overwrittenIn = new int[pixels.length];
+        this.budget = budget;
+    }
+
+    void beginStroke() {
+        if (recording) {
+            endStroke();
+        }
+        recording = true;
+        strokeId++;
+        count = 0;
+    }
+
+    /**
+     * Called before a pixel of the canvas is changed by the current stroke
+     */
+    void record(int index, int oldColor) {
+        if (!recording || recordedIn[index] == strokeId) {
+            return;
+        }
+        recordedIn[index] = strokeId;
+        if (count == indices.length) {
+            indices = Arrays.copyOf(indices, count * 2);
+            before = Arrays.copyOf(before, count * 2);
+        }
+        indices[count] = index;
+        before[count] = oldColor;
+        count++;
+    }
+
+    /**
+     * Called after a pixel was changed by another player, strokes recorded up to now will not change it anymore
+     */
+    void overwritten(int index) {
+        overwrittenIn[index] = strokeId;
+    }
+
+    /**
+     * Finishes the current stroke. Strokes that did not change anything are not kept.
+     */
+    void endStroke() {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+        if (count == 0) {
+            return;
+        }
+        int[] strokeIndices = Arrays.copyOf(indices, count);
+        int[] after = new int[count];
+        for (int i = 0; i < count; i++) {
+            after[i] = pixels[strokeIndices[i]];
+        }
+        for (Stroke stroke : redoStack) {
+            usedBytes -= stroke.getByteSize();
+        }
+        redoStack.clear();
+        Stroke stroke = new Stroke(strokeId, strokeIndices, Arrays.copyOf(before, count), after);
+        undoStack.push(stroke);
+        usedBytes += stroke.getByteSize();
+        while (usedBytes > budget && undoStack.size() > 1) {
+            usedBytes -= undoStack.removeLast().getByteSize();
+        }
+    }
+
+    /**
+     * Reverts the last stroke, calling changed with the index of every pixel it touches. Returns false if there is nothing to undo.
+     */
+    boolean undo(IntConsumer changed) {
+        Stroke stroke = undoStack.poll();
+        if (stroke == null) {
+            return false;
+        }
+        stroke.apply(pixels, stroke.after, stroke.before, overwrittenIn, changed);
+        redoStack.push(stroke);
+        return true;
+    }
+
+    /**
+     * Applies the last undone stroke again. Returns false if there is nothing to redo.
+     */
+    boolean redo(IntConsumer changed) {
+        Stroke stroke = redoStack.poll();
+        if (stroke == null) {
+            return false;
+        }
+        stroke.apply(pixels, stroke.before, stroke.after, overwrittenIn, changed);
+        undoStack.push(stroke);
+        return true;
+    }
+
+    private static class Stroke {
+        final int id;
+        final int[] indices;
+        final int[] before;
+        final int[] after;
+
+        Stroke(int id, int[] indices, int[] before, int[] after) {
+            this.id = id;
+            this.indices = indices;
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * Sets the pixels that still hold the from colours to the to colours
+         */
+        void apply(int[] pixels, int[] from, int[] to, int[] overwrittenIn, IntConsumer changed) {
+            for (int i = 0; i < indices.length; i++) {
+                final int index = indices[i];
+                if (overwrittenIn[index] < id && pixels[index] == from[i]) {
+                    pixels[index] = to[i];
+                    changed.accept(index);
+                }
+            }
+        }
+
+        int getByteSize() {
+            return strokeOverhead + indices.length * 12;
+        }
+    }
+}
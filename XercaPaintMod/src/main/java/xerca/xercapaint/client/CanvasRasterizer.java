@@ -0,0 +1,197 @@
+package xerca.xercapaint.client;
+
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+
+/**
+ * Paints brush stamps, lines, rectangles and flood fills into a canvas pixel array.
+ * Brushes are bitmask kernels built once; painting does not allocate.
+ */
+@OnlyIn(Dist.CLIENT)
+public class CanvasRasterizer {
+    /**
+     * The brushes of the editor, from the smallest to the largest
+     */
+    static final Mask[] brushes = {
+            new Mask(0, 0,
+                    "#"),
+            new Mask(-1, -1,
+                    "##",
+                    "##"),
+            new Mask(-2, -1,
+                    ".##.",
+                    "####",
+                    "####",
+                    ".##."),
+            new Mask(-2, -2,
+                    ".###.",
+                    "#####",
+                    "#####",
+                    "#####",
+                    ".###."),
+    };
+
+    @OnlyIn(Dist.CLIENT)
+    public interface Listener {
+        /**
+         * Called before a pixel is changed
+         */
+        void onPixelChange(int index, int oldColor);
+    }
+
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+    private final Listener listener;
+    private final int[] fillStack;
+
+    CanvasRasterizer(int[] pixels, int width, int height, Listener listener) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.listener = listener;
+        this.fillStack = new int[width * height];
+    }
+
+    private void set(int index, int color) {
+        if (pixels[index] != color) {
+            listener.onPixelChange(index, pixels[index]);
+            pixels[index] = color;
+        }
+    }
+
+    /**
+     * Stamps the mask with its origin at (x, y), clipped to the canvas
+     */
+    public void stamp(Mask mask, int x, int y, int color) {
+        final int left = x + mask.offsetX;
+        final int top = y + mask.offsetY;
+        final int firstRow = Math.max(0, -top);
+        final int lastRow = Math.min(mask.rows.length, height - top);
+        // Columns of the mask that are inside the canvas
+        long clip = -1L;
+        if (left < 0) {
+            clip = left <= -64 ? 0 : clip << -left;
+        }
+        if (left + mask.width > width) {
+            int inside = width - left;
+            clip &= inside <= 0 ? 0 : (inside >= 64 ? -1L : (1L << inside) - 1);
+        }
+        for (int row = firstRow; row < lastRow; row++) {
+            long bits = mask.rows[row] & clip;
+            final int rowStart = (top + row) * width + left;
+            while (bits != 0) {
+                int column = Long.numberOfTrailingZeros(bits);
+                set(rowStart + column, color);
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * Stamps the mask at every pixel of the line from (x0, y0) to (x1, y1), so fast strokes have no gaps
+     */
+    public void line(Mask mask, int x0, int y0, int x1, int y1, int color) {
+        final int dx = Math.abs(x1 - x0);
+        final int dy = -Math.abs(y1 - y0);
+        final int sx = x0 < x1 ? 1 : -1;
+        final int sy = y0 < y1 ? 1 : -1;
+        int err = dx + dy;
+        while (true) {
+            stamp(mask, x0, y0, color);
+            if (x0 == x1 && y0 == y1) {
+                break;
+            }
+            int e2 = 2 * err;
+            if (e2 >= dy) {
+                err += dy;
+                x0 += sx;
+            }
+            if (e2 <= dx) {
+                err += dx;
+                y0 += sy;
+            }
+        }
+    }
+
+    /**
+     * Outline of the rectangle with corners (x0, y0) and (x1, y1)
+     */
+    public void rect(Mask mask, int x0, int y0, int x1, int y1, int color) {
+        line(mask, x0, y0, x1, y0, color);
+        line(mask, x1, y0, x1, y1, color);
+        line(mask, x1, y1, x0, y1, color);
+        line(mask, x0, y1, x0, y0, color);
+    }
+
+    /**
+     * Fills the 4-connected area of the colour at (x, y)
+     */
+    public void floodFill(int x, int y, int color) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return;
+        }
+        final int start = x + y * width;
+        final int target = pixels[start];
+        if (target == color) {
+            return;
+        }
+        // Pixels are painted when pushed, so each one is pushed at most once
+        int size = 0;
+        set(start, color);
+        fillStack[size++] = start;
+        while (size > 0) {
+            final int index = fillStack[--size];
+            final int px = index % width;
+            if (px > 0 && pixels[index - 1] == target) {
+                set(index - 1, color);
+                fillStack[size++] = index - 1;
+            }
+            if (px < width - 1 && pixels[index + 1] == target) {
+                set(index + 1, color);
+                fillStack[size++] = index + 1;
+            }
+            if (index >= width && pixels[index - width] == target) {
+                set(index - width, color);
+                fillStack[size++] = index - width;
+            }
+            if (index + width < pixels.length && pixels[index + width] == target) {
+                set(index + width, color);
+                fillStack[size++] = index + width;
+            }
+        }
+    }
+
+    /**
+     * Brush shape, one bit per pixel in rows of at most 64 pixels
+     */
+    @OnlyIn(Dist.CLIENT)
+    public static class Mask {
+        final int offsetX;
+        final int offsetY;
+        final int width;
+        final long[] rows;
+
+        /**
+         * Builds a mask from rows of '#' (painted) and '.' (not painted), with (offsetX, offsetY) being the position of its top left pixel relative to the brush origin
+         */
+        Mask(int offsetX, int offsetY, String... pattern) {
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.rows = new long[pattern.length];
+            int maxWidth = 0;
+            for (int i = 0; i < pattern.length; i++) {
+                if (pattern[i].length() > 64) {
+                    throw new IllegalArgumentException("Brush masks can be at most 64 pixels wide");
+                }
+                maxWidth = Math.max(maxWidth, pattern[i].length());
+                for (int j = 0; j < pattern[i].length(); j++) {
+                    if (pattern[i].charAt(j) == '#') {
+                        rows[i] |= 1L << j;
+                    }
+                }
+            }
+            this.width = maxWidth;
+        }
+    }
+}
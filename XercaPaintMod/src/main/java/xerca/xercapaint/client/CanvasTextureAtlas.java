@@ -0,0 +1,292 @@
+package xerca.xercapaint.client;
+
+import net.minecraft.client.renderer.texture.DynamicTexture;
+import net.minecraft.client.renderer.texture.TextureManager;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import xerca.xercapaint.common.CanvasTiles;
+import xerca.xercapaint.common.PackedColor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs canvas images into shared texture pages, so all canvases on a page can be drawn with a single render type.
+ * Pages are split into cells of cellSize pixels and a canvas takes the smallest aligned block of cells that fits it.
+ * Freed blocks are kept in per-size free lists and handed out again before the page is scanned for space.
+ * Empty pages are closed.
+ */
+@OnlyIn(Dist.CLIENT)
+public class CanvasTextureAtlas implements AutoCloseable {
+    static final int pageSize = 256;
+    static final int cellSize = 16;
+    private static final int cellsPerSide = pageSize / cellSize;
+
+    private final TextureManager textureManager;
+    private final List<Page> pages = new ArrayList<>();
+
+    CanvasTextureAtlas(TextureManager textureManager) {
+        this.textureManager = textureManager;
+    }
+
+    public Slot allocate(int width, int height) {
+        if (width <= 0 || height <= 0 || width > pageSize || height > pageSize) {
+            throw new IllegalArgumentException("Canvas of size " + width + "x" + height + " does not fit in an atlas page");
+        }
+        for (Page page : pages) {
+            Slot slot = page.allocate(width, height);
+            if (slot != null) {
+                return slot;
+            }
+        }
+        Page page = new Page(pages.size());
+        pages.add(page);
+        return page.allocate(width, height);
+    }
+
+    public void free(Slot slot) {
+        if (slot.freed) {
+            return;
+        }
+        slot.freed = true;
+        Page page = slot.page;
+        page.free(slot);
+        if (page.usedCells == 0) {
+            pages.remove(page);
+            page.close();
+        }
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    @Override
+    public void close() {
+        for (Page page : pages) {
+            page.close();
+        }
+        pages.clear();
+    }
+
+    /**
+     * Where a slot writes its pixels, a page of the atlas outside of the benchmarks
+     */
+    interface Surface {
+        void setPixelRGBA(int x, int y, int abgr);
+
+        void fillAreaRGBA(int x, int y, int width, int height, int abgr);
+
+        void upload(int x, int y, int width, int height);
+    }
+
+    @OnlyIn(Dist.CLIENT)
+    class Page implements Surface, AutoCloseable {
+        private final DynamicTexture texture;
+        final ResourceLocation location;
+        private final boolean[] used = new boolean[cellsPerSide * cellsPerSide];
+        private int usedCells = 0;
+        // Freed blocks by size in cells, they may have been partly reused by a smaller canvas since
+        private final Map<Integer, Deque<int[]>> freeBlocks = new HashMap<>();
+
+        private Page(int index) {
+            this.texture = new DynamicTexture(pageSize, pageSize, true);
+            this.location = textureManager.getDynamicTextureLocation("canvas_atlas/" + index, this.texture);
+        }
+
+        private Slot allocate(int width, int height) {
+            final int cw = (width + cellSize - 1) / cellSize;
+            final int ch = (height + cellSize - 1) / cellSize;
+
+            Deque<int[]> free = freeBlocks.get(sizeKey(cw, ch));
+            while (free != null && !free.isEmpty()) {
+                int[] block = free.pop();
+                if (isFree(block[0], block[1], cw, ch)) {
+                    return occupy(block[0], block[1], cw, ch, width, height);
+                }
+            }
+
+            for (int cy = 0; cy + ch <= cellsPerSide; cy += ch) {
+                for (int cx = 0; cx + cw <= cellsPerSide; cx += cw) {
+                    if (isFree(cx, cy, cw, ch)) {
+                        return occupy(cx, cy, cw, ch, width, height);
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void free(Slot slot) {
+            final int cw = (slot.width + cellSize - 1) / cellSize;
+            final int ch = (slot.height + cellSize - 1) / cellSize;
+            final int cx = slot.x / cellSize;
+            final int cy = slot.y / cellSize;
+            setUsed(cx, cy, cw, ch, false);
+            usedCells -= cw * ch;
+            freeBlocks.computeIfAbsent(sizeKey(cw, ch), k -> new ArrayDeque<>()).push(new int[]{cx, cy});
+        }
+
+        private Slot occupy(int cx, int cy, int cw, int ch, int width, int height) {
+            setUsed(cx, cy, cw, ch, true);
+            usedCells += cw * ch;
+            return new Slot(this, cx * cellSize, cy * cellSize, width, height);
+        }
+
+        private boolean isFree(int cx, int cy, int cw, int ch) {
+            for (int j = cy; j < cy + ch; j++) {
+                for (int i = cx; i < cx + cw; i++) {
+                    if (used[i + j * cellsPerSide]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private void setUsed(int cx, int cy, int cw, int ch, boolean value) {
+            for (int j = cy; j < cy + ch; j++) {
+                for (int i = cx; i < cx + cw; i++) {
+                    used[i + j * cellsPerSide] = value;
+                }
+            }
+        }
+
+        private int sizeKey(int cw, int ch) {
+            return cw | ch << 8;
+        }
+
+        @Override
+        public void setPixelRGBA(int x, int y, int abgr) {
+            texture.getTextureData().setPixelRGBA(x, y, abgr);
+        }
+
+        @Override
+        public void fillAreaRGBA(int x, int y, int width, int height, int abgr) {
+            texture.getTextureData().fillAreaRGBA(x, y, width, height, abgr);
+        }
+
+        @Override
+        public void upload(int x, int y, int width, int height) {
+            texture.bindTexture();
+            texture.getTextureData().uploadTextureSub(0, x, y, x, y, width, height, false, false, false, false);
+        }
+
+        @Override
+        public void close() {
+            texture.close();
+        }
+    }
+
+    /**
+     * Area of a page that holds one canvas image
+     */
+    @OnlyIn(Dist.CLIENT)
+    public static class Slot {
+        final Page page;
+        private final Surface surface;
+        final int x;
+        final int y;
+        final int width;
+        final int height;
+        final float minU;
+        final float minV;
+        final float maxU;
+        final float maxV;
+        // ARGB colours of the pixels currently in the page, to find the area that changed
+        private final int[] uploaded;
+        private final CanvasTiles changedTiles;
+        private boolean freed = false;
+
+        private Slot(Page page, int x, int y, int width, int height) {
+            this(page, page, x, y, width, height);
+        }
+
+        /**
+         * A slot that is not part of a page, for the benchmarks
+         */
+        Slot(Surface surface, int x, int y, int width, int height) {
+            this(null, surface, x, y, width, height);
+        }
+
+        private Slot(Page page, Surface surface, int x, int y, int width, int height) {
+            this.page = page;
+            this.surface = surface;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.minU = (float) x / pageSize;
+            this.minV = (float) y / pageSize;
+            this.maxU = (float) (x + width) / pageSize;
+            this.maxV = (float) (y + height) / pageSize;
+            this.uploaded = new int[width * height];
+            this.changedTiles = new CanvasTiles(width, height);
+        }
+
+        public ResourceLocation getLocation() {
+            return page.location;
+        }
+
+        /**
+         * Fills the slot with an ARGB colour and uploads it
+         */
+        public void fill(int color) {
+            int abgr = PackedColor.toABGR(color);
+            Arrays.fill(uploaded, color);
+            surface.fillAreaRGBA(x, y, width, height, abgr);
+            surface.upload(x, y, width, height);
+        }
+
+        /**
+         * Copies ARGB pixels into the slot in one pass and uploads only the tiles with changed pixels.
+         * Once more than half of the pixels compared so far changed, the remaining rows are copied without comparing
+         * and the whole slot is uploaded at once, which is faster for a repaint.
+         * Returns the number of pixels written.
+         */
+        public int setPixels(int[] pixels) {
+            int changed = 0;
+            int i = 0;
+            while (i < height && (i < 2 || changed <= i * width / 2)) {
+                int markedTile = -1;
+                for (int j = 0, k = i * width; j < width; ++j, ++k) {
+                    int color = pixels[k];
+                    if (color != uploaded[k]) {
+                        uploaded[k] = color;
+                        surface.setPixelRGBA(x + j, y + i, PackedColor.toABGR(color));
+                        changed++;
+                        // Changed pixels come in runs, most of them are in the tile marked last
+                        int tile = j / CanvasTiles.TILE_SIZE;
+                        if (tile != markedTile) {
+                            changedTiles.mark(j, i);
+                            markedTile = tile;
+                        }
+                    }
+                }
+                ++i;
+            }
+            if (i < height) {
+                final int from = i * width;
+                System.arraycopy(pixels, from, uploaded, from, width * height - from);
+                changed += width * height - from;
+                for (int k = from; i < height; ++i) {
+                    for (int j = 0; j < width; ++j, ++k) {
+                        surface.setPixelRGBA(x + j, y + i, PackedColor.toABGR(pixels[k]));
+                    }
+                }
+                surface.upload(x, y, width, height);
+                changedTiles.clear();
+            }
+            else if (changed > 0) {
+                changedTiles.forEachDirty((left, top, tileWidth, tileHeight) -> surface.upload(x + left, y + top, tileWidth, tileHeight));
+                changedTiles.clear();
+            }
+            return changed;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package xerca.xercapaint.client;
+
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercapaint.common.CanvasImages;
+import xerca.xercapaint.common.CanvasPixelCodec;
+import xerca.xercapaint.common.Config;
+import xerca.xercapaint.common.XercaPaint;
+
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Downsampled canvas images for item icons, keyed by the {@link xerca.xercapaint.common.CanvasStore} hash of the pixels.
+ * Thumbnails are decoded and scaled on {@link CanvasImages#getWorkers()} and uploaded into a texture atlas of their own,
+ * a few per frame, so a chest full of paintings costs nothing per frame once its thumbnails are built.
+ * The least recently drawn thumbnails are dropped when there are more than the configured number.
+ */
+@OnlyIn(Dist.CLIENT)
+@Mod.EventBusSubscriber(modid = XercaPaint.MODID, value = Dist.CLIENT)
+public class CanvasThumbnails {
+    // Longest side of a thumbnail, the size of an item icon
+    static final int maxSize = 16;
+    private static final int uploadsPerFrame = 16;
+
+    @Nullable
+    private static CanvasTextureAtlas atlas;
+    // Access ordered, the eldest entry is the least recently drawn
+    private static final LinkedHashMap<String, CanvasTextureAtlas.Slot> thumbnails = new LinkedHashMap<>(64, 0.75f, true);
+    private static final Set<String> building = ConcurrentHashMap.newKeySet();
+    private static final Queue<Built> built = new ConcurrentLinkedQueue<>();
+
+    private static class Built {
+        final String hash;
+        final int[] pixels;
+        final int width;
+        final int height;
+
+        Built(String hash, int[] pixels, int width, int height) {
+            this.hash = hash;
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Returns the thumbnail of the canvas pixels with the hash, or null if it is not built yet.
+     * Called on the render thread.
+     */
+    @Nullable
+    static CanvasTextureAtlas.Slot get(String hash, int width, int height) {
+        CanvasTextureAtlas.Slot slot = thumbnails.get(hash);
+        if (slot != null) {
+            return slot;
+        }
+        uploadBuilt();
+        slot = thumbnails.get(hash);
+        if (slot == null && !building.contains(hash)) {
+            // Null while the client cache is fetching it, tried again on the next frame
+            byte[] data = XercaPaint.proxy.getCanvasData(hash);
+            if (data != null && building.add(hash)) {
+                CanvasImages.getWorkers().execute(() -> build(hash, data, width, height));
+            }
+        }
+        return slot;
+    }
+
+    private static void build(String hash, byte[] data, int width, int height) {
+        int[] pixels = CanvasPixelCodec.decode(data, width * height);
+        if (pixels == null || pixels.length != width * height) {
+            XercaPaint.LOGGER.warn("Invalid canvas data " + hash + " for a thumbnail");
+            return;
+        }
+        final int factor = (Math.max(width, height) + maxSize - 1) / maxSize;
+        final int thumbWidth = Math.max(1, width / factor);
+        final int thumbHeight = Math.max(1, height / factor);
+        built.add(new Built(hash, downsample(pixels, width, thumbWidth, thumbHeight, factor), thumbWidth, thumbHeight));
+    }
+
+    /**
+     * Averages every factor x factor block of pixels
+     */
+    private static int[] downsample(int[] pixels, int width, int thumbWidth, int thumbHeight, int factor) {
+        if (factor == 1) {
+            return pixels;
+        }
+        final int count = factor * factor;
+        int[] result = new int[thumbWidth * thumbHeight];
+        for (int ty = 0; ty < thumbHeight; ty++) {
+            for (int tx = 0; tx < thumbWidth; tx++) {
+                int r = 0, g = 0, b = 0;
+                for (int y = ty * factor; y < (ty + 1) * factor; y++) {
+                    for (int x = tx * factor; x < (tx + 1) * factor; x++) {
+                        int color = pixels[x + y * width];
+                        r += (color >> 16) & 0xFF;
+                        g += (color >> 8) & 0xFF;
+                        b += color & 0xFF;
+                    }
+                }
+                result[tx + ty * thumbWidth] = 0xFF000000 | (r / count) << 16 | (g / count) << 8 | (b / count);
+            }
+        }
+        return result;
+    }
+
+    private static void uploadBuilt() {
+        for (int i = 0; i < uploadsPerFrame; i++) {
+            Built thumbnail = built.poll();
+            if (thumbnail == null) {
+                break;
+            }
+            building.remove(thumbnail.hash);
+            if (atlas == null) {
+                atlas = new CanvasTextureAtlas(Minecraft.getInstance().getTextureManager());
+            }
+            CanvasTextureAtlas.Slot slot = atlas.allocate(thumbnail.width, thumbnail.height);
+            slot.setPixels(thumbnail.pixels);
+            CanvasTextureAtlas.Slot old = thumbnails.put(thumbnail.hash, slot);
+            if (old != null) {
+                atlas.free(old);
+            }
+        }
+        Iterator<CanvasTextureAtlas.Slot> iterator = thumbnails.values().iterator();
+        while (thumbnails.size() > Config.getThumbnailCacheSize() && iterator.hasNext()) {
+            CanvasTextureAtlas.Slot eldest = iterator.next();
+            iterator.remove();
+            if (atlas != null) {
+                atlas.free(eldest);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        Minecraft.getInstance().execute(() -> {
+            thumbnails.clear();
+            built.clear();
+            building.clear();
+            if (atlas != null) {
+                atlas.close();
+                atlas = null;
+            }
+        });
+    }
+}
@@ -0,0 +1,287 @@
+package xerca.xercapaint.client;
+
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercapaint.common.CanvasStore;
+import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.packets.CanvasDataRequestPacket;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Client side cache of encoded canvas pixels, keyed by their {@link CanvasStore} hash.
+ * Misses are looked up in the on-disk cache first and then requested from the server,
+ * a few hashes per tick. The cache is content addressed, so it is shared by all worlds and servers.
+ *
+ * Memory holds the data used most recently, up to maxMemoryBytes, and is emptied on logout. The disk cache is pruned
+ * to maxDiskBytes, dropping the files read or written least recently. A hash the server did not have, or did not answer
+ * in time, can be requested again after a delay that doubles with each miss.
+ */
+@OnlyIn(Dist.CLIENT)
+@Mod.EventBusSubscriber(modid = XercaPaint.MODID, value = Dist.CLIENT)
+public class ClientCanvasCache {
+    // Stays below what CanvasDataRequestPacketHandler allows per second
+    private static final int requestsPerTick = 3;
+    private static final int maxInFlight = 32;
+    private static final int requestTimeoutTicks = 200;
+    private static final int firstRetryTicks = 20;
+    private static final int maxRetryTicks = 1200;
+    private static final int maxMemoryBytes = 16*1024*1024;
+    private static final long maxDiskBytes = 256L*1024*1024;
+    private static final Pattern hashPattern = Pattern.compile("[0-9a-f]{64}");
+
+    // In access order, so the least recently used data comes first. Guarded by itself.
+    private static final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private static int memoryBytes = 0;
+    // Hashes that are being loaded from disk or fetched
+    private static final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private static final Queue<String> fetchQueue = new ConcurrentLinkedQueue<>();
+    // Tick each hash was requested at
+    private static final Map<String, Integer> inFlight = new ConcurrentHashMap<>();
+    // Hashes that were missed, with the tick they can be requested again at
+    private static final Map<String, Miss> misses = new ConcurrentHashMap<>();
+    private static volatile int ticks = 0;
+    // Size of the disk cache, -1 until the IO thread measured it
+    private static long diskBytes = -1;
+    private static final ExecutorService diskExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Canvas cache IO");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class Miss {
+        final int count;
+        final int retryTick;
+
+        Miss(int count, int retryTick) {
+            this.count = count;
+            this.retryTick = retryTick;
+        }
+    }
+
+    /**
+     * Returns the data if it is available right away, otherwise starts loading it and returns null
+     */
+    @Nullable
+    public static byte[] get(String hash) {
+        byte[] data;
+        synchronized (memory) {
+            data = memory.get(hash);
+        }
+        if (data != null) {
+            return data;
+        }
+        // Integrated server
+        data = CanvasStore.lookup(hash);
+        if (data != null) {
+            return data;
+        }
+        Miss miss = misses.get(hash);
+        if (miss != null && ticks < miss.retryTick) {
+            return null;
+        }
+        if (hashPattern.matcher(hash).matches() && pending.add(hash)) {
+            diskExecutor.execute(() -> loadFromDisk(hash));
+        }
+        return null;
+    }
+
+    public static void put(String hash, byte[] data) {
+        if (!hashPattern.matcher(hash).matches() || !CanvasStore.hashOf(data).equals(hash)) {
+            XercaPaint.LOGGER.warn("Received canvas data does not match its hash " + hash);
+            return;
+        }
+        if (putInMemory(hash, data)) {
+            diskExecutor.execute(() -> saveToDisk(hash, data));
+        }
+        misses.remove(hash);
+        pending.remove(hash);
+    }
+
+    /**
+     * Returns false if the data was already in memory
+     */
+    private static boolean putInMemory(String hash, byte[] data) {
+        synchronized (memory) {
+            if (memory.put(hash, data) != null) {
+                return false;
+            }
+            memoryBytes += data.length;
+            // Forgets the least recently used data, always keeping the newest entry
+            Iterator<byte[]> iterator = memory.values().iterator();
+            while (memoryBytes > maxMemoryBytes && memory.size() > 1) {
+                memoryBytes -= iterator.next().length;
+                iterator.remove();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Called when the server answers a request. Empty data means the server does not have it.
+     */
+    public static void onReceived(String hash, byte[] data) {
+        boolean wasInFlight = inFlight.remove(hash) != null;
+        if (data.length > 0) {
+            put(hash, data);
+        } else if (wasInFlight) {
+            XercaPaint.LOGGER.debug("Server has no canvas data " + hash);
+            missed(hash);
+        }
+    }
+
+    /**
+     * Stops waiting for the hash, the next {@link #get} after the backoff delay asks for it again
+     */
+    private static void missed(String hash) {
+        Miss miss = misses.get(hash);
+        int count = miss == null ? 0 : Math.min(miss.count + 1, 16);
+        misses.put(hash, new Miss(count, ticks + Math.min(maxRetryTicks, firstRetryTicks << count)));
+        pending.remove(hash);
+    }
+
+    private static File cacheDir() {
+        return new File(Minecraft.getInstance().gameDir, "xercapaint_cache");
+    }
+
+    private static void loadFromDisk(String hash) {
+        File file = new File(cacheDir(), hash);
+        if (file.isFile()) {
+            try {
+                byte[] data = Files.readAllBytes(file.toPath());
+                if (CanvasStore.hashOf(data).equals(hash)) {
+                    // Marks the file as recently used for pruning
+                    file.setLastModified(System.currentTimeMillis());
+                    putInMemory(hash, data);
+                    misses.remove(hash);
+                    pending.remove(hash);
+                    return;
+                }
+                XercaPaint.LOGGER.warn("Corrupt canvas cache file " + file);
+            } catch (IOException e) {
+                XercaPaint.LOGGER.warn("Could not read canvas cache file " + file + ": " + e);
+            }
+        }
+        fetchQueue.add(hash);
+    }
+
+    private static void saveToDisk(String hash, byte[] data) {
+        File dir = cacheDir();
+        File file = new File(dir, hash);
+        if (file.isFile()) {
+            return;
+        }
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+            Files.write(file.toPath(), data);
+        } catch (IOException e) {
+            XercaPaint.LOGGER.warn("Could not write canvas cache file " + file + ": " + e);
+            return;
+        }
+        if (diskBytes < 0) {
+            pruneDisk(dir);
+        } else {
+            diskBytes += data.length;
+            if (diskBytes > maxDiskBytes) {
+                pruneDisk(dir);
+            }
+        }
+    }
+
+    /**
+     * Measures the disk cache and deletes the least recently used files until it is a quarter below its budget.
+     * Runs on the IO thread.
+     */
+    private static void pruneDisk(File dir) {
+        File[] files = dir.listFiles(file -> file.isFile() && hashPattern.matcher(file.getName()).matches());
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total > maxDiskBytes) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                if (total <= maxDiskBytes / 4 * 3) {
+                    break;
+                }
+                long length = file.length();
+                if (file.delete()) {
+                    total -= length;
+                }
+            }
+        }
+        diskBytes = total;
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || Minecraft.getInstance().getConnection() == null) {
+            return;
+        }
+        final int now = ++ticks;
+        // Requests the server dropped, e.g. when they came too fast, are missed too
+        inFlight.entrySet().removeIf(entry -> {
+            if (now - entry.getValue() > requestTimeoutTicks) {
+                missed(entry.getKey());
+                return true;
+            }
+            return false;
+        });
+        if (fetchQueue.isEmpty()) {
+            return;
+        }
+        List<String> hashes = new ArrayList<>(requestsPerTick);
+        while (hashes.size() < requestsPerTick && inFlight.size() < maxInFlight) {
+            String hash = fetchQueue.poll();
+            if (hash == null) {
+                break;
+            }
+            if (inFlight.putIfAbsent(hash, now) == null) {
+                hashes.add(hash);
+            }
+        }
+        if (!hashes.isEmpty()) {
+            XercaPaint.NETWORK_HANDLER.sendToServer(new CanvasDataRequestPacket(hashes));
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        // Requests do not survive the connection, try again on the next server
+        pending.clear();
+        fetchQueue.clear();
+        inFlight.clear();
+        misses.clear();
+        synchronized (memory) {
+            memory.clear();
+            memoryBytes = 0;
+        }
+    }
+}
@@ -4,13 +4,17 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.text.TranslationTextComponent;
 import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ModelRegistryEvent;
 import net.minecraftforge.client.event.RenderItemInFrameEvent;
+import net.minecraftforge.client.model.ModelLoader;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.client.registry.RenderingRegistry;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent;
+import xerca.xercapaint.common.CanvasPixelCodec;
 import xerca.xercapaint.common.Proxy;
 import xerca.xercapaint.common.XercaPaint;
 import xerca.xercapaint.common.entity.Entities;
@@ -19,6 +23,8 @@ import xerca.xercapaint.common.item.ItemCanvas;
 import xerca.xercapaint.common.item.ItemPalette;
 import xerca.xercapaint.common.item.Items;
 
+import javax.annotation.Nullable;
+
 public class ClientProxy extends Proxy {
 
     @Override
@@ -60,11 +66,45 @@ public class ClientProxy extends Proxy {
         }
     }
 
+    @Override
+    public void showPlacedCanvasGui(PlayerEntity player, EntityCanvas canvas) {
+        final Minecraft minecraft = Minecraft.getInstance();
+        if(player != minecraft.player){
+            return;
+        }
+        ItemStack palette = player.getHeldItemMainhand();
+        if(!(palette.getItem() instanceof ItemPalette)){
+            palette = player.getHeldItemOffhand();
+        }
+        // Painting starts once the pixels of the canvas arrived
+        if(CanvasPixelCodec.readPixels(canvas.getCanvasNBT(), canvas.getWidthPixels()*canvas.getHeightPixels()) != null){
+            minecraft.displayGuiScreen(new GuiCanvasEdit(minecraft.player, canvas, palette.getTag(), new TranslationTextComponent("item.xercapaint.item_canvas")));
+        }
+    }
+
+    @Nullable
+    @Override
+    public byte[] getCanvasData(String hash) {
+        return ClientCanvasCache.get(hash);
+    }
+
+    @Override
+    public boolean cacheCanvasData(String hash, byte[] data) {
+        ClientCanvasCache.put(hash, data);
+        return true;
+    }
 
     @Mod.EventBusSubscriber(modid = XercaPaint.MODID, value=Dist.CLIENT, bus = Mod.EventBusSubscriber.Bus.MOD)
     static class ModBusSubscriber{
         @SubscribeEvent
         public static void clientSetupHandler(final FMLClientSetupEvent event) {
         }
+
+        @SubscribeEvent
+        public static void modelRegistryHandler(final ModelRegistryEvent event) {
+            for (ResourceLocation model : RenderItemCanvas.getIconModels()) {
+                ModelLoader.addSpecialModel(model);
+            }
+        }
     }
 }
@@ -13,14 +13,23 @@ import net.minecraft.util.text.TextFormatting;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
 import org.lwjgl.glfw.GLFW;
+import xerca.xercapaint.common.CanvasId;
+import xerca.xercapaint.common.CanvasPixelCodec;
+import xerca.xercapaint.common.CanvasTiles;
 import xerca.xercapaint.common.CanvasType;
-import xerca.xercapaint.common.PaletteUtil;
+import xerca.xercapaint.common.Config;
 import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.entity.EntityCanvas;
+import xerca.xercapaint.common.packets.CanvasDeltaPacket;
+import xerca.xercapaint.common.packets.CanvasPaintPacket;
+import xerca.xercapaint.common.packets.CanvasRects;
 import xerca.xercapaint.common.packets.CanvasUpdatePacket;
 
+import javax.annotation.Nullable;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Deque;
+import java.util.UUID;
 
 import static org.lwjgl.glfw.GLFW.*;
 
@@ -37,8 +46,6 @@ public class GuiCanvasEdit extends BasePalette {
     private int canvasPixelWidth;
     private int canvasPixelHeight;
     private int brushSize = 0;
-    private boolean touchedCanvas = false;
-    private boolean undoStarted = false;
     private boolean gettingSigned;
     private Button buttonSign;
     private Button buttonCancel;
@@ -50,11 +57,41 @@ public class GuiCanvasEdit extends BasePalette {
     private CanvasType canvasType;
     private boolean isSigned = false;
     private int[] pixels;
+    private CanvasGuiTexture texture;
     private String authorName = "";
     private String canvasTitle = "";
-    private String name = "";
+    private UUID canvasId;
     private int version = 0;
 
+    // Painted tiles are streamed to the server as rectangles every deltaInterval ticks
+    private static final int deltaInterval = 40;
+    // More painted rectangles than this are sent as one full update, which costs the same as this many deltas
+    private static final int maxDeltasPerUpdate = 4;
+    private boolean needsFullSync = false;
+    private final CanvasTiles dirtyTiles;
+
+    // Placed canvas painted on together with other players, null when painting a canvas item
+    @Nullable
+    private EntityCanvas placedCanvas;
+    // Placed canvases get the painted tiles every paintInterval ticks, so others see the strokes as they are drawn
+    private static final int paintInterval = 4;
+    // The screen closes after this many paint packets in a row were refused
+    private static final int maxRefusedPaints = 5;
+    private int paintSeq = 0;
+    private int refusedPaints = 0;
+    // Paint packets the server has not confirmed yet, re-applied on top of the changes it sends
+    private final Deque<SentPaint> sentPaints = new ArrayDeque<>();
+
+    private static class SentPaint {
+        final int seq;
+        final CanvasRects rects;
+
+        SentPaint(int seq, CanvasRects rects) {
+            this.seq = seq;
+            this.rects = rects;
+        }
+    }
+
     private static final Vec2f[] outlinePoss1 = {
             new Vec2f(0.f, 199.0f),
             new Vec2f(12.f, 199.0f),
@@ -69,126 +106,82 @@ public class GuiCanvasEdit extends BasePalette {
             new Vec2f(169.f, 199.0f),
     };
 
-    private static final int maxUndoLength = 16;
-    private Deque<int[]> undoStack = new ArrayDeque<>(maxUndoLength);
+    private final CanvasHistory history;
+    private final CanvasRasterizer rasterizer;
+    // Brush origin of the last painted stamp, the start of shift-click lines and rectangles
+    private int lastPaintX = Integer.MIN_VALUE;
+    private int lastPaintY = Integer.MIN_VALUE;
+    private boolean painting = false;
 
     protected GuiCanvasEdit(PlayerEntity player, CompoundNBT canvasTag, CompoundNBT paletteTag, ITextComponent title, CanvasType canvasType) {
         super(title, paletteTag);
         updateCount = 0;
 
         this.canvasType = canvasType;
-        this.canvasPixelScale = canvasType == CanvasType.SMALL ? 10 : 5;
         this.canvasPixelWidth = CanvasType.getWidth(canvasType);
         this.canvasPixelHeight = CanvasType.getHeight(canvasType);
+        this.canvasPixelScale = CanvasGuiTexture.pixelScale(canvasPixelWidth, canvasPixelHeight);
         int canvasPixelArea = canvasPixelHeight*canvasPixelWidth;
         this.canvasWidth = this.canvasPixelWidth * this.canvasPixelScale;
         this.canvasHeight = this.canvasPixelHeight * this.canvasPixelScale;
-        if(canvasType.equals(CanvasType.LONG)){
-            this.canvasY += 40;
-        }
+        this.dirtyTiles = new CanvasTiles(canvasPixelWidth, canvasPixelHeight);
+        // Center wide canvases vertically
+        this.canvasY += (CanvasGuiTexture.screenSize - this.canvasHeight) / 2;
 
         this.editingPlayer = player;
         if (canvasTag != null && !canvasTag.isEmpty()) {
-            int[] nbtPixels = canvasTag.getIntArray("pixels");
+            int[] nbtPixels = CanvasPixelCodec.readPixels(canvasTag, canvasPixelArea);
             this.authorName = canvasTag.getString("author");
             this.canvasTitle = canvasTag.getString("title");
-            this.name = canvasTag.getString("name");
+            this.canvasId = CanvasId.get(canvasTag);
             this.version = canvasTag.getInt("v");
 
-            this.pixels =  Arrays.copyOfRange(nbtPixels, 0, canvasPixelArea);
+            if(nbtPixels != null){
+                this.pixels =  Arrays.copyOfRange(nbtPixels, 0, canvasPixelArea);
+            }
         } else {
             this.isSigned = false;
         }
 
         if (this.pixels == null) {
             this.pixels = new int[canvasPixelArea];
-            Arrays.fill(this.pixels, basicColors[15].rgbVal());
-
-            long secs = System.currentTimeMillis()/1000;
-            this.name = "" + player.getUniqueID().toString() + "_" + secs;
+            Arrays.fill(this.pixels, basicColors[15]);
+            this.canvasId = null;
+        }
+        if (this.canvasId == null) {
+            this.canvasId = CanvasId.create();
+            this.needsFullSync = true;
         }
+        this.history = new CanvasHistory(this.pixels, Config.getUndoHistoryBudget());
+        this.rasterizer = new CanvasRasterizer(this.pixels, canvasPixelWidth, canvasPixelHeight, (index, oldColor) -> {
+            history.record(index, oldColor);
+            markPixelChanged(index);
+        });
     }
 
-    private int getPixelAt(int x, int y){
-        return this.pixels[y*canvasPixelWidth + x];
+    protected GuiCanvasEdit(PlayerEntity player, EntityCanvas canvas, CompoundNBT paletteTag, ITextComponent title) {
+        this(player, canvas.getCanvasNBT(), paletteTag, title, canvas.getCanvasType());
+        this.placedCanvas = canvas;
     }
 
-    private void setPixelAt(int x, int y, PaletteUtil.Color color){
-        if(x >= 0 && y >= 0 && x < canvasPixelWidth && y < canvasPixelHeight){
-            this.pixels[y*canvasPixelWidth + x] = color.rgbVal();
+    private void markPixelChanged(int index){
+        int x = index % canvasPixelWidth;
+        int y = index / canvasPixelWidth;
+        dirtyTiles.mark(x, y);
+        if(texture != null){
+            texture.markDirty(x, y);
         }
     }
 
-    private void setPixelsAt(int mouseX, int mouseY, PaletteUtil.Color color, int brushSize){
-        int x, y;
-        final int pixelHalf = canvasPixelScale/2;
-        switch (brushSize){
-            case 0:
-                x = (mouseX - canvasX)/ canvasPixelScale;
-                y = (mouseY - canvasY)/ canvasPixelScale;
-
-                setPixelAt(x, y, color);
-                break;
-            case 1:
-                x = (mouseX - canvasX + pixelHalf)/ canvasPixelScale;
-                y = (mouseY - canvasY + pixelHalf)/ canvasPixelScale;
-
-                setPixelAt(x, y, color);
-                setPixelAt(x-1, y, color);
-                setPixelAt(x, y-1, color);
-                setPixelAt(x-1, y-1, color);
-                break;
-            case 2:
-                x = (mouseX - canvasX + pixelHalf)/ canvasPixelScale;
-                y = (mouseY - canvasY + pixelHalf)/ canvasPixelScale;
-
-                setPixelAt(x-1, y+2, color);
-                setPixelAt(x, y+2, color);
-
-                setPixelAt(x-2, y+1, color);
-                setPixelAt(x-1, y+1, color);
-                setPixelAt(x, y+1, color);
-                setPixelAt(x+1, y+1, color);
-
-                setPixelAt(x-2, y, color);
-                setPixelAt(x-1, y, color);
-                setPixelAt(x, y, color);
-                setPixelAt(x+1, y, color);
-
-                setPixelAt(x-1, y-1, color);
-                setPixelAt(x, y-1, color);
-                break;
-            case 3:
-                x = (mouseX - canvasX)/ canvasPixelScale;
-                y = (mouseY - canvasY)/ canvasPixelScale;
-
-                setPixelAt(x-1, y+2, color);
-                setPixelAt(x+0, y+2, color);
-                setPixelAt(x+1, y+2, color);
-
-                setPixelAt(x-2, y+1, color);
-                setPixelAt(x-1, y+1, color);
-                setPixelAt(x+0, y+1, color);
-                setPixelAt(x+1, y+1, color);
-                setPixelAt(x+2, y+1, color);
-
-                setPixelAt(x-2, y, color);
-                setPixelAt(x-1, y, color);
-                setPixelAt(x+0, y, color);
-                setPixelAt(x+1, y, color);
-                setPixelAt(x+2, y, color);
-
-                setPixelAt(x-2, y-1, color);
-                setPixelAt(x-1, y-1, color);
-                setPixelAt(x+0, y-1, color);
-                setPixelAt(x+1, y-1, color);
-                setPixelAt(x+2, y-1, color);
-
-                setPixelAt(x-1, y-2, color);
-                setPixelAt(x+0, y-2, color);
-                setPixelAt(x+1, y-2, color);
-                break;
-        }
+    // Canvas pixel under the brush origin. The two middle brushes have their origin at pixel corners.
+    private int brushOriginX(int mouseX){
+        final int pixelHalf = (brushSize == 1 || brushSize == 2) ? canvasPixelScale/2 : 0;
+        return Math.floorDiv(mouseX - canvasX + pixelHalf, canvasPixelScale);
+    }
+
+    private int brushOriginY(int mouseY){
+        final int pixelHalf = (brushSize == 1 || brushSize == 2) ? canvasPixelScale/2 : 0;
+        return Math.floorDiv(mouseY - canvasY + pixelHalf, canvasPixelScale);
     }
 
     @Override
@@ -236,7 +229,13 @@ public class GuiCanvasEdit extends BasePalette {
     }
 
     private void updateButtons() {
-        if (!this.isSigned) {
+        if (placedCanvas != null) {
+            // Placed canvases are signed after taking them down
+            this.buttonSign.visible = false;
+            this.buttonCancel.visible = false;
+            this.buttonFinalize.visible = false;
+        }
+        else if (!this.isSigned) {
             this.buttonSign.visible = !this.gettingSigned;
             this.buttonCancel.visible = this.gettingSigned;
             this.buttonFinalize.visible = this.gettingSigned;
@@ -247,6 +246,18 @@ public class GuiCanvasEdit extends BasePalette {
     @Override
     public void tick() {
         ++this.updateCount;
+        if (placedCanvas != null) {
+            if (!placedCanvas.isAlive() && minecraft != null) {
+                minecraft.displayGuiScreen(null);
+                return;
+            }
+            if (this.updateCount % paintInterval == 0) {
+                sendPaint();
+            }
+        }
+        else if (this.updateCount % deltaInterval == 0) {
+            sendCanvasUpdate();
+        }
         super.tick();
     }
 
@@ -260,19 +271,17 @@ public class GuiCanvasEdit extends BasePalette {
         }
 
         // Draw the canvas
-        for(int i=0; i<canvasPixelHeight; i++){
-            for(int j=0; j<canvasPixelWidth; j++){
-                int y = canvasY + i* canvasPixelScale;
-                int x = canvasX + j* canvasPixelScale;
-                fill(x, y, x + canvasPixelScale, y + canvasPixelScale, getPixelAt(j, i));
-            }
+        if(texture == null){
+            texture = new CanvasGuiTexture(canvasPixelWidth, canvasPixelHeight);
         }
+        texture.render(pixels, canvasX, canvasY, canvasPixelScale);
+        this.minecraft.getTextureManager().bindTexture(noteGuiTextures);
 
         // Draw brush meter
         if(!gettingSigned){
             for(int i=0; i<4; i++){
                 int y = brushMeterY + i*brushSpriteSize;
-                fill(brushMeterX, y, brushMeterX + 3, y + 3, currentColor.rgbVal());
+                fill(brushMeterX, y, brushMeterX + 3, y + 3, currentColor);
             }
             GlStateManager.color4f(1.0F, 1.0F, 1.0F, 1.0F);
             blit(brushMeterX, brushMeterY + (3 - brushSize)*brushSpriteSize, 15, 246, 10, 10);
@@ -288,11 +297,11 @@ public class GuiCanvasEdit extends BasePalette {
 
     private void renderCursor(int mouseX, int mouseY){
         if(isCarryingColor){
-            carriedColor.setGLColor();
+            setGLColor(carriedColor);
             blit(mouseX-brushSpriteSize/2, mouseY-brushSpriteSize/2, brushSpriteX+brushSpriteSize, brushSpriteY, dropSpriteWidth, brushSpriteSize);
 
         }else if(isCarryingWater){
-            waterColor.setGLColor();
+            setGLColor(waterColor);
             blit(mouseX-brushSpriteSize/2, mouseY-brushSpriteSize/2, brushSpriteX+brushSpriteSize, brushSpriteY, dropSpriteWidth, brushSpriteSize);
         }else{
             if(inCanvas(mouseX, mouseY)){
@@ -322,20 +331,23 @@ public class GuiCanvasEdit extends BasePalette {
                     outlineSize = canvasPixelScale*5 + 2;
                 }
 
-                Vec2f textureVec;
-                if(canvasPixelScale == 10){
-                    textureVec = outlinePoss1[brushSize];
+                if(canvasPixelScale == 10 || canvasPixelScale == 5){
+                    Vec2f textureVec = canvasPixelScale == 10 ? outlinePoss1[brushSize] : outlinePoss2[brushSize];
+                    GlStateManager.color4f(0.3F, 0.3F, 0.3F, 1.0F);
+                    blit(x, y, (int)textureVec.x, (int)textureVec.y, outlineSize, outlineSize);
                 }
                 else{
-                    textureVec = outlinePoss2[brushSize];
+                    // No outline sprites for the scales of other canvas sizes, draw a square
+                    final int outlineColor = 0xFF4C4C4C;
+                    fill(x, y, x + outlineSize, y + 1, outlineColor);
+                    fill(x, y + outlineSize - 1, x + outlineSize, y + outlineSize, outlineColor);
+                    fill(x, y, x + 1, y + outlineSize, outlineColor);
+                    fill(x + outlineSize - 1, y, x + outlineSize, y + outlineSize, outlineColor);
                 }
 
-                GlStateManager.color4f(0.3F, 0.3F, 0.3F, 1.0F);
-                blit(x, y, (int)textureVec.x, (int)textureVec.y, outlineSize, outlineSize);
-
             }
 
-            fill(mouseX, mouseY, mouseX + 3, mouseY + 3, currentColor.rgbVal());
+            fill(mouseX, mouseY, mouseX + 3, mouseY + 3, currentColor);
 
             GlStateManager.color4f(1.0F, 1.0F, 1.0F, 1.0F);
             int trueBrushY = brushSpriteY - brushSpriteSize*brushSize;
@@ -392,10 +404,15 @@ public class GuiCanvasEdit extends BasePalette {
             return true;
         }
         else {
-            if (keyCode == GLFW.GLFW_KEY_Z && (modifiers & GLFW.GLFW_MOD_CONTROL) == GLFW.GLFW_MOD_CONTROL) {
-                if (undoStack.size() > 0) {
-                    pixels = undoStack.pop();
-                }
+            boolean control = (modifiers & GLFW.GLFW_MOD_CONTROL) == GLFW.GLFW_MOD_CONTROL;
+            boolean shift = (modifiers & GLFW.GLFW_MOD_SHIFT) == GLFW.GLFW_MOD_SHIFT;
+            if (control && keyCode == GLFW.GLFW_KEY_Z && !shift) {
+                history.endStroke();
+                history.undo(this::markPixelChanged);
+                return true;
+            } else if (control && (keyCode == GLFW.GLFW_KEY_Y || (keyCode == GLFW.GLFW_KEY_Z && shift))) {
+                history.endStroke();
+                history.redo(this::markPixelChanged);
                 return true;
             } else {
                 return super.keyPressed(keyCode, scanCode, modifiers);
@@ -423,7 +440,7 @@ public class GuiCanvasEdit extends BasePalette {
     public boolean mouseScrolled(double x, double y, double scroll) {
         if (!gettingSigned && scroll != 0.d) {
             //System.out.println("wheel: "+wheelState);
-            final int maxBrushSize = 3;
+            final int maxBrushSize = CanvasRasterizer.brushes.length - 1;
             brushSize += scroll > 0 ? 1 : -1;
             if (brushSize > maxBrushSize) brushSize = 0;
             else if (brushSize < 0) brushSize = maxBrushSize;
@@ -442,12 +459,7 @@ public class GuiCanvasEdit extends BasePalette {
         int mouseX = (int)Math.floor(posX);
         int mouseY = (int)Math.floor(posY);
 
-        undoStarted = true;
-        touchedCanvas = false;
-        if(undoStack.size() >= maxUndoLength){
-            undoStack.removeLast();
-        }
-        undoStack.push(pixels.clone());
+        history.beginStroke();
 
         if(inCanvas(mouseX, mouseY)){
             clickedCanvas(mouseX, mouseY, mouseButton);
@@ -462,15 +474,57 @@ public class GuiCanvasEdit extends BasePalette {
         return super.mouseClicked(mouseX, mouseY, mouseButton);
     }
 
+    /**
+     * Left click paints with the current colour and right click "erases" with white.
+     * Control-click flood fills, shift-click draws a line and control-shift-click a rectangle from the last painted point.
+     */
     private void clickedCanvas(int mouseX, int mouseY, int mouseButton){
-        touchedCanvas = true;
+        final int color = paintColor(mouseButton);
+        if(color == 0){
+            return;
+        }
+        final int x = brushOriginX(mouseX);
+        final int y = brushOriginY(mouseY);
+        final CanvasRasterizer.Mask brush = CanvasRasterizer.brushes[brushSize];
+        final boolean hasLast = lastPaintX != Integer.MIN_VALUE;
+
+        if(hasControlDown() && hasShiftDown() && hasLast){
+            rasterizer.rect(brush, lastPaintX, lastPaintY, x, y, color);
+        }else if(hasControlDown()){
+            rasterizer.floodFill((mouseX - canvasX)/canvasPixelScale, (mouseY - canvasY)/canvasPixelScale, color);
+            return;
+        }else if(hasShiftDown() && hasLast){
+            rasterizer.line(brush, lastPaintX, lastPaintY, x, y, color);
+        }else{
+            rasterizer.stamp(brush, x, y, color);
+        }
+        lastPaintX = x;
+        lastPaintY = y;
+        painting = true;
+    }
+
+    /**
+     * Connects the drag samples with lines, so fast strokes have no gaps. Lines are clipped to the canvas.
+     */
+    private void draggedCanvas(int mouseX, int mouseY, int mouseButton){
+        final int color = paintColor(mouseButton);
+        if(color == 0){
+            return;
+        }
+        final int x = brushOriginX(mouseX);
+        final int y = brushOriginY(mouseY);
+        rasterizer.line(CanvasRasterizer.brushes[brushSize], lastPaintX, lastPaintY, x, y, color);
+        lastPaintX = x;
+        lastPaintY = y;
+    }
+
+    private int paintColor(int mouseButton){
         if(mouseButton == GLFW_MOUSE_BUTTON_LEFT){
-            setPixelsAt(mouseX, mouseY, currentColor, brushSize);
+            return currentColor;
         }else if(mouseButton == GLFW_MOUSE_BUTTON_RIGHT){
-            // "Erase" with right click
-            setPixelsAt(mouseX, mouseY, PaletteUtil.Color.WHITE, brushSize);
+            return 0xFFFFFFFF;
         }
-        dirty = true;
+        return 0;
     }
 
     @Override
@@ -479,10 +533,8 @@ public class GuiCanvasEdit extends BasePalette {
             return super.superMouseReleased(posX, posY, mouseButton);
         }
 
-        if(undoStarted && !touchedCanvas){
-            undoStarted = false;
-            undoStack.removeFirst();
-        }
+        painting = false;
+        history.endStroke();
         return super.mouseReleased(posX, posY, mouseButton);
     }
 
@@ -494,7 +546,9 @@ public class GuiCanvasEdit extends BasePalette {
 
         int mouseX = (int)Math.floor(posX);
         int mouseY = (int)Math.floor(posY);
-        if(inCanvas(mouseX, mouseY)){
+        if(painting){
+            draggedCanvas(mouseX, mouseY, mouseButton);
+        }else if(inCanvas(mouseX, mouseY)){
             clickedCanvas(mouseX, mouseY, mouseButton);
         }
         return super.mouseDragged(posX, posY, mouseButton, deltaX, deltaY);
@@ -508,12 +562,154 @@ public class GuiCanvasEdit extends BasePalette {
         return x < brushMeterX + brushSpriteSize && x >= brushMeterX && y < brushMeterY + brushSpriteSize*4 && y >= brushMeterY;
     }
 
+    /**
+     * Sends the tiles painted since the last update, as rectangles on top of the last sent version
+     */
+    private void sendCanvasUpdate() {
+        if (dirtyTiles.isEmpty()) {
+            return;
+        }
+        // Each delta is charged like a quarter of a full update by the server's rate limiter
+        final int[] rectCount = {0};
+        dirtyTiles.forEachDirty((rectX, rectY, rectWidth, rectHeight) -> rectCount[0]++);
+        if (needsFullSync || rectCount[0] > maxDeltasPerUpdate) {
+            sendFullUpdate();
+            return;
+        }
+
+        dirtyTiles.forEachDirty((rectX, rectY, rectWidth, rectHeight) -> {
+            int[] rectPixels = new int[rectWidth*rectHeight];
+            for (int i = 0; i < rectHeight; i++) {
+                System.arraycopy(pixels, (rectY + i)*canvasPixelWidth + rectX, rectPixels, i*rectWidth, rectWidth);
+            }
+
+            int baseVersion = version;
+            version ++;
+            CanvasDeltaPacket pack = new CanvasDeltaPacket(canvasId, canvasType, baseVersion, version, rectX, rectY, rectWidth, rectHeight, rectPixels);
+            XercaPaint.NETWORK_HANDLER.sendToServer(pack);
+        });
+        dirtyTiles.clear();
+    }
+
+    private void sendFullUpdate() {
+        version ++;
+        CanvasUpdatePacket pack = new CanvasUpdatePacket(pixels, isSigned, canvasTitle, canvasId, version, customColors, canvasType);
+        XercaPaint.NETWORK_HANDLER.sendToServer(pack);
+        needsFullSync = false;
+        dirty = false;
+        dirtyTiles.clear();
+    }
+
+    /**
+     * Sends the tiles painted on the placed canvas since the last paint packet
+     */
+    private void sendPaint() {
+        if (dirtyTiles.isEmpty() || placedCanvas == null) {
+            return;
+        }
+        CanvasRects rects = new CanvasRects();
+        dirtyTiles.forEachDirty((rectX, rectY, rectWidth, rectHeight) -> rects.add(rectX, rectY, rectWidth, rectHeight, pixels, canvasPixelWidth));
+        dirtyTiles.clear();
+        paintSeq ++;
+        sentPaints.addLast(new SentPaint(paintSeq, rects));
+        XercaPaint.NETWORK_HANDLER.sendToServer(new CanvasPaintPacket(placedCanvas.getEntityId(), paintSeq, rects));
+    }
+
+    /**
+     * Applies the changes of all painters on the placed canvas. ackSeq is our last paint packet in them, or -1.
+     * Our unconfirmed and unsent pixels are painted again on top, the server applies them after these changes.
+     */
+    public void onPlacedCanvasPainted(EntityCanvas canvas, CanvasRects rects, int ackSeq) {
+        if (canvas != placedCanvas) {
+            return;
+        }
+        CanvasRects unsent = new CanvasRects();
+        dirtyTiles.forEachDirty((rectX, rectY, rectWidth, rectHeight) -> unsent.add(rectX, rectY, rectWidth, rectHeight, pixels, canvasPixelWidth));
+        final int[] shown = pixels.clone();
+
+        applyRects(rects);
+        if (ackSeq >= 0) {
+            refusedPaints = 0;
+            while (!sentPaints.isEmpty() && sentPaints.peekFirst().seq <= ackSeq) {
+                sentPaints.removeFirst();
+            }
+        }
+        for (SentPaint sent : sentPaints) {
+            applyRects(sent.rects);
+        }
+        applyRects(unsent);
+        // Our own paints were shown already, pixels that changed were painted by someone else
+        rects.forEach((rectX, rectY, rectWidth, rectHeight) -> {
+            for (int y = rectY; y < rectY + rectHeight; y++) {
+                for (int x = rectX; x < rectX + rectWidth; x++) {
+                    int index = x + y * canvasPixelWidth;
+                    if (pixels[index] != shown[index]) {
+                        history.overwritten(index);
+                    }
+                }
+            }
+        });
+        this.version = canvas.getCanvasNBT().getInt("v");
+    }
+
+    private void applyRects(CanvasRects rects) {
+        rects.apply(pixels, canvasPixelWidth);
+        if (texture != null) {
+            rects.forEach((rectX, rectY, rectWidth, rectHeight) -> {
+                for (int y = rectY; y < rectY + rectHeight; y += CanvasTiles.TILE_SIZE) {
+                    for (int x = rectX; x < rectX + rectWidth; x += CanvasTiles.TILE_SIZE) {
+                        texture.markDirty(x, y);
+                    }
+                }
+            });
+        }
+    }
+
+    public void onCanvasAck(UUID ackedCanvasId, int serverVersion, boolean accepted) {
+        if (placedCanvas != null) {
+            if (!accepted && ackedCanvasId.equals(canvasId)) {
+                // Send the refused pixels again, unless painting is not allowed anymore
+                if (++refusedPaints >= maxRefusedPaints && minecraft != null) {
+                    minecraft.displayGuiScreen(null);
+                    return;
+                }
+                for (SentPaint sent : sentPaints) {
+                    sent.rects.forEach((rectX, rectY, rectWidth, rectHeight) -> {
+                        for (int y = rectY; y < rectY + rectHeight; y += CanvasTiles.TILE_SIZE) {
+                            for (int x = rectX; x < rectX + rectWidth; x += CanvasTiles.TILE_SIZE) {
+                                dirtyTiles.mark(x, y);
+                            }
+                        }
+                    });
+                }
+                sentPaints.clear();
+            }
+            return;
+        }
+        if (!accepted && ackedCanvasId.equals(canvasId)) {
+            // The server missed an update, the next one has to carry the whole canvas
+            version = Math.max(version, serverVersion);
+            needsFullSync = true;
+            dirtyTiles.markAll();
+        }
+    }
+
     @Override
     public void removed() {
-        if (dirty) {
+        if (texture != null) {
+            texture.close();
+            texture = null;
+        }
+        if (placedCanvas != null) {
+            sendPaint();
+            if (dirty) {
+                PendingCanvasUpdates.sendPaletteUpdate(customColors);
+            }
+        }
+        else if (dirty || isSigned || needsFullSync || !dirtyTiles.isEmpty()) {
+            // The last update carries the palette and signing, and is sent again if the server rejects it after the screen is gone
             version ++;
-            CanvasUpdatePacket pack = new CanvasUpdatePacket(pixels, isSigned, canvasTitle, name, version, customColors, canvasType);
-            XercaPaint.NETWORK_HANDLER.sendToServer(pack);
+            PendingCanvasUpdates.sendCanvasUpdate(new CanvasUpdatePacket(pixels, isSigned, canvasTitle, canvasId, version, customColors, canvasType));
         }
     }
 
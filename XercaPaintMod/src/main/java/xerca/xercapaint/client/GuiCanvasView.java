@@ -6,9 +6,12 @@ import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import xerca.xercapaint.common.CanvasId;
+import xerca.xercapaint.common.CanvasPixelCodec;
 import xerca.xercapaint.common.CanvasType;
 
 import java.util.Arrays;
+import java.util.UUID;
 
 @OnlyIn(Dist.CLIENT)
 public class GuiCanvasView extends Screen {
@@ -23,9 +26,10 @@ public class GuiCanvasView extends Screen {
 
     private boolean isSigned = false;
     private int[] pixels;
+    private CanvasGuiTexture texture;
     private String authorName = "";
     private String canvasTitle = "";
-    private String name = "";
+    private UUID canvasId;
     private int version = 0;
     private int generation = 0;
 
@@ -33,22 +37,26 @@ public class GuiCanvasView extends Screen {
         super(title);
 
         this.canvasType = canvasType;
-        this.canvasPixelScale = canvasType == CanvasType.SMALL ? 10 : 5;
         this.canvasPixelWidth = CanvasType.getWidth(canvasType);
         this.canvasPixelHeight = CanvasType.getHeight(canvasType);
+        this.canvasPixelScale = CanvasGuiTexture.pixelScale(canvasPixelWidth, canvasPixelHeight);
         int canvasPixelArea = canvasPixelHeight*canvasPixelWidth;
         this.canvasWidth = this.canvasPixelWidth * this.canvasPixelScale;
         this.canvasHeight = this.canvasPixelHeight * this.canvasPixelScale;
+        // Center wide canvases vertically
+        this.canvasY += (CanvasGuiTexture.screenSize - this.canvasHeight) / 2;
 
         if (canvasTag != null && !canvasTag.isEmpty()) {
-            int[] nbtPixels = canvasTag.getIntArray("pixels");
+            int[] nbtPixels = CanvasPixelCodec.readPixels(canvasTag, canvasPixelArea);
             this.authorName = canvasTag.getString("author");
             this.canvasTitle = canvasTag.getString("title");
-            this.name = canvasTag.getString("name");
+            this.canvasId = CanvasId.get(canvasTag);
             this.version = canvasTag.getInt("v");
             this.generation = canvasTag.getInt("generation");
 
-            this.pixels =  Arrays.copyOfRange(nbtPixels, 0, canvasPixelArea);
+            if(nbtPixels != null){
+                this.pixels =  Arrays.copyOfRange(nbtPixels, 0, canvasPixelArea);
+            }
         } else {
             this.isSigned = false;
         }
@@ -57,13 +65,14 @@ public class GuiCanvasView extends Screen {
     @Override
     public void init() {
         canvasX = (this.width - canvasWidth) / 2;
-        if(canvasType.equals(CanvasType.LONG)){
-            canvasY += 40;
-        }
     }
 
-    private int getPixelAt(int x, int y){
-        return (this.pixels == null) ? 0xFFF9FFFE : this.pixels[y*canvasPixelWidth + x];
+    @Override
+    public void removed() {
+        if (texture != null) {
+            texture.close();
+            texture = null;
+        }
     }
 
     @Override
@@ -73,14 +82,19 @@ public class GuiCanvasView extends Screen {
 
     @Override
     public void render(int mouseX, int mouseY, float f) {
-        for(int i=0; i<canvasPixelHeight; i++){
-            for(int j=0; j<canvasPixelWidth; j++){
-                int x = canvasX + j*canvasPixelScale;
-                int y = canvasY + i*canvasPixelScale;
-                fill(x, y, x+canvasPixelScale, y+canvasPixelScale, getPixelAt(j, i));
+        CanvasTextureAtlas.Slot slot = canvasId == null ? null : RenderEntityCanvas.getLoadedSlot(canvasId, version);
+        if(slot != null){
+            CanvasGuiTexture.render(slot, canvasX, canvasY, canvasPixelScale);
+        }else if(pixels != null){
+            if(texture == null){
+                texture = new CanvasGuiTexture(canvasPixelWidth, canvasPixelHeight);
             }
+            texture.render(pixels, canvasX, canvasY, canvasPixelScale);
+        }else{
+            fill(canvasX, canvasY, canvasX + canvasWidth, canvasY + canvasHeight, 0xFFF9FFFE);
         }
-        
+
+
         if(generation > 0 && !canvasTitle.isEmpty()){
             String title = canvasTitle + " " + I18n.format("canvas.byAuthor", authorName);
             String gen = "(" + I18n.format("canvas.generation." + (generation - 1)) + ")";
@@ -4,8 +4,6 @@ import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
-import xerca.xercapaint.common.XercaPaint;
-import xerca.xercapaint.common.packets.PaletteUpdatePacket;
 
 @OnlyIn(Dist.CLIENT)
 public class GuiPalette extends BasePalette {
@@ -35,11 +33,11 @@ public class GuiPalette extends BasePalette {
 
     private void renderCursor(int mouseX, int mouseY){
         if(isCarryingColor){
-            carriedColor.setGLColor();
+            setGLColor(carriedColor);
             blit(mouseX-brushSpriteSize/2, mouseY-brushSpriteSize/2, brushSpriteX+brushSpriteSize, brushSpriteY, dropSpriteWidth, brushSpriteSize);
 
         }else if(isCarryingWater){
-            waterColor.setGLColor();
+            setGLColor(waterColor);
             blit(mouseX-brushSpriteSize/2, mouseY-brushSpriteSize/2, brushSpriteX+brushSpriteSize, brushSpriteY, dropSpriteWidth, brushSpriteSize);
         }
     }
@@ -47,8 +45,7 @@ public class GuiPalette extends BasePalette {
     @Override
     public void removed() {
         if (dirty) {
-            PaletteUpdatePacket pack = new PaletteUpdatePacket(customColors);
-            XercaPaint.NETWORK_HANDLER.sendToServer(pack);
+            PendingCanvasUpdates.sendPaletteUpdate(customColors);
         }
     }
 }
\ No newline at end of file
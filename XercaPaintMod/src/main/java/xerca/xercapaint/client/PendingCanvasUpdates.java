@@ -0,0 +1,146 @@
+package xerca.xercapaint.client;
+
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import xerca.xercapaint.common.PaletteUtil;
+import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.packets.CanvasUpdatePacket;
+import xerca.xercapaint.common.packets.PaletteUpdatePacket;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Updates sent when a canvas or palette screen closes, kept until the server acknowledges them.
+ * The screen is gone when a rejection arrives, so they are sent again from here unchanged, a few times at most.
+ * A canvas update the server rejected for being older than what it has is dropped.
+ * Only touched on the client thread.
+ */
+@OnlyIn(Dist.CLIENT)
+@Mod.EventBusSubscriber(modid = XercaPaint.MODID, value = Dist.CLIENT)
+public class PendingCanvasUpdates {
+    private static final int retryDelayTicks = 20;
+    private static final int ackTimeoutTicks = 200;
+    private static final int maxAttempts = 10;
+
+    private static class Pending<T> {
+        T packet;
+        int attempts = 1;
+        // Ticks until the packet is sent again, or until it is given up on while waiting for the ack
+        int ticksLeft = ackTimeoutTicks;
+        boolean waitingForAck = true;
+
+        Pending(T packet) {
+            this.packet = packet;
+        }
+
+        /**
+         * Returns false if the update should be given up on
+         */
+        boolean retryLater() {
+            if (attempts >= maxAttempts) {
+                return false;
+            }
+            ticksLeft = retryDelayTicks;
+            waitingForAck = false;
+            return true;
+        }
+    }
+
+    private static final Map<UUID, Pending<CanvasUpdatePacket>> canvasUpdates = new HashMap<>();
+    private static Pending<PaletteUpdatePacket> paletteUpdate;
+    private static int lastPaletteUpdateId = 0;
+
+    public static void sendCanvasUpdate(CanvasUpdatePacket pack) {
+        canvasUpdates.put(pack.getCanvasId(), new Pending<>(pack));
+        XercaPaint.NETWORK_HANDLER.sendToServer(pack);
+    }
+
+    public static void sendPaletteUpdate(PaletteUtil.CustomColor[] customColors) {
+        // A newer palette replaces the one that is still waiting
+        lastPaletteUpdateId ++;
+        paletteUpdate = new Pending<>(new PaletteUpdatePacket(lastPaletteUpdateId, customColors));
+        XercaPaint.NETWORK_HANDLER.sendToServer(paletteUpdate.packet);
+    }
+
+    public static void onCanvasAck(UUID canvasId, int serverVersion, boolean accepted) {
+        Pending<CanvasUpdatePacket> pending = canvasUpdates.get(canvasId);
+        if (pending == null) {
+            return;
+        }
+        if (accepted) {
+            // Acks of the updates sent before this one do not count
+            if (serverVersion >= pending.packet.getVersion()) {
+                canvasUpdates.remove(canvasId);
+            }
+        }
+        else if (serverVersion >= pending.packet.getVersion()) {
+            // The server already has a newer state of the canvas, which must not be overwritten with these pixels
+            canvasUpdates.remove(canvasId);
+            XercaPaint.LOGGER.debug("Dropped stale update of canvas " + canvasId + ", server has V: " + serverVersion);
+        }
+        else if (!pending.retryLater()) {
+            canvasUpdates.remove(canvasId);
+            XercaPaint.LOGGER.warn("Server kept rejecting the update of canvas " + canvasId);
+        }
+    }
+
+    public static void onPaletteAck(int updateId, boolean accepted) {
+        if (paletteUpdate == null || updateId != paletteUpdate.packet.getUpdateId()) {
+            return;
+        }
+        if (accepted) {
+            paletteUpdate = null;
+        }
+        else if (!paletteUpdate.retryLater()) {
+            paletteUpdate = null;
+            XercaPaint.LOGGER.warn("Server kept rejecting the palette update");
+        }
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || Minecraft.getInstance().getConnection() == null) {
+            return;
+        }
+        Iterator<Pending<CanvasUpdatePacket>> iterator = canvasUpdates.values().iterator();
+        while (iterator.hasNext()) {
+            if (!tick(iterator.next())) {
+                iterator.remove();
+            }
+        }
+        if (paletteUpdate != null && !tick(paletteUpdate)) {
+            paletteUpdate = null;
+        }
+    }
+
+    /**
+     * Sends the update again when it is due. Returns false if no ack came in time.
+     */
+    private static boolean tick(Pending<?> pending) {
+        if (--pending.ticksLeft > 0) {
+            return true;
+        }
+        if (pending.waitingForAck) {
+            return false;
+        }
+        pending.attempts ++;
+        pending.ticksLeft = ackTimeoutTicks;
+        pending.waitingForAck = true;
+        XercaPaint.NETWORK_HANDLER.sendToServer(pending.packet);
+        return true;
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        canvasUpdates.clear();
+        paletteUpdate = null;
+    }
+}
@@ -1,15 +1,15 @@
 package xerca.xercapaint.client;
 
-import com.google.common.collect.Maps;
 import com.mojang.blaze3d.matrix.MatrixStack;
 import com.mojang.blaze3d.platform.GlStateManager;
 import com.mojang.blaze3d.systems.RenderSystem;
 import com.mojang.blaze3d.vertex.IVertexBuilder;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.*;
 import net.minecraft.client.renderer.entity.EntityRenderer;
 import net.minecraft.client.renderer.entity.EntityRendererManager;
-import net.minecraft.client.renderer.texture.DynamicTexture;
 import net.minecraft.client.renderer.texture.OverlayTexture;
 import net.minecraft.client.renderer.texture.TextureManager;
 import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
@@ -19,37 +19,64 @@ import net.minecraft.util.ResourceLocation;
 import net.minecraft.util.math.BlockPos;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.client.event.RenderGameOverlayEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.client.registry.IRenderFactory;
+import xerca.xercapaint.common.CanvasId;
+import xerca.xercapaint.common.CanvasPixelCodec;
+import xerca.xercapaint.common.Config;
 import xerca.xercapaint.common.XercaPaint;
 import xerca.xercapaint.common.entity.EntityCanvas;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
 
 @OnlyIn(Dist.CLIENT)
 @ParametersAreNonnullByDefault
 public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
     static private final ResourceLocation backLocation = new ResourceLocation("minecraft", "textures/block/birch_planks.png");
+    static private final int placeholderColor = 0xFFF9FFFE;
 
     private final TextureManager textureManager;
-    private final Map<String, RenderEntityCanvas.Instance> loadedCanvases = Maps.newHashMap();
+    private final CanvasTextureAtlas atlas;
+    @Nullable
+    private static RenderEntityCanvas current;
+    // Keyed by CanvasId.key, instances are checked against the full id
+    private final Long2ObjectMap<RenderEntityCanvas.Instance> loadedCanvases = new Long2ObjectOpenHashMap<>();
+    private final Map<EntityCanvas, BakedCanvas> bakedCanvases = new WeakHashMap<>();
+    private int loadedBytes = 0;
+
+    // Texture cache statistics, shown on the debug screen
+    private static long frame = 0;
+    private static long cacheHits = 0;
+    private static long cacheMisses = 0;
+    private static long cacheEvictions = 0;
+    private static int cacheSize = 0;
+    private static int cacheBytes = 0;
+    private static int cachePages = 0;
 
     RenderEntityCanvas(EntityRendererManager renderManager) {
         super(renderManager);
         this.textureManager = Minecraft.getInstance().textureManager;
+        this.atlas = new CanvasTextureAtlas(this.textureManager);
+        current = this;
     }
 
     @Nullable
     @Override
     public ResourceLocation getEntityTexture(EntityCanvas entity) {
-        return getMapRendererInstance(entity).location;
+        return getMapRendererInstance(entity).slot.getLocation();
     }
 
     @Override
     public void render(EntityCanvas entity, float entityYaw, float partialTicks, MatrixStack matrixStackIn, IRenderTypeBuffer bufferIn, int packedLightIn) {
         CompoundNBT tag = entity.getCanvasNBT();
-        if(tag != null && tag.contains("name") ){
+        if(tag != null && CanvasId.has(tag)){
             getMapRendererInstance(entity).render(entity, entityYaw, matrixStackIn, bufferIn, entity.getHorizontalFacing());
         }
         super.render(entity, entityYaw, partialTicks, matrixStackIn, bufferIn, packedLightIn);
@@ -70,23 +97,95 @@ public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
 
     private RenderEntityCanvas.Instance getMapRendererInstance(EntityCanvas canvas) {
         CompoundNBT textureData = canvas.getCanvasNBT();
-        RenderEntityCanvas.Instance instance = this.loadedCanvases.get(textureData.getString("name"));
-        if (instance == null) {
-            instance = new Instance(canvas);
-            this.loadedCanvases.put(textureData.getString("name"), instance);
+        UUID id = CanvasId.get(textureData);
+        long key = CanvasId.key(id);
+        RenderEntityCanvas.Instance instance = this.loadedCanvases.get(key);
+        if (instance == null || !instance.id.equals(id)) {
+            cacheMisses++;
+            if (instance != null) {
+                removeInstance(key, instance);
+            }
+            instance = new Instance(canvas, id);
+            this.loadedCanvases.put(key, instance);
+            this.loadedBytes += instance.getByteSize();
         }else{
+            cacheHits++;
             int currentVersion = textureData.getInt("v");
-            if(instance.version < currentVersion){
+            if(!instance.loaded || instance.version < currentVersion){
                 instance.updateCanvasTexture(textureData);
             }
         }
+        instance.lastRenderFrame = frame;
+        instance.distanceSq = this.renderManager.getDistanceToCamera(canvas.getPosX(), canvas.getPosY(), canvas.getPosZ());
 
+        if (this.loadedBytes > Config.getTextureCacheBudget()) {
+            evictOverBudget();
+        }
+        cacheSize = this.loadedCanvases.size();
+        cacheBytes = this.loadedBytes;
+        cachePages = this.atlas.getPageCount();
         return instance;
     }
 
+    /**
+     * Closes textures until the cache fits in the budget. Canvases that were not rendered for the longest time go first,
+     * the farthest one among equally old ones. Canvases rendered in the current frame are kept even over the budget.
+     * Evicted canvases are rebuilt from their tag when they are rendered again.
+     */
+    private void evictOverBudget() {
+        while (this.loadedBytes > Config.getTextureCacheBudget()) {
+            RenderEntityCanvas.Instance victim = null;
+            for (RenderEntityCanvas.Instance instance : this.loadedCanvases.values()) {
+                if (instance.lastRenderFrame >= frame) {
+                    continue;
+                }
+                if (victim == null || instance.lastRenderFrame < victim.lastRenderFrame
+                        || (instance.lastRenderFrame == victim.lastRenderFrame && instance.distanceSq > victim.distanceSq)) {
+                    victim = instance;
+                }
+            }
+            if (victim == null) {
+                break;
+            }
+            removeInstance(CanvasId.key(victim.id), victim);
+            cacheEvictions++;
+        }
+    }
+
+    private void removeInstance(long key, RenderEntityCanvas.Instance instance) {
+        this.loadedCanvases.remove(key);
+        this.loadedBytes -= instance.getByteSize();
+        instance.close();
+    }
+
+    /**
+     * Returns the atlas slot of a placed canvas if it is loaded with the given version, so screens can draw it without their own texture
+     */
+    @Nullable
+    static CanvasTextureAtlas.Slot getLoadedSlot(UUID id, int version) {
+        if (current == null) {
+            return null;
+        }
+        RenderEntityCanvas.Instance instance = current.loadedCanvases.get(CanvasId.key(id));
+        return instance != null && instance.id.equals(id) && instance.loaded && instance.version == version ? instance.slot : null;
+    }
+
+    public static long getCacheHits() {
+        return cacheHits;
+    }
+
+    public static long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public static long getCacheEvictions() {
+        return cacheEvictions;
+    }
+
     @Nullable
-    public RenderEntityCanvas.Instance getMapInstanceIfExists(String name) {
-        return this.loadedCanvases.get(name);
+    public RenderEntityCanvas.Instance getMapInstanceIfExists(UUID id) {
+        RenderEntityCanvas.Instance instance = this.loadedCanvases.get(CanvasId.key(id));
+        return instance != null && instance.id.equals(id) ? instance : null;
     }
 
     /**
@@ -98,129 +197,232 @@ public class RenderEntityCanvas extends EntityRenderer<EntityCanvas> {
         }
 
         this.loadedCanvases.clear();
+        this.loadedBytes = 0;
+        cacheSize = 0;
+        cacheBytes = 0;
+        cachePages = this.atlas.getPageCount();
+    }
+
+    @OnlyIn(Dist.CLIENT)
+    @Mod.EventBusSubscriber(modid = XercaPaint.MODID, value = Dist.CLIENT)
+    public static class CacheEvents {
+        @SubscribeEvent
+        public static void onRenderTick(TickEvent.RenderTickEvent event) {
+            if (event.phase == TickEvent.Phase.START) {
+                frame++;
+            }
+        }
+
+        @SubscribeEvent
+        public static void onDebugText(RenderGameOverlayEvent.Text event) {
+            if (Minecraft.getInstance().gameSettings.showDebugInfo) {
+                event.getLeft().add(String.format("Canvas textures: %d in %d pages (%d/%d KB), hits: %d, misses: %d, evictions: %d",
+                        cacheSize, cachePages, cacheBytes/1024, Config.getTextureCacheBudget()/1024, cacheHits, cacheMisses, cacheEvictions));
+            }
+        }
     }
 
     public void close() {
         this.clearLoadedMaps();
+        this.atlas.close();
     }
 
     @OnlyIn(Dist.CLIENT)
     class Instance implements AutoCloseable {
         int version = 0;
+        // False while the pixels are being fetched, a blank canvas is drawn until then
+        boolean loaded = false;
+        long lastRenderFrame;
+        double distanceSq;
+        final UUID id;
         int width;
         int height;
-        private final DynamicTexture canvasTexture;
-        private final ResourceLocation location;
+        private final CanvasTextureAtlas.Slot slot;
 
-        private Instance(EntityCanvas canvas) {
+        private Instance(EntityCanvas canvas, UUID id) {
             CompoundNBT tag = canvas.getCanvasNBT();
+            this.id = id;
             this.width = canvas.getWidthPixels();
             this.height = canvas.getHeightPixels();
-            this.canvasTexture = new DynamicTexture(width, height, true);
-            this.location = RenderEntityCanvas.this.textureManager.getDynamicTextureLocation("canvas/" + tag.getString("name"), this.canvasTexture);
+            this.slot = RenderEntityCanvas.this.atlas.allocate(width, height);
 
+            this.slot.fill(placeholderColor);
             updateCanvasTexture(tag);
         }
 
-        private int swapColor(int color){
-            int i = (color & 16711680) >> 16;
-            int j = (color & '\uff00') >> 8;
-            int k = (color & 255);
-            return k << 16 | j << 8 | i;
+        int getByteSize() {
+            return width*height*4;
         }
 
         private void updateCanvasTexture(CompoundNBT textureData) {
+            int[] pixels = CanvasPixelCodec.readPixels(textureData, height*width);
+            if(pixels == null){
+                return;
+            }
             this.version = textureData.getInt("v");
-
-            int[] pixels = textureData.getIntArray("pixels");
+            this.loaded = true;
 
             if(pixels.length < height*width){
                 XercaPaint.LOGGER.warn("Pixels array length (" + pixels.length + ") is smaller than canvas area (" + height*width + ")");
                 return;
             }
 
-            for (int i = 0; i < height; ++i) {
-                for (int j = 0; j < width; ++j) {
-                    int k = j + i * width;
+            slot.setPixels(pixels);
+        }
 
-                    canvasTexture.getTextureData().setPixelRGBA(j, i, swapColor(pixels[k]));
-                }
+        public void render(EntityCanvas canvas, float yaw, MatrixStack ms, IRenderTypeBuffer buffer, Direction facing) {
+            BakedCanvas baked = RenderEntityCanvas.this.bakedCanvases.get(canvas);
+            if (baked == null || !baked.matches(facing, yaw, width, height)) {
+                baked = new BakedCanvas(canvas, facing, yaw, width, height);
+                RenderEntityCanvas.this.bakedCanvases.put(canvas, baked);
             }
+            final int lightmap = baked.getLight(canvas);
+            final Matrix4f m = ms.getLast().getMatrix();
+            final Matrix3f mn = ms.getLast().getNormal();
 
-            canvasTexture.updateDynamicTexture();
+            // Canvases on the same atlas page share the render type, so they end up in one batch
+            IVertexBuilder vb = buffer.getBuffer(RenderType.getEntitySolid(slot.getLocation()));
+            // Draw the front
+            addVertex(vb, m, mn, baked, baked.front, 0, slot.maxU, slot.minV, lightmap);
+            addVertex(vb, m, mn, baked, baked.front, 3, slot.minU, slot.minV, lightmap);
+            addVertex(vb, m, mn, baked, baked.front, 6, slot.minU, slot.maxV, lightmap);
+            addVertex(vb, m, mn, baked, baked.front, 9, slot.maxU, slot.maxV, lightmap);
+
+            // Draw the back and sides
+            vb = buffer.getBuffer(RenderType.getEntitySolid(backLocation));
+            final float[] back = baked.back;
+            for (int i = 0; i < back.length; i += 5) {
+                addVertex(vb, m, mn, baked, back, i, back[i+3], back[i+4], lightmap);
+            }
         }
 
-        public void render(EntityCanvas canvas, float yaw, MatrixStack ms, IRenderTypeBuffer buffer, Direction facing) {
-            final float wScale = width/16.0f;
-            final float hScale = height/16.0f;
-            final double x = canvas.getPosX();
-            final double y = canvas.getPosY();
-            final double z = canvas.getPosZ();
+        private void addVertex(IVertexBuilder vb, Matrix4f m, Matrix3f mn, BakedCanvas baked, float[] positions, int i, float tx, float ty, int lightmap)
+        {
+            vb.pos(m, positions[i], positions[i+1], positions[i+2]).color(255, 255, 255, 255).tex(tx, ty).overlay(OverlayTexture.NO_OVERLAY)
+                    .lightmap(lightmap).normal(mn, baked.normalX, baked.normalY, baked.normalZ).endVertex();
+        }
 
-            IVertexBuilder vb = buffer.getBuffer(RenderType.getEntitySolid(this.location));
+        public void close() {
+            RenderEntityCanvas.this.atlas.free(this.slot);
+        }
+    }
+
+    /**
+     * Vertices of a placed canvas in entity space, built once since canvases do not move.
+     * Rebuilt only when the facing or size changes. The light value is sampled at most once per client tick.
+     */
+    @OnlyIn(Dist.CLIENT)
+    static class BakedCanvas {
+        private static final float sideWidth = 1.0F/16.0F;
+
+        private final Direction facing;
+        private final float yaw;
+        private final int width;
+        private final int height;
+        private final BlockPos lightPos;
+        private int light;
+        private long lightTime = Long.MIN_VALUE;
+
+        // x, y, z per vertex
+        final float[] front = new float[4*3];
+        // x, y, z, u, v per vertex
+        final float[] back = new float[16*5];
+        float normalX;
+        float normalY;
+        float normalZ;
+
+        BakedCanvas(EntityCanvas canvas, Direction facing, float yaw, int width, int height) {
+            this.facing = facing;
+            this.yaw = yaw;
+            this.width = width;
+            this.height = height;
+            this.lightPos = new BlockPos(canvas.getPosX(), canvas.getPosY(), canvas.getPosZ());
 
-            ms.push();
+            final float wScale = width/16.0f;
+            final float hScale = height/16.0f;
             final float xOffset = facing.getXOffset();
             final float zOffset = facing.getZOffset();
             final float yOffset = -1.0f;
+
+            MatrixStack ms = new MatrixStack();
             ms.translate(zOffset*0.5d*wScale, yOffset*0.5d*hScale, -xOffset*0.5d*wScale);
             ms.rotate(Vector3f.YP.rotationDegrees( 180-yaw));
-
             float f = 1.0f/32.0f;
             ms.scale(f, f, f);
-
-            textureManager.bindTexture(location);
-
-            int lightmap = WorldRenderer.getCombinedLight(canvas.world, new BlockPos(x, y, z));
-
             Matrix4f m = ms.getLast().getMatrix();
-            Matrix3f mn = ms.getLast().getNormal();
-            // Draw the front
-            vb.pos(m, 0.0F, 32.0F*hScale, -1.0F).color(255, 255, 255, 255).tex(1.0F, 0.0F).overlay(OverlayTexture.NO_OVERLAY).lightmap(lightmap).normal(mn, xOffset, 0.0F, zOffset).endVertex();
-            vb.pos(m,32.0F*wScale, 32.0F*hScale, -1.0F).color(255, 255, 255, 255).tex(0.0F, 0.0F).overlay(OverlayTexture.NO_OVERLAY).lightmap(lightmap).normal(mn, xOffset, 0.0F, zOffset).endVertex();
-            vb.pos(m,32.0F*wScale, 0.0F, -1.0F).color(255, 255, 255, 255).tex(0.0F, 1.0F).overlay(OverlayTexture.NO_OVERLAY).lightmap(lightmap).normal(mn, xOffset, 0.0F, zOffset).endVertex();
-            vb.pos(m,0.0F, 0.0F, -1.0F).color(255, 255, 255, 255).tex(1.0F, 1.0F).overlay(OverlayTexture.NO_OVERLAY).lightmap(lightmap).normal(mn, xOffset, 0.0F, zOffset).endVertex();
-
-            vb = buffer.getBuffer(RenderType.getEntitySolid(backLocation));
-            // Draw the back and sides
-            final float sideWidth = 1.0F/16.0F;
-            textureManager.bindTexture(backLocation);
-            addVertex(vb, m, mn, 0.0D, 0.0D, 1.0D, 0.0F, 0.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 0.0D, 1.0D, 1.0F, 0.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 32.0D*hScale, 1.0D, 1.0F, 1.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 0.0D, 32.0D*hScale, 1.0D, 0.0F, 1.0F, lightmap, xOffset, 0, zOffset);
+            Vector3f normal = new Vector3f(xOffset, 0.0F, zOffset);
+            normal.transform(ms.getLast().getNormal());
+            normalX = normal.getX();
+            normalY = normal.getY();
+            normalZ = normal.getZ();
+
+            putFront(m, 0, 0.0F, 32.0F*hScale, -1.0F);
+            putFront(m, 1, 32.0F*wScale, 32.0F*hScale, -1.0F);
+            putFront(m, 2, 32.0F*wScale, 0.0F, -1.0F);
+            putFront(m, 3, 0.0F, 0.0F, -1.0F);
+
+            int i = 0;
+            // Back
+            i = putBack(m, i, 0.0F, 0.0F, 1.0F, 0.0F, 0.0F);
+            i = putBack(m, i, 32.0F*wScale, 0.0F, 1.0F, 1.0F, 0.0F);
+            i = putBack(m, i, 32.0F*wScale, 32.0F*hScale, 1.0F, 1.0F, 1.0F);
+            i = putBack(m, i, 0.0F, 32.0F*hScale, 1.0F, 0.0F, 1.0F);
 
             // Sides
-            addVertex(vb, m, mn, 0.0D, 0.0D, 1.0D, sideWidth, 0.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 0.0D, 32.0D*hScale, 1.0D, sideWidth, 1.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 0.0D, 32.0D*hScale, -1.0D, 0.0F, 1.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 0.0D, 0.0D, -1.0D, 0.0F, 0.0F, lightmap, xOffset, 0, zOffset);
-
-            addVertex(vb, m, mn, 0.0D, 32.0D*hScale, 1.0F, 0.0F, 0.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 32.0D*hScale, 1.0F, 1.0F, 0.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 32.0D*hScale, -1.0F, 1.0F, sideWidth, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 0.0D, 32.0D*hScale, -1.0F, 0.0F, sideWidth, lightmap, xOffset, 0, zOffset);
-
-            addVertex(vb, m, mn, 32.0D*wScale, 0.0D, -1.0F, 0.0F, 0.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 32.0D*hScale, -1.0F, 0.0F, 1.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 32.0D*hScale, 1.0F, sideWidth, 1.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 0.0D, 1.0F, sideWidth, 0.0F, lightmap, xOffset, 0, zOffset);
+            i = putBack(m, i, 0.0F, 0.0F, 1.0F, sideWidth, 0.0F);
+            i = putBack(m, i, 0.0F, 32.0F*hScale, 1.0F, sideWidth, 1.0F);
+            i = putBack(m, i, 0.0F, 32.0F*hScale, -1.0F, 0.0F, 1.0F);
+            i = putBack(m, i, 0.0F, 0.0F, -1.0F, 0.0F, 0.0F);
+
+            i = putBack(m, i, 0.0F, 32.0F*hScale, 1.0F, 0.0F, 0.0F);
+            i = putBack(m, i, 32.0F*wScale, 32.0F*hScale, 1.0F, 1.0F, 0.0F);
+            i = putBack(m, i, 32.0F*wScale, 32.0F*hScale, -1.0F, 1.0F, sideWidth);
+            i = putBack(m, i, 0.0F, 32.0F*hScale, -1.0F, 0.0F, sideWidth);
+
+            i = putBack(m, i, 32.0F*wScale, 0.0F, -1.0F, 0.0F, 0.0F);
+            i = putBack(m, i, 32.0F*wScale, 32.0F*hScale, -1.0F, 0.0F, 1.0F);
+            i = putBack(m, i, 32.0F*wScale, 32.0F*hScale, 1.0F, sideWidth, 1.0F);
+            i = putBack(m, i, 32.0F*wScale, 0.0F, 1.0F, sideWidth, 0.0F);
+
+            i = putBack(m, i, 0.0F, 0.0F, -1.0F, 0.0F, 1.0F);
+            i = putBack(m, i, 32.0F*wScale, 0.0F, -1.0F, 1.0F, 1.0F);
+            i = putBack(m, i, 32.0F*wScale, 0.0F, 1.0F, 1.0F, 1.0F-sideWidth);
+            putBack(m, i, 0.0F, 0.0F, 1.0F, 0.0F, 1.0F-sideWidth);
+        }
 
-            addVertex(vb, m, mn, 0.0D, 0.0D, -1.0F, 0.0F, 1.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 0.0D, -1.0F, 1.0F, 1.0F, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 32.0D*wScale, 0.0D, 1.0F, 1.0F, 1.0F-sideWidth, lightmap, xOffset, 0, zOffset);
-            addVertex(vb, m, mn, 0.0D, 0.0D, 1.0F, 0.0F, 1.0F-sideWidth, lightmap, xOffset, 0, zOffset);
+        boolean matches(Direction facing, float yaw, int width, int height) {
+            return this.facing == facing && this.yaw == yaw && this.width == width && this.height == height;
+        }
 
-            ms.pop();
+        /**
+         * There is no client event for light changes of a single block, so the cached value is refreshed when the game time moves on
+         */
+        int getLight(EntityCanvas canvas) {
+            long time = canvas.world.getGameTime();
+            if (time != lightTime) {
+                lightTime = time;
+                light = WorldRenderer.getCombinedLight(canvas.world, lightPos);
+            }
+            return light;
         }
 
-        private void addVertex(IVertexBuilder vb, Matrix4f m, Matrix3f mn, double x, double y, double z, float tx, float ty, int lightmap, float xOff, float yOff, float zOff)
-        {
-            vb.pos(m, (float) x, (float)y, (float)z).color(255, 255, 255, 255).tex(tx, ty).overlay(OverlayTexture.NO_OVERLAY).lightmap(lightmap).normal(mn, xOff, yOff, zOff).endVertex();
+        private void putFront(Matrix4f m, int index, float x, float y, float z) {
+            Vector4f pos = new Vector4f(x, y, z, 1.0F);
+            pos.transform(m);
+            front[index*3] = pos.getX();
+            front[index*3+1] = pos.getY();
+            front[index*3+2] = pos.getZ();
         }
 
-        public void close() {
-            this.canvasTexture.close();
+        private int putBack(Matrix4f m, int i, float x, float y, float z, float u, float v) {
+            Vector4f pos = new Vector4f(x, y, z, 1.0F);
+            pos.transform(m);
+            back[i] = pos.getX();
+            back[i+1] = pos.getY();
+            back[i+2] = pos.getZ();
+            back[i+3] = u;
+            back[i+4] = v;
+            return i + 5;
         }
     }
-}
\ No newline at end of file
+}
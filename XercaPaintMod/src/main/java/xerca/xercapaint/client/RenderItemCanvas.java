@@ -0,0 +1,108 @@
+package xerca.xercapaint.client;
+
+import com.mojang.blaze3d.matrix.MatrixStack;
+import com.mojang.blaze3d.vertex.IVertexBuilder;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.IRenderTypeBuffer;
+import net.minecraft.client.renderer.Matrix3f;
+import net.minecraft.client.renderer.Matrix4f;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.model.IBakedModel;
+import net.minecraft.client.renderer.model.ItemCameraTransforms;
+import net.minecraft.client.renderer.tileentity.ItemStackTileEntityRenderer;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import xerca.xercapaint.common.CanvasStore;
+import xerca.xercapaint.common.CanvasType;
+import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.item.ItemCanvas;
+
+/**
+ * Draws painted canvas items as a thumbnail of their painting, and empty ones (or ones whose thumbnail is not built yet)
+ * with the plain canvas icon of their type.
+ */
+@OnlyIn(Dist.CLIENT)
+public class RenderItemCanvas extends ItemStackTileEntityRenderer {
+    private static final float margin = 1.0f/16.0f;
+    private static final float front = 8.5f/16.0f;
+    private static final float back = 7.5f/16.0f;
+
+    private static final ResourceLocation smallIcon = new ResourceLocation(XercaPaint.MODID, "item/item_canvas_icon");
+    private static final ResourceLocation largeIcon = new ResourceLocation(XercaPaint.MODID, "item/item_canvas_large_icon");
+    private static final ResourceLocation longIcon = new ResourceLocation(XercaPaint.MODID, "item/item_canvas_long_icon");
+    private static final ResourceLocation tallIcon = new ResourceLocation(XercaPaint.MODID, "item/item_canvas_tall_icon");
+
+    /**
+     * Models of the plain canvas icons, to be registered with ModelLoader.addSpecialModel
+     */
+    public static ResourceLocation[] getIconModels() {
+        return new ResourceLocation[]{smallIcon, largeIcon, longIcon, tallIcon};
+    }
+
+    private static ResourceLocation iconModel(CanvasType canvasType) {
+        if (canvasType == CanvasType.LARGE) {
+            return largeIcon;
+        } else if (canvasType == CanvasType.LONG) {
+            return longIcon;
+        } else if (canvasType == CanvasType.TALL) {
+            return tallIcon;
+        }
+        return smallIcon;
+    }
+
+    @Override
+    public void render(ItemStack stack, MatrixStack ms, IRenderTypeBuffer buffer, int combinedLight, int combinedOverlay) {
+        if (!(stack.getItem() instanceof ItemCanvas)) {
+            return;
+        }
+        CanvasType canvasType = ((ItemCanvas) stack.getItem()).getCanvasType();
+        CompoundNBT tag = stack.getTag();
+        CanvasTextureAtlas.Slot slot = null;
+        if (tag != null && tag.contains(CanvasStore.HASH_KEY, 8)) {
+            slot = CanvasThumbnails.get(tag.getString(CanvasStore.HASH_KEY), canvasType.getWidth(), canvasType.getHeight());
+        }
+        if (slot == null) {
+            renderIcon(stack, canvasType, ms, buffer, combinedLight, combinedOverlay);
+            return;
+        }
+
+        // Fit the thumbnail in the icon area, keeping its aspect ratio
+        final float size = 1.0f - 2*margin;
+        final float scale = size / Math.max(slot.width, slot.height);
+        final float w = slot.width * scale;
+        final float h = slot.height * scale;
+        final float x0 = (1.0f - w) / 2;
+        final float y0 = (1.0f - h) / 2;
+
+        final Matrix4f m = ms.getLast().getMatrix();
+        final Matrix3f mn = ms.getLast().getNormal();
+        IVertexBuilder vb = buffer.getBuffer(RenderType.getEntitySolid(slot.getLocation()));
+        // Front
+        vertex(vb, m, mn, x0, y0, front, slot.minU, slot.maxV, 1, combinedLight, combinedOverlay);
+        vertex(vb, m, mn, x0 + w, y0, front, slot.maxU, slot.maxV, 1, combinedLight, combinedOverlay);
+        vertex(vb, m, mn, x0 + w, y0 + h, front, slot.maxU, slot.minV, 1, combinedLight, combinedOverlay);
+        vertex(vb, m, mn, x0, y0 + h, front, slot.minU, slot.minV, 1, combinedLight, combinedOverlay);
+        // Back, mirrored like the back of other flat items
+        vertex(vb, m, mn, x0, y0 + h, back, slot.minU, slot.minV, -1, combinedLight, combinedOverlay);
+        vertex(vb, m, mn, x0 + w, y0 + h, back, slot.maxU, slot.minV, -1, combinedLight, combinedOverlay);
+        vertex(vb, m, mn, x0 + w, y0, back, slot.maxU, slot.maxV, -1, combinedLight, combinedOverlay);
+        vertex(vb, m, mn, x0, y0, back, slot.minU, slot.maxV, -1, combinedLight, combinedOverlay);
+    }
+
+    private static void vertex(IVertexBuilder vb, Matrix4f m, Matrix3f mn, float x, float y, float z, float u, float v, float normalZ, int light, int overlay) {
+        vb.pos(m, x, y, z).color(255, 255, 255, 255).tex(u, v).overlay(overlay).lightmap(light).normal(mn, 0.0f, 0.0f, normalZ).endVertex();
+    }
+
+    private static void renderIcon(ItemStack stack, CanvasType canvasType, MatrixStack ms, IRenderTypeBuffer buffer, int combinedLight, int combinedOverlay) {
+        Minecraft minecraft = Minecraft.getInstance();
+        IBakedModel model = minecraft.getModelManager().getModel(iconModel(canvasType));
+        ms.push();
+        // The item renderer moved the origin to the corner of the item before calling this renderer
+        ms.translate(0.5d, 0.5d, 0.5d);
+        minecraft.getItemRenderer().renderItem(stack, ItemCameraTransforms.TransformType.NONE, false, ms, buffer, combinedLight, combinedOverlay, model);
+        ms.pop();
+    }
+}
@@ -0,0 +1,269 @@
+package xerca.xercapaint.common;
+
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraft.world.storage.WorldSavedData;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Per-world index of canvases by id: author, title, generation, type and where the canvas was last seen.
+ * It is updated when canvases are painted, placed and broken, so searching it never loads chunks.
+ *
+ * Copies share the id of their original, the index keeps the last seen place of any of them. Each entry counts the copies
+ * that were cloned or placed from a creative inventory, and is dropped when the last of them is gone.
+ * An entry dropped while an uncounted copy is left, e.g. one taken from a creative inventory, comes back when that copy is seen again.
+ */
+public class CanvasGallery extends WorldSavedData {
+    private static final String NAME = XercaPaint.MODID + "_gallery";
+
+    private final Map<UUID, Entry> entries = new HashMap<>();
+    // Ids of signed canvases by lower case author name
+    private final Map<String, Set<UUID>> idsByAuthor = new HashMap<>();
+
+    public enum Place {
+        HELD, PLACED, DROPPED;
+
+        static Place byOrdinal(int ordinal) {
+            return ordinal >= 0 && ordinal < values().length ? values()[ordinal] : DROPPED;
+        }
+    }
+
+    public static class Entry {
+        private final UUID id;
+        private String author = "";
+        private String title = "";
+        private int generation;
+        private String typeName = "";
+        private Place place = Place.DROPPED;
+        // Holder name for held canvases, dimension name otherwise
+        private String where = "";
+        private BlockPos pos = BlockPos.ZERO;
+        private int copies = 1;
+
+        Entry(UUID id) {
+            this.id = id;
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public String getAuthor() {
+            return author;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public int getGeneration() {
+            return generation;
+        }
+
+        public String getTypeName() {
+            return typeName;
+        }
+
+        public Place getPlace() {
+            return place;
+        }
+
+        public String getWhere() {
+            return where;
+        }
+
+        public BlockPos getPos() {
+            return pos;
+        }
+    }
+
+    public CanvasGallery() {
+        super(NAME);
+    }
+
+    public static CanvasGallery get(MinecraftServer server) {
+        return server.getWorld(DimensionType.OVERWORLD).getSavedData().getOrCreate(CanvasGallery::new, NAME);
+    }
+
+    @Nullable
+    public static CanvasGallery get(World world) {
+        if (world.isRemote || world.getServer() == null) {
+            return null;
+        }
+        return get(world.getServer());
+    }
+
+    public void recordHeld(CompoundNBT tag, CanvasType type, PlayerEntity holder) {
+        record(tag, type, Place.HELD, holder.getName().getString(), BlockPos.ZERO);
+    }
+
+    public void recordPlaced(CompoundNBT tag, CanvasType type, World world, BlockPos pos) {
+        record(tag, type, Place.PLACED, dimensionName(world), pos);
+    }
+
+    public void recordDropped(CompoundNBT tag, CanvasType type, World world, BlockPos pos) {
+        record(tag, type, Place.DROPPED, dimensionName(world), pos);
+    }
+
+    private static String dimensionName(World world) {
+        return String.valueOf(DimensionType.getKey(world.getDimension().getType()));
+    }
+
+    private void record(CompoundNBT tag, CanvasType type, Place place, String where, BlockPos pos) {
+        UUID id = CanvasId.get(tag);
+        if (id == null) {
+            return;
+        }
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            entry = new Entry(id);
+            entries.put(id, entry);
+        } else {
+            unindexAuthor(entry);
+        }
+        entry.author = tag.getString("author");
+        entry.title = tag.getString("title");
+        entry.generation = tag.getInt("generation");
+        entry.typeName = type.getName();
+        entry.place = place;
+        entry.where = where;
+        entry.pos = pos.toImmutable();
+        indexAuthor(entry);
+        markDirty();
+    }
+
+    /**
+     * Counts a new copy of a canvas, which shares the id of the original
+     */
+    public void addCopy(@Nullable CompoundNBT tag) {
+        UUID id = CanvasId.get(tag);
+        Entry entry = id == null ? null : entries.get(id);
+        if (entry != null) {
+            entry.copies++;
+            markDirty();
+        }
+    }
+
+    /**
+     * Forgets a copy of a canvas that no longer exists, and the canvas with its last copy
+     */
+    public void remove(@Nullable CompoundNBT tag) {
+        UUID id = CanvasId.get(tag);
+        Entry entry = id == null ? null : entries.get(id);
+        if (entry == null) {
+            return;
+        }
+        if (--entry.copies <= 0) {
+            entries.remove(id);
+            unindexAuthor(entry);
+        }
+        markDirty();
+    }
+
+    private void indexAuthor(Entry entry) {
+        if (!entry.author.isEmpty()) {
+            idsByAuthor.computeIfAbsent(entry.author.toLowerCase(Locale.ROOT), k -> new HashSet<>()).add(entry.id);
+        }
+    }
+
+    private void unindexAuthor(Entry entry) {
+        if (!entry.author.isEmpty()) {
+            String key = entry.author.toLowerCase(Locale.ROOT);
+            Set<UUID> ids = idsByAuthor.get(key);
+            if (ids != null) {
+                ids.remove(entry.id);
+                if (ids.isEmpty()) {
+                    idsByAuthor.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Signed canvases matching the author name (ignoring case) and containing the title text (ignoring case), sorted by title.
+     * Null filters match everything.
+     */
+    public List<Entry> search(@Nullable String author, @Nullable String titlePart) {
+        List<Entry> result = new ArrayList<>();
+        if (author != null) {
+            Set<UUID> ids = idsByAuthor.get(author.toLowerCase(Locale.ROOT));
+            if (ids != null) {
+                for (UUID id : ids) {
+                    result.add(entries.get(id));
+                }
+            }
+        } else {
+            for (Entry entry : entries.values()) {
+                if (entry.generation > 0) {
+                    result.add(entry);
+                }
+            }
+        }
+        if (titlePart != null) {
+            String part = titlePart.toLowerCase(Locale.ROOT);
+            result.removeIf(entry -> !entry.title.toLowerCase(Locale.ROOT).contains(part));
+        }
+        result.sort(Comparator.comparing((Entry entry) -> entry.title.toLowerCase(Locale.ROOT)).thenComparing(entry -> entry.id));
+        return result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void read(CompoundNBT nbt) {
+        entries.clear();
+        idsByAuthor.clear();
+        ListNBT list = nbt.getList("canvases", 10);
+        for (int i = 0; i < list.size(); i++) {
+            CompoundNBT entryTag = list.getCompound(i);
+            Entry entry = new Entry(entryTag.getUniqueId("id"));
+            entry.author = entryTag.getString("a");
+            entry.title = entryTag.getString("t");
+            entry.generation = entryTag.getInt("g");
+            entry.typeName = entryTag.getString("c");
+            entry.place = Place.byOrdinal(entryTag.getByte("p"));
+            entry.where = entryTag.getString("w");
+            entry.pos = BlockPos.fromLong(entryTag.getLong("pos"));
+            entry.copies = entryTag.contains("n") ? entryTag.getInt("n") : 1;
+            entries.put(entry.id, entry);
+            indexAuthor(entry);
+        }
+    }
+
+    @Override
+    public CompoundNBT write(CompoundNBT compound) {
+        ListNBT list = new ListNBT();
+        for (Entry entry : entries.values()) {
+            CompoundNBT entryTag = new CompoundNBT();
+            entryTag.putUniqueId("id", entry.id);
+            entryTag.putString("a", entry.author);
+            entryTag.putString("t", entry.title);
+            entryTag.putInt("g", entry.generation);
+            entryTag.putString("c", entry.typeName);
+            entryTag.putByte("p", (byte) entry.place.ordinal());
+            entryTag.putString("w", entry.where);
+            entryTag.putLong("pos", entry.pos.toLong());
+            entryTag.putInt("n", entry.copies);
+            list.add(entryTag);
+        }
+        compound.put("canvases", list);
+        return compound;
+    }
+}
@@ -0,0 +1,72 @@
+package xerca.xercapaint.common;
+
+import net.minecraft.nbt.CompoundNBT;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * 128 bit canvas identifiers, random for every new canvas so canvases created at the same time never collide.
+ * Stored in canvas tags as the "id" unique id (the "idMost" and "idLeast" longs).
+ *
+ * Canvases painted before ids existed have a "name" string instead. Their id is derived from the name,
+ * so every copy of an old canvas gets the same id whenever it is migrated.
+ */
+public class CanvasId {
+    public static final String TAG_KEY = "id";
+    public static final String LEGACY_TAG_KEY = "name";
+
+    public static UUID create() {
+        return UUID.randomUUID();
+    }
+
+    public static UUID fromLegacyName(String name) {
+        return UUID.nameUUIDFromBytes((XercaPaint.MODID + ":canvas:" + name).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static boolean has(@Nullable CompoundNBT tag) {
+        return tag != null && (tag.hasUniqueId(TAG_KEY) || tag.contains(LEGACY_TAG_KEY, 8));
+    }
+
+    /**
+     * Returns the id of a canvas tag, derived from the legacy name if the tag was not migrated yet. Does not change the tag.
+     */
+    @Nullable
+    public static UUID get(@Nullable CompoundNBT tag) {
+        if (tag == null) {
+            return null;
+        }
+        if (tag.hasUniqueId(TAG_KEY)) {
+            return tag.getUniqueId(TAG_KEY);
+        }
+        if (tag.contains(LEGACY_TAG_KEY, 8)) {
+            return fromLegacyName(tag.getString(LEGACY_TAG_KEY));
+        }
+        return null;
+    }
+
+    public static void put(CompoundNBT tag, UUID id) {
+        tag.putUniqueId(TAG_KEY, id);
+        tag.remove(LEGACY_TAG_KEY);
+    }
+
+    /**
+     * Replaces a legacy name in the tag with its id, in place. Returns true if the tag was changed.
+     */
+    public static boolean migrate(@Nullable CompoundNBT tag) {
+        if (tag != null && !tag.hasUniqueId(TAG_KEY) && tag.contains(LEGACY_TAG_KEY, 8)) {
+            put(tag, fromLegacyName(tag.getString(LEGACY_TAG_KEY)));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 64 bit key of an id for primitive keyed maps. Ids are random, so keys of different canvases practically never match,
+     * but users of the key still compare the full id.
+     */
+    public static long key(UUID id) {
+        return id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+    }
+}
@@ -0,0 +1,61 @@
+package xerca.xercapaint.common;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads and writes canvas pixels as PNG images on a shared pool of worker threads.
+ */
+public class CanvasImages {
+    private static ExecutorService workers;
+
+    /**
+     * Pool for image work, its threads are daemons so they never keep the server from stopping
+     */
+    public static synchronized ExecutorService getWorkers() {
+        if (workers == null) {
+            AtomicInteger count = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), runnable -> {
+                Thread thread = new Thread(runnable, "Canvas Image Worker " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return workers;
+    }
+
+    public static void writePng(int[] pixels, int width, int height, Path file) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        Files.createDirectories(file.getParent());
+        if (!ImageIO.write(image, "png", file.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    /**
+     * Reads an image, scales it to the canvas size with nearest neighbour sampling and quantizes it to paintable colours
+     */
+    public static int[] readCanvasPixels(Path file, int width, int height) throws IOException {
+        BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null) {
+            throw new IOException("Not a readable image: " + file.getFileName());
+        }
+        int[] source = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int sourceRow = (y * image.getHeight() / height) * image.getWidth();
+            for (int x = 0; x < width; x++) {
+                pixels[x + y * width] = source[sourceRow + x * image.getWidth() / width];
+            }
+        }
+        CanvasQuantizer.get().quantize(pixels);
+        return pixels;
+    }
+}
@@ -0,0 +1,312 @@
+package xerca.xercapaint.common;
+
+import net.minecraft.nbt.CompoundNBT;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact, versioned encoding of canvas pixels.
+ *
+ * Layout (version 1):
+ *   byte    version
+ *   byte    mode (MODE_PACKED or MODE_RLE)
+ *   varint  pixel count
+ *   varint  colour table size, followed by that many 4 byte ARGB colours
+ *   MODE_PACKED: one bit-packed colour index per pixel
+ *   MODE_RLE:    varint run count, one varint (length - 1) per run, then one bit-packed colour index per run
+ *
+ * Indices use the smallest bit width that can address the colour table (0 bits for a single colour).
+ * The encoder writes both modes and keeps the smaller one.
+ */
+public class CanvasPixelCodec {
+    public static final byte VERSION = 1;
+    private static final byte MODE_PACKED = 0;
+    private static final byte MODE_RLE = 1;
+
+    // NBT key of the encoded pixels. "pixels" is the legacy raw int array key.
+    public static final String TAG_KEY = "pix";
+    public static final String LEGACY_TAG_KEY = "pixels";
+
+    public static byte[] encode(int[] pixels) {
+        Map<Integer, Integer> indexOf = new HashMap<>();
+        int[] table = new int[Math.max(pixels.length, 1)];
+        int tableSize = 0;
+        int[] indices = new int[pixels.length];
+        int runCount = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            Integer index = indexOf.get(pixels[i]);
+            if (index == null) {
+                index = tableSize;
+                indexOf.put(pixels[i], index);
+                table[tableSize++] = pixels[i];
+            }
+            indices[i] = index;
+            if (i == 0 || pixels[i] != pixels[i - 1]) {
+                runCount++;
+            }
+        }
+        final int bits = bitsFor(tableSize);
+
+        // Run lengths and run colours
+        int[] runLengths = new int[runCount];
+        int[] runIndices = new int[runCount];
+        int run = -1;
+        for (int i = 0; i < pixels.length; i++) {
+            if (i == 0 || pixels[i] != pixels[i - 1]) {
+                run++;
+                runIndices[run] = indices[i];
+            }
+            runLengths[run]++;
+        }
+
+        int rleSize = varIntSize(runCount) + packedSize(runCount, bits);
+        for (int length : runLengths) {
+            rleSize += varIntSize(length - 1);
+        }
+        boolean useRle = rleSize < packedSize(pixels.length, bits);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(VERSION);
+        out.write(useRle ? MODE_RLE : MODE_PACKED);
+        writeVarInt(out, pixels.length);
+        writeVarInt(out, tableSize);
+        for (int i = 0; i < tableSize; i++) {
+            int color = table[i];
+            out.write(color >>> 24);
+            out.write(color >>> 16);
+            out.write(color >>> 8);
+            out.write(color);
+        }
+        if (useRle) {
+            writeVarInt(out, runCount);
+            for (int length : runLengths) {
+                writeVarInt(out, length - 1);
+            }
+            writePacked(out, runIndices, runCount, bits);
+        } else {
+            writePacked(out, indices, indices.length, bits);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes pixels written by {@link #encode(int[])}.
+     * Returns null if the data is malformed, of an unknown version, or holds more than maxPixels pixels.
+     */
+    @Nullable
+    public static int[] decode(byte[] data, int maxPixels) {
+        Reader in = new Reader(data);
+        try {
+            if (in.readByte() != VERSION) {
+                return null;
+            }
+            int mode = in.readByte();
+            int pixelCount = in.readVarInt();
+            int tableSize = in.readVarInt();
+            if (pixelCount < 0 || pixelCount > maxPixels || tableSize < 0 || tableSize > Math.max(pixelCount, 1)) {
+                return null;
+            }
+            int[] table = new int[tableSize];
+            for (int i = 0; i < tableSize; i++) {
+                table[i] = (in.readByte() & 0xFF) << 24 | (in.readByte() & 0xFF) << 16 | (in.readByte() & 0xFF) << 8 | (in.readByte() & 0xFF);
+            }
+            final int bits = bitsFor(tableSize);
+
+            int[] pixels = new int[pixelCount];
+            if (mode == MODE_PACKED) {
+                for (int i = 0; i < pixelCount; i++) {
+                    pixels[i] = tableEntry(table, in.readBits(bits));
+                }
+            } else if (mode == MODE_RLE) {
+                int runCount = in.readVarInt();
+                if (runCount < 0 || runCount > pixelCount) {
+                    return null;
+                }
+                int[] runLengths = new int[runCount];
+                int total = 0;
+                for (int i = 0; i < runCount; i++) {
+                    runLengths[i] = in.readVarInt() + 1;
+                    total += runLengths[i];
+                    if (runLengths[i] <= 0 || total > pixelCount) {
+                        return null;
+                    }
+                }
+                if (total != pixelCount) {
+                    return null;
+                }
+                int p = 0;
+                for (int i = 0; i < runCount; i++) {
+                    int color = tableEntry(table, in.readBits(bits));
+                    for (int j = 0; j < runLengths[i]; j++) {
+                        pixels[p++] = color;
+                    }
+                }
+            } else {
+                return null;
+            }
+            return pixels;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Upper bound of the encoded size of a canvas with the given area
+     */
+    public static int maxEncodedSize(int area) {
+        return 2 + 5 + 5 + area * 4 + packedSize(area, bitsFor(area));
+    }
+
+    public static boolean hasPixels(@Nullable CompoundNBT tag) {
+        return tag != null && (tag.contains(TAG_KEY, 7) || tag.contains(CanvasStore.HASH_KEY, 8) || tag.contains(LEGACY_TAG_KEY, 11));
+    }
+
+    /**
+     * Reads pixels from a canvas tag, accepting inline encoded pixels, a {@link CanvasStore} hash and the legacy int array format.
+     * Returns null if the tag has no (valid) pixels.
+     */
+    @Nullable
+    public static int[] readPixels(@Nullable CompoundNBT tag, int area) {
+        if (tag == null) {
+            return null;
+        }
+        if (tag.contains(TAG_KEY, 7)) {
+            int[] pixels = decode(tag.getByteArray(TAG_KEY), area);
+            if (pixels == null) {
+                XercaPaint.LOGGER.warn("Invalid encoded canvas pixels in canvas " + CanvasId.get(tag));
+            }
+            return pixels;
+        }
+        if (tag.contains(CanvasStore.HASH_KEY, 8)) {
+            // Null while the client is still fetching the data
+            byte[] data = XercaPaint.proxy.getCanvasData(tag.getString(CanvasStore.HASH_KEY));
+            return data == null ? null : decode(data, area);
+        }
+        if (tag.contains(LEGACY_TAG_KEY, 11)) {
+            return tag.getIntArray(LEGACY_TAG_KEY);
+        }
+        return null;
+    }
+
+    public static void writePixels(CompoundNBT tag, int[] pixels) {
+        tag.putByteArray(TAG_KEY, encode(pixels));
+        tag.remove(LEGACY_TAG_KEY);
+    }
+
+    /**
+     * Converts a legacy "pixels" int array in the tag to the encoded format, in place.
+     * Returns true if the tag was changed.
+     */
+    public static boolean migrate(@Nullable CompoundNBT tag) {
+        if (tag != null && !tag.contains(TAG_KEY, 7) && tag.contains(LEGACY_TAG_KEY, 11)) {
+            writePixels(tag, tag.getIntArray(LEGACY_TAG_KEY));
+            return true;
+        }
+        return false;
+    }
+
+    private static int tableEntry(int[] table, int index) {
+        if (table.length == 0) {
+            return 0;
+        }
+        if (index >= table.length) {
+            throw new IndexOutOfBoundsException("Colour index " + index + " out of table of size " + table.length);
+        }
+        return table[index];
+    }
+
+    private static int bitsFor(int tableSize) {
+        return tableSize <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(tableSize - 1);
+    }
+
+    private static int packedSize(int count, int bits) {
+        return (count * bits + 7) / 8;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & -128) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & -128) != 0) {
+            out.write(value & 127 | 128);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writePacked(ByteArrayOutputStream out, int[] values, int count, int bits) {
+        if (bits == 0) {
+            return;
+        }
+        int acc = 0;
+        int accBits = 0;
+        for (int i = 0; i < count; i++) {
+            acc = (acc << bits) | values[i];
+            accBits += bits;
+            while (accBits >= 8) {
+                accBits -= 8;
+                out.write(acc >>> accBits);
+            }
+            acc &= (1 << accBits) - 1;
+        }
+        if (accBits > 0) {
+            out.write(acc << (8 - accBits));
+        }
+    }
+
+    private static class Reader {
+        private final byte[] data;
+        private int pos = 0;
+        private int bitAcc = 0;
+        private int bitCount = 0;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int readByte() {
+            if (pos >= data.length) {
+                throw new IndexOutOfBoundsException("Unexpected end of canvas data");
+            }
+            return data[pos++];
+        }
+
+        int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (shift >= 35) {
+                    throw new IndexOutOfBoundsException("VarInt too big");
+                }
+                b = readByte();
+                value |= (b & 127) << shift;
+                shift += 7;
+            } while ((b & 128) != 0);
+            return value;
+        }
+
+        int readBits(int bits) {
+            if (bits == 0) {
+                return 0;
+            }
+            while (bitCount < bits) {
+                bitAcc = (bitAcc << 8) | (readByte() & 0xFF);
+                bitCount += 8;
+            }
+            bitCount -= bits;
+            int value = bitAcc >>> bitCount;
+            bitAcc &= (1 << bitCount) - 1;
+            return value;
+        }
+    }
+}
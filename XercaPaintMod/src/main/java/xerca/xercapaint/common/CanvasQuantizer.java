@@ -0,0 +1,102 @@
+package xerca.xercapaint.common;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Maps arbitrary colours to the nearest colour that can be painted with a full palette:
+ * the dye colours and the custom colours made by mixing two of them.
+ * Lookups go through a table of the nearest palette colour for each cell of a 32x32x32 RGB grid, built once in parallel.
+ */
+public class CanvasQuantizer {
+    private static final int bitsPerChannel = 5;
+    private static final int cellsPerChannel = 1 << bitsPerChannel;
+    // Pixels less opaque than this are painted as the white dye, the colour of a new canvas
+    private static final int alphaThreshold = 128;
+
+    private static volatile CanvasQuantizer instance;
+
+    private final int[] colors;
+    private final short[] table;
+
+    private CanvasQuantizer() {
+        Set<Integer> paintable = new LinkedHashSet<>();
+        for (int color : PaletteUtil.basicColors) {
+            paintable.add(color);
+        }
+        for (int i = 0; i < PaletteUtil.basicColors.length; i++) {
+            for (int j = i + 1; j < PaletteUtil.basicColors.length; j++) {
+                paintable.add(PackedColor.mixDyes(i, j));
+            }
+        }
+        this.colors = paintable.stream().mapToInt(Integer::intValue).toArray();
+
+        this.table = new short[cellsPerChannel * cellsPerChannel * cellsPerChannel];
+        final int shift = 8 - bitsPerChannel;
+        final int half = 1 << (shift - 1);
+        IntStream.range(0, table.length).parallel().forEach(cell -> {
+            int r = ((cell >> (2 * bitsPerChannel)) << shift) + half;
+            int g = (((cell >> bitsPerChannel) & (cellsPerChannel - 1)) << shift) + half;
+            int b = ((cell & (cellsPerChannel - 1)) << shift) + half;
+            table[cell] = (short) nearestIndex(r, g, b);
+        });
+    }
+
+    public static CanvasQuantizer get() {
+        CanvasQuantizer result = instance;
+        if (result == null) {
+            synchronized (CanvasQuantizer.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new CanvasQuantizer();
+                }
+            }
+        }
+        return result;
+    }
+
+    private int nearestIndex(int r, int g, int b) {
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < colors.length; i++) {
+            int dr = PackedColor.red(colors[i]) - r;
+            int dg = PackedColor.green(colors[i]) - g;
+            int db = PackedColor.blue(colors[i]) - b;
+            // Weighted for the eye being more sensitive to green than to red and blue
+            int distance = 2 * dr * dr + 4 * dg * dg + 3 * db * db;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the paintable ARGB colour closest to an ARGB colour
+     */
+    public int nearest(int argb) {
+        if ((argb >>> 24) < alphaThreshold) {
+            return PaletteUtil.basicColors[15];
+        }
+        final int shift = 8 - bitsPerChannel;
+        int cell = (PackedColor.red(argb) >> shift) << (2 * bitsPerChannel)
+                | (PackedColor.green(argb) >> shift) << bitsPerChannel
+                | (PackedColor.blue(argb) >> shift);
+        return colors[table[cell]];
+    }
+
+    /**
+     * Replaces every pixel with its nearest paintable colour, in place
+     */
+    public void quantize(int[] pixels) {
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = nearest(pixels[i]);
+        }
+    }
+
+    public int getColorCount() {
+        return colors.length;
+    }
+}
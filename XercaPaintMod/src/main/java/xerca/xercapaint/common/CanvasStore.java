@@ -0,0 +1,294 @@
+package xerca.xercapaint.common;
+
+import com.google.common.hash.Hashing;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.World;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraft.world.storage.WorldSavedData;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
+import xerca.xercapaint.common.entity.CanvasPaintSessions;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-world store of encoded canvas pixels, keyed by the hash of their content.
+ * Server side canvas tags only hold the "hash" key, identical paintings share a single entry.
+ *
+ * Each canvas tag holding a hash counts as one reference. Tags take a reference when they are interned, cloned
+ * ({@link xerca.xercapaint.common.item.ItemCanvas#onCreated}), imported or placed from a creative inventory,
+ * and give it back when their item despawns or their entity is broken without a drop.
+ *
+ * Copies can still be made in ways the store does not see (creative inventory copies, commands, other mods), so an
+ * entry without references is only dropped by {@link #sweep} after it stayed unreferenced for orphanGraceTicks.
+ * A tag seen by {@link #intern} in the meantime adopts the entry again.
+ */
+public class CanvasStore extends WorldSavedData {
+    private static final String NAME = XercaPaint.MODID + "_canvases";
+    public static final String HASH_KEY = "hash";
+    // One in-game week, long enough for an uncounted copy to be carried around or to have its chunk loaded again
+    private static final long orphanGraceTicks = 7 * 24000L;
+    private static final int sweepInterval = 1200;
+
+    // Store of the running server, for lookups from other threads
+    @Nullable
+    private static volatile CanvasStore current;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    @Nullable
+    private MinecraftServer server;
+
+    private static class Entry {
+        final byte[] data;
+        int refs;
+        // Game time the last reference was released at, -1 while the entry is referenced
+        long orphanedAt;
+
+        Entry(byte[] data, int refs, long orphanedAt) {
+            this.data = data;
+            this.refs = refs;
+            this.orphanedAt = orphanedAt;
+        }
+    }
+
+    public CanvasStore() {
+        super(NAME);
+    }
+
+    /**
+     * Must be called on the server thread
+     */
+    public static CanvasStore get(MinecraftServer server) {
+        CanvasStore store = server.getWorld(DimensionType.OVERWORLD).getSavedData().getOrCreate(CanvasStore::new, NAME);
+        if (store.server != server) {
+            store.server = server;
+            current = store;
+        }
+        return store;
+    }
+
+    @Nullable
+    public static CanvasStore get(World world) {
+        if (world.isRemote || world.getServer() == null) {
+            return null;
+        }
+        return get(world.getServer());
+    }
+
+    public static String hashOf(byte[] data) {
+        return Hashing.sha256().hashBytes(data).toString();
+    }
+
+    /**
+     * Returns the encoded pixels for the hash, or null if they are not in the store.
+     * Safe to call from any thread, e.g. the logical client when playing on the integrated server.
+     * Only reads the store the server thread already loaded, never loads it.
+     */
+    @Nullable
+    public static byte[] lookup(String hash) {
+        CanvasStore store = current;
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (store == null || server == null || store.server != server) {
+            return null;
+        }
+        return store.getData(hash);
+    }
+
+    @Nullable
+    public byte[] getData(String hash) {
+        Entry entry = entries.get(hash);
+        return entry == null ? null : entry.data;
+    }
+
+    public String add(byte[] data) {
+        return add(data, hashOf(data));
+    }
+
+    /**
+     * Adds a reference to data whose hash was already computed, e.g. off the server thread
+     */
+    public synchronized String add(byte[] data, String hash) {
+        Entry entry = entries.get(hash);
+        if (entry == null) {
+            entries.put(hash, new Entry(data, 1, -1));
+        } else {
+            entry.refs++;
+            entry.orphanedAt = -1;
+        }
+        markDirty();
+        return hash;
+    }
+
+    public synchronized void acquire(String hash) {
+        Entry entry = entries.get(hash);
+        if (entry != null) {
+            entry.refs++;
+            entry.orphanedAt = -1;
+            markDirty();
+        } else {
+            XercaPaint.LOGGER.warn("Tried to reference missing canvas data " + hash);
+        }
+    }
+
+    /**
+     * Counts a reference less. Data without references is dropped by a later {@link #sweep}, see the class comment.
+     */
+    public synchronized void release(String hash) {
+        Entry entry = entries.get(hash);
+        if (entry != null && entry.refs > 0) {
+            entry.refs--;
+            if (entry.refs == 0) {
+                entry.orphanedAt = getGameTime();
+            }
+            markDirty();
+        }
+    }
+
+    /**
+     * Takes a reference for a tag the store did not count, if its entry has none left
+     */
+    private synchronized void adopt(String hash) {
+        Entry entry = entries.get(hash);
+        if (entry != null && entry.refs == 0) {
+            entry.refs = 1;
+            entry.orphanedAt = -1;
+            markDirty();
+        }
+    }
+
+    /**
+     * Drops entries that stayed without references for orphanGraceTicks. Called every tick on the server thread,
+     * only every sweepInterval ticks goes through the entries.
+     */
+    public synchronized void sweep() {
+        long now = getGameTime();
+        if (now % sweepInterval != 0) {
+            return;
+        }
+        for (Entry entry : entries.values()) {
+            if (entry.refs == 0 && entry.orphanedAt < 0) {
+                // Saved before entries were dropped, the grace period starts now
+                entry.orphanedAt = now;
+                markDirty();
+            }
+        }
+        if (entries.values().removeIf(entry -> entry.refs == 0 && now - entry.orphanedAt > orphanGraceTicks)) {
+            markDirty();
+        }
+    }
+
+    private long getGameTime() {
+        return server == null ? 0 : server.getWorld(DimensionType.OVERWORLD).getGameTime();
+    }
+
+    /**
+     * Stores new pixels for a canvas tag, releasing the data it referenced before
+     */
+    public void setPixels(CompoundNBT tag, int[] pixels) {
+        byte[] data = CanvasPixelCodec.encode(pixels);
+        setEncodedPixels(tag, data, hashOf(data));
+    }
+
+    /**
+     * Same as {@link #setPixels} with pixels that were already encoded and hashed
+     */
+    public void setEncodedPixels(CompoundNBT tag, byte[] data, String hash) {
+        String oldHash = tag.getString(HASH_KEY);
+        tag.putString(HASH_KEY, add(data, hash));
+        tag.remove(CanvasPixelCodec.TAG_KEY);
+        tag.remove(CanvasPixelCodec.LEGACY_TAG_KEY);
+        if (!oldHash.isEmpty()) {
+            release(oldHash);
+        }
+    }
+
+    /**
+     * Copy of the stored data that canvases still refer to, by hash, safe to read from other threads.
+     * Leaves out entries waiting to be dropped by {@link #sweep}.
+     */
+    public synchronized Map<String, byte[]> getReferencedData() {
+        Map<String, byte[]> result = new HashMap<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().refs > 0) {
+                result.put(e.getKey(), e.getValue().data);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Moves inline pixels of a canvas tag into the store, leaving only the hash in the tag. Also migrates a legacy name to an id.
+     * Each call with inline pixels counts as a new reference, a tag that already holds a hash adopts an unreferenced entry.
+     * Returns true if the tag was changed.
+     */
+    public boolean intern(@Nullable CompoundNBT tag) {
+        if (tag == null) {
+            return false;
+        }
+        boolean changed = CanvasId.migrate(tag);
+        CanvasPixelCodec.migrate(tag);
+        if (!tag.contains(CanvasPixelCodec.TAG_KEY, 7)) {
+            if (tag.contains(HASH_KEY, 8)) {
+                adopt(tag.getString(HASH_KEY));
+            }
+            return changed;
+        }
+        String hash = add(tag.getByteArray(CanvasPixelCodec.TAG_KEY));
+        tag.remove(CanvasPixelCodec.TAG_KEY);
+        tag.putString(HASH_KEY, hash);
+        return true;
+    }
+
+    /**
+     * Returns a copy of the canvas tag with its pixels inlined, for sending to clients
+     */
+    public CompoundNBT expand(CompoundNBT tag) {
+        CompoundNBT result = tag.copy();
+        if (tag.contains(HASH_KEY, 8) && !tag.contains(CanvasPixelCodec.TAG_KEY, 7)) {
+            Entry entry = entries.get(tag.getString(HASH_KEY));
+            if (entry != null) {
+                result.putByteArray(CanvasPixelCodec.TAG_KEY, entry.data);
+            } else {
+                XercaPaint.LOGGER.warn("Missing canvas data " + tag.getString(HASH_KEY) + " for canvas " + CanvasId.get(tag));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void read(CompoundNBT nbt) {
+        entries.clear();
+        ListNBT list = nbt.getList("canvases", 10);
+        for (int i = 0; i < list.size(); i++) {
+            CompoundNBT entryTag = list.getCompound(i);
+            entries.put(entryTag.getString("h"), new Entry(entryTag.getByteArray("d"), entryTag.getInt("r"), entryTag.contains("o") ? entryTag.getLong("o") : -1));
+        }
+    }
+
+    @Override
+    public CompoundNBT write(CompoundNBT compound) {
+        // Placed canvases that are being painted on are saved with the pixels painted so far
+        CanvasPaintSessions.storeAll();
+        ListNBT list = new ListNBT();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            CompoundNBT entryTag = new CompoundNBT();
+            entryTag.putString("h", e.getKey());
+            entryTag.putByteArray("d", e.getValue().data);
+            entryTag.putInt("r", e.getValue().refs);
+            if (e.getValue().refs == 0) {
+                entryTag.putLong("o", e.getValue().orphanedAt);
+            }
+            list.add(entryTag);
+        }
+        compound.put("canvases", list);
+        return compound;
+    }
+}
@@ -0,0 +1,65 @@
+package xerca.xercapaint.common;
+
+import java.util.BitSet;
+
+/**
+ * Tracks which fixed-size tiles of a canvas changed, so syncing and texture uploads only touch those tiles.
+ */
+public class CanvasTiles {
+    public static final int TILE_SIZE = 16;
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final BitSet dirty;
+
+    public interface Visitor {
+        void visit(int x, int y, int width, int height);
+    }
+
+    public CanvasTiles(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.dirty = new BitSet(tilesX * tilesY);
+    }
+
+    public void mark(int x, int y) {
+        dirty.set(x / TILE_SIZE + (y / TILE_SIZE) * tilesX);
+    }
+
+    public void markAll() {
+        dirty.set(0, tilesX * ((height + TILE_SIZE - 1) / TILE_SIZE));
+    }
+
+    public boolean isEmpty() {
+        return dirty.isEmpty();
+    }
+
+    public void clear() {
+        dirty.clear();
+    }
+
+    /**
+     * Visits the dirty area as pixel rectangles, clipped to the canvas.
+     * Horizontally adjacent dirty tiles are merged into one rectangle.
+     */
+    public void forEachDirty(Visitor visitor) {
+        int tile = dirty.nextSetBit(0);
+        while (tile >= 0) {
+            final int ty = tile / tilesX;
+            final int rowEnd = (ty + 1) * tilesX;
+            int end = dirty.nextClearBit(tile);
+            if (end > rowEnd) {
+                end = rowEnd;
+            }
+            final int x = (tile % tilesX) * TILE_SIZE;
+            final int y = ty * TILE_SIZE;
+            final int right = Math.min(width, (end - ty * tilesX) * TILE_SIZE);
+            final int bottom = Math.min(height, y + TILE_SIZE);
+            visitor.visit(x, y, right - x, bottom - y);
+            tile = dirty.nextSetBit(end);
+        }
+    }
+}
@@ -1,44 +1,118 @@
 package xerca.xercapaint.common;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
-public enum CanvasType {
-    SMALL, LARGE, LONG, TALL;
+/**
+ * Size of a canvas. The four built-in sizes are always registered first; other mods can add more with {@link #register(String, int, int)}.
+ * Types are sent over the network by their id, which is their registration index,
+ * so registration must happen in the same order on both sides (e.g. in the mod constructor).
+ */
+public final class CanvasType {
+    // Largest side that keeps a CanvasUpdatePacket or a CanvasPaintPacket of the whole canvas under the 32767 byte limit
+    // of packets sent to the server. Their pixels take about 22.5 KB at 64x64 when every pixel has another colour,
+    // at 128x128 they would take 90 KB.
+    public static final int MAX_SIZE = 64;
 
+    private static final List<CanvasType> types = new ArrayList<>();
+
+    public static final CanvasType SMALL = register("small", 16, 16);
+    public static final CanvasType LARGE = register("large", 32, 32);
+    public static final CanvasType LONG = register("long", 32, 16);
+    public static final CanvasType TALL = register("tall", 16, 32);
+
+    private final String name;
+    private final int id;
+    private final int width;
+    private final int height;
+
+    private CanvasType(String name, int id, int width, int height) {
+        this.name = name;
+        this.id = id;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Registers a canvas size of up to MAX_SIZE pixels per side. Every 16 pixels cover one block.
+     */
+    public static synchronized CanvasType register(String name, int width, int height) {
+        if (width <= 0 || height <= 0 || width > MAX_SIZE || height > MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid canvas size " + width + "x" + height + " for " + name);
+        }
+        if (types.size() > 255) {
+            throw new IllegalStateException("Too many canvas types");
+        }
+        for (CanvasType type : types) {
+            if (type.name.equals(name)) {
+                throw new IllegalArgumentException("Duplicate canvas type " + name);
+            }
+        }
+        CanvasType type = new CanvasType(name, types.size(), width, height);
+        types.add(type);
+        return type;
+    }
+
+    @Nullable
     public static CanvasType fromByte(byte x) {
-        switch(x) {
-            case 0:
-                return SMALL;
-            case 1:
-                return LARGE;
-            case 2:
-                return LONG;
-            case 3:
-                return TALL;
+        int id = x & 0xFF;
+        return id < types.size() ? types.get(id) : null;
+    }
+
+    @Nullable
+    public static CanvasType byName(String name) {
+        for (CanvasType type : types) {
+            if (type.name.equals(name)) {
+                return type;
+            }
         }
         return null;
     }
 
-    public static int getWidth(CanvasType canvasType){
-        switch (canvasType){
-            case SMALL:
-            case TALL:
-                return 16;
-            case LARGE:
-            case LONG:
-                return 32;
+    public static List<CanvasType> values() {
+        return Collections.unmodifiableList(types);
+    }
+
+    public static int getMaxArea(){
+        int maxArea = 0;
+        for(CanvasType canvasType : types){
+            maxArea = Math.max(maxArea, canvasType.getArea());
         }
-        return 0;
+        return maxArea;
+    }
+
+    public static int getWidth(CanvasType canvasType){
+        return canvasType.width;
     }
 
     public static int getHeight(CanvasType canvasType){
-        switch (canvasType){
-            case SMALL:
-            case LONG:
-                return 16;
-            case LARGE:
-            case TALL:
-                return 32;
-        }
-        return 0;
+        return canvasType.height;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getArea() {
+        return width * height;
+    }
+
+    @Override
+    public String toString() {
+        return name;
     }
-}
\ No newline at end of file
+}
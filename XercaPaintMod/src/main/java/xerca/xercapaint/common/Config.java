@@ -0,0 +1,78 @@
+package xerca.xercapaint.common;
+
+import net.minecraftforge.common.ForgeConfigSpec;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.config.ModConfig;
+
+@Mod.EventBusSubscriber(modid = XercaPaint.MODID, bus = Mod.EventBusSubscriber.Bus.MOD)
+public class Config {
+    public static final String CATEGORY_RENDERING = "rendering";
+    public static final String CATEGORY_EDITING = "editing";
+
+    private static final ForgeConfigSpec.Builder CLIENT_BUILD = new ForgeConfigSpec.Builder();
+
+    public static ForgeConfigSpec CLIENT_CONFIG;
+
+    private static ForgeConfigSpec.IntValue TEXTURE_CACHE_BUDGET;
+    private static ForgeConfigSpec.IntValue UNDO_HISTORY_BUDGET;
+    private static ForgeConfigSpec.IntValue THUMBNAIL_CACHE_SIZE;
+
+    private static int textureCacheBudget = 16*1024*1024;
+    private static int undoHistoryBudget = 1024*1024;
+    private static int thumbnailCacheSize = 1024;
+
+    static {
+        CLIENT_BUILD.comment("Rendering settings").push(CATEGORY_RENDERING);
+
+        TEXTURE_CACHE_BUDGET = CLIENT_BUILD.comment("Memory budget in kilobytes for the textures of placed canvases. " +
+                "Canvases that were not drawn recently are unloaded when the budget is exceeded.")
+                .defineInRange("texture_cache_budget_kb", 16384, 256, 1048576);
+
+        THUMBNAIL_CACHE_SIZE = CLIENT_BUILD.comment("Number of canvas item thumbnails kept in memory. " +
+                "The thumbnails that were not drawn for the longest time are unloaded when there are more.")
+                .defineInRange("thumbnail_cache_size", 1024, 16, 65536);
+
+        CLIENT_BUILD.pop();
+
+        CLIENT_BUILD.comment("Canvas editor settings").push(CATEGORY_EDITING);
+
+        UNDO_HISTORY_BUDGET = CLIENT_BUILD.comment("Memory budget in kilobytes for the undo history of the canvas editor. " +
+                "The oldest strokes are forgotten when the budget is exceeded.")
+                .defineInRange("undo_history_budget_kb", 1024, 16, 65536);
+
+        CLIENT_BUILD.pop();
+
+        CLIENT_CONFIG = CLIENT_BUILD.build();
+    }
+
+    @SubscribeEvent
+    public static void onLoad(final ModConfig.Loading configEvent) {
+        XercaPaint.LOGGER.debug("Config load event");
+        Config.bakeConfig();
+    }
+
+    @SubscribeEvent
+    public static void onReload(final ModConfig.Reloading configEvent) {
+        XercaPaint.LOGGER.debug("Config reload event");
+        Config.bakeConfig();
+    }
+
+    public static void bakeConfig(){
+        textureCacheBudget = TEXTURE_CACHE_BUDGET.get()*1024;
+        undoHistoryBudget = UNDO_HISTORY_BUDGET.get()*1024;
+        thumbnailCacheSize = THUMBNAIL_CACHE_SIZE.get();
+    }
+
+    public static int getTextureCacheBudget() {
+        return textureCacheBudget;
+    }
+
+    public static int getUndoHistoryBudget() {
+        return undoHistoryBudget;
+    }
+
+    public static int getThumbnailCacheSize() {
+        return thumbnailCacheSize;
+    }
+}
@@ -1,8 +1,86 @@
 package xerca.xercapaint.common;
 
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.item.ItemExpireEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.world.BlockEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.server.FMLServerStartingEvent;
+import xerca.xercapaint.common.command.CommandCanvas;
+import xerca.xercapaint.common.entity.CanvasPaintSessions;
+import xerca.xercapaint.common.entity.CanvasSurfaceIndex;
+import xerca.xercapaint.common.item.ItemCanvas;
+import xerca.xercapaint.common.packets.PacketRateLimiter;
 
 @Mod.EventBusSubscriber(modid = XercaPaint.MODID)
 class EventHandler {
+    @SubscribeEvent
+    public static void onItemExpire(ItemExpireEvent event) {
+        ItemStack stack = event.getEntityItem().getItem();
+        CompoundNBT tag = stack.getTag();
+        if (stack.getItem() instanceof ItemCanvas && tag != null && tag.contains(CanvasStore.HASH_KEY, 8)) {
+            CanvasStore store = CanvasStore.get(event.getEntityItem().world);
+            if (store != null) {
+                store.release(tag.getString(CanvasStore.HASH_KEY));
+            }
+            CanvasGallery gallery = CanvasGallery.get(event.getEntityItem().world);
+            if (gallery != null) {
+                gallery.remove(tag);
+            }
+        }
+    }
 
+    @SubscribeEvent
+    public static void onNeighborNotify(BlockEvent.NeighborNotifyEvent event) {
+        if (!event.getWorld().isRemote()) {
+            CanvasSurfaceIndex.get(event.getWorld()).onBlockChanged(event.getPos());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldTick(TickEvent.WorldTickEvent event) {
+        if (event.phase == TickEvent.Phase.END && !event.world.isRemote) {
+            CanvasSurfaceIndex.get(event.world).validatePending();
+            CanvasPaintSessions.get(event.world).flush();
+            if (event.world.getDimension().getType() == DimensionType.OVERWORLD) {
+                CanvasStore.get(event.world.getServer()).sweep();
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        CanvasSurfaceIndex.remove(event.getWorld());
+        CanvasPaintSessions.remove(event.getWorld());
+    }
+
+    @SubscribeEvent
+    public static void onServerStarting(FMLServerStartingEvent event) {
+        CommandCanvas.register(event.getCommandDispatcher());
+        // Loads the store on the server thread, so the client of an integrated server can look it up
+        CanvasStore.get(event.getServer());
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        PacketRateLimiter.CANVAS.remove(event.getPlayer().getUniqueID());
+        PacketRateLimiter.CANVAS_DATA.remove(event.getPlayer().getUniqueID());
+        if (event.getPlayer() instanceof ServerPlayerEntity) {
+            HeldCanvasEdits.commit((ServerPlayerEntity) event.getPlayer());
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerSave(PlayerEvent.SaveToFile event) {
+        // The saved canvas item gets the pixels of an editor that is still open
+        if (event.getPlayer() instanceof ServerPlayerEntity) {
+            HeldCanvasEdits.commit((ServerPlayerEntity) event.getPlayer());
+        }
+    }
 }
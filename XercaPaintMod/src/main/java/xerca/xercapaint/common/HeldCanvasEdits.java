@@ -0,0 +1,67 @@
+package xerca.xercapaint.common;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.nbt.CompoundNBT;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Pixels of the held canvas each player is painting on with deltas, kept off the {@link CanvasStore} while the editor is open.
+ * Storing every delta would add a store entry for each intermediate state. The full update sent when the editor closes
+ * or the canvas is signed replaces the working copy. Without one, the working copy is stored when the player is saved
+ * or logs out, or when the player starts painting another canvas.
+ * Only touched on the server thread.
+ */
+public class HeldCanvasEdits {
+    private static final Map<UUID, Edit> edits = new HashMap<>();
+
+    private static class Edit {
+        // Tag of the held item, the working copy is stored into it
+        final CompoundNBT tag;
+        final int[] pixels;
+
+        Edit(CompoundNBT tag, int[] pixels) {
+            this.tag = tag;
+            this.pixels = pixels;
+        }
+    }
+
+    /**
+     * Returns the working copy of the canvas tag's pixels, reading it from the tag when the player starts painting it.
+     * Returns null if the tag has no valid pixels.
+     */
+    @Nullable
+    public static int[] getPixels(ServerPlayerEntity player, CompoundNBT tag, int area) {
+        Edit edit = edits.get(player.getUniqueID());
+        if (edit != null && edit.tag == tag) {
+            return edit.pixels;
+        }
+        commit(player);
+        int[] pixels = CanvasPixelCodec.readPixels(tag, area);
+        if (pixels == null || pixels.length != area) {
+            return null;
+        }
+        edits.put(player.getUniqueID(), new Edit(tag, pixels));
+        return pixels;
+    }
+
+    /**
+     * Stores the working copy of the player into its canvas tag
+     */
+    public static void commit(ServerPlayerEntity player) {
+        Edit edit = edits.remove(player.getUniqueID());
+        if (edit != null) {
+            CanvasStore.get(player.server).setPixels(edit.tag, edit.pixels);
+        }
+    }
+
+    /**
+     * Drops the working copy of the player, for when a full update replaced the pixels
+     */
+    public static void discard(ServerPlayerEntity player) {
+        edits.remove(player.getUniqueID());
+    }
+}
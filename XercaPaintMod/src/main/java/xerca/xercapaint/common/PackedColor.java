@@ -0,0 +1,78 @@
+package xerca.xercapaint.common;
+
+/**
+ * Colours packed into ARGB ints, the format of canvas pixels. Nothing here allocates.
+ */
+public final class PackedColor {
+    // Two dye mixes, the mixes made most often, by the indices of the two dyes
+    private static final int[] dyeMixes = new int[PaletteUtil.basicColors.length * PaletteUtil.basicColors.length];
+
+    static {
+        final int dyeCount = PaletteUtil.basicColors.length;
+        for (int i = 0; i < dyeCount; i++) {
+            for (int j = 0; j < dyeCount; j++) {
+                int a = PaletteUtil.basicColors[i];
+                int b = PaletteUtil.basicColors[j];
+                dyeMixes[i * dyeCount + j] = fromTotals(red(a) + red(b), green(a) + green(b), blue(a) + blue(b), maxChannel(a) + maxChannel(b), 2);
+            }
+        }
+    }
+
+    private PackedColor() {
+    }
+
+    public static int of(int r, int g, int b) {
+        return 0xFF000000 | (r & 0xFF) << 16 | (g & 0xFF) << 8 | (b & 0xFF);
+    }
+
+    public static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    public static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    public static int blue(int color) {
+        return color & 0xFF;
+    }
+
+    public static int maxChannel(int color) {
+        return Math.max(Math.max(red(color), green(color)), blue(color));
+    }
+
+    /**
+     * Swaps the red and blue channels, ARGB to ABGR (the order of NativeImage) and back
+     */
+    public static int toABGR(int color) {
+        return (color & 0xFF00FF00) | ((color >> 16) & 0xFF) | ((color & 0xFF) << 16);
+    }
+
+    /**
+     * Result of mixing count colours with the given channel totals, keeping the brightness of the brightest channels.
+     * Mixing nothing gives the emptiness colour and mixing only black gives black.
+     */
+    public static int fromTotals(int totalRed, int totalGreen, int totalBlue, int totalMaximum, int count) {
+        if (count <= 0) {
+            return PaletteUtil.emptinessColor;
+        }
+        int averageRed = totalRed / count;
+        int averageGreen = totalGreen / count;
+        int averageBlue = totalBlue / count;
+        int averageMaximum = totalMaximum / count;
+
+        int maximumOfAverage = Math.max(Math.max(averageRed, averageGreen), averageBlue);
+        if (maximumOfAverage == 0) {
+            return of(0, 0, 0);
+        }
+        int gainFactor = averageMaximum / maximumOfAverage;
+        return of(Math.min(255, averageRed * gainFactor), Math.min(255, averageGreen * gainFactor), Math.min(255, averageBlue * gainFactor));
+    }
+
+    /**
+     * Colour of an equal mix of two dyes, by their palette indices
+     */
+    public static int mixDyes(int first, int second) {
+        return dyeMixes[first * PaletteUtil.basicColors.length + second];
+    }
+}
@@ -1,50 +1,35 @@
 package xerca.xercapaint.common;
 
-import com.mojang.blaze3d.platform.GlStateManager;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.network.PacketBuffer;
 
 public class PaletteUtil {
-    final public static PaletteUtil.Color emptinessColor = new PaletteUtil.Color(255, 236, 229);
+    // Colour of an empty custom colour slot, (255, 236, 229)
+    final public static int emptinessColor = 0xFFFFECE5;
+    // Dye colours of the palette, in the order of the palette slots
+    final public static int[] basicColors = {
+            0xFF1D1D21,
+            0xFFB02E26,
+            0xFF5E7C16,
+            0xFF835432,
+            0xFF3C44AA,
+            0xFF8932B8,
+            0xFF169C9C,
+            0xFF9D9D97,
+            0xFF474F52,
+            0xFFF38BAA,
+            0xFF80C71F,
+            0xFFFED83D,
+            0xFF3AB3DA,
+            0xFFC74EBD,
+            0xFFF9801D,
+            0xFFF9FFFE
+    };
 
-    public static class Color {
-        public static Color WHITE = new Color(0xFFFFFFFF);
-
-        public int r, g, b;
-
-        public Color(int r, int g, int b) {
-            this.r = r;
-            this.g = g;
-            this.b = b;
-        }
-
-        public Color(int rgb) {
-            this.r = (rgb >> 16) & 0xFF;
-            this.g = (rgb >> 8) & 0xFF;
-            this.b = rgb & 0xFF;
-        }
-
-        public int rgbVal() {
-            int val = r;
-            val = (val << 8) + g;
-            val = (val << 8) + b;
-            val += 0xFF000000;
-            return val;
-        }
-
-        public int bgrVal() {
-            int val = b;
-            val = (val << 8) + g;
-            val = (val << 8) + r;
-            val += 0xFF000000;
-            return val;
-        }
-
-        public void setGLColor(){
-            GlStateManager.color4f(((float)r)/255.f, ((float)g)/255.f, ((float)b)/255.f, 1.0f);
-        }
-    }
     public static class CustomColor {
+        // Keeps the totals far from overflowing
+        private static final int maxNumberOfColors = 1 << 20;
+
         private int totalRed = 0;
         private int totalGreen = 0;
         private int totalBlue = 0;
@@ -52,7 +37,7 @@ public class PaletteUtil {
 
         private int numberOfColors = 0;
 
-        private PaletteUtil.Color result;
+        private int result;
 
         public CustomColor() {
             calculateResult();
@@ -60,6 +45,7 @@ public class PaletteUtil {
 
         public CustomColor(PacketBuffer buf) {
             readFromBuffer(buf);
+            calculateResult();
         }
 
         public CustomColor(int totalRed, int totalGreen, int totalBlue, int totalMaximum, int numberOfColors) {
@@ -72,30 +58,27 @@ public class PaletteUtil {
         }
 
         public void calculateResult(){
-            if(numberOfColors == 0){
-                this.result = emptinessColor;//new PaletteUtil.Color(200, 200, 200);
-                return;
-            }
-            int averageRed = totalRed / numberOfColors;
-            int averageGreen = totalGreen / numberOfColors;
-            int averageBlue = totalBlue / numberOfColors;
-            int averageMaximum = totalMaximum / numberOfColors;
-
-            int maximumOfAverage = Math.max(Math.max(averageRed, averageGreen), averageBlue);
-            int gainFactor = averageMaximum / maximumOfAverage;
-
-            int resultRed = averageRed * gainFactor;
-            int resultGreen = averageGreen * gainFactor;
-            int resultBlue = averageBlue * gainFactor;
-
-            this.result = new PaletteUtil.Color(resultRed, resultGreen, resultBlue);
+            this.result = PackedColor.fromTotals(totalRed, totalGreen, totalBlue, totalMaximum, numberOfColors);
+        }
+
+        /**
+         * Clamps values read from the network into the range that mixing can produce
+         */
+        public void clampValues(){
+            numberOfColors = Math.max(0, Math.min(numberOfColors, maxNumberOfColors));
+            final int maxTotal = numberOfColors * 255;
+            totalRed = Math.max(0, Math.min(totalRed, maxTotal));
+            totalGreen = Math.max(0, Math.min(totalGreen, maxTotal));
+            totalBlue = Math.max(0, Math.min(totalBlue, maxTotal));
+            totalMaximum = Math.max(0, Math.min(totalMaximum, maxTotal));
+            calculateResult();
         }
 
-        public void mix(PaletteUtil.Color toBeMixed){
-            totalRed += toBeMixed.r;
-            totalGreen += toBeMixed.g;
-            totalBlue += toBeMixed.b;
-            totalMaximum += Math.max(Math.max(toBeMixed.r, toBeMixed.g), toBeMixed.b);
+        public void mix(int toBeMixed){
+            totalRed += PackedColor.red(toBeMixed);
+            totalGreen += PackedColor.green(toBeMixed);
+            totalBlue += PackedColor.blue(toBeMixed);
+            totalMaximum += PackedColor.maxChannel(toBeMixed);
             numberOfColors += 1;
             calculateResult();
         }
@@ -109,7 +92,10 @@ public class PaletteUtil {
             calculateResult();
         }
 
-        public PaletteUtil.Color getColor() {
+        /**
+         * The mixed colour as ARGB
+         */
+        public int getColor() {
             return result;
         }
 
@@ -155,6 +141,15 @@ public class PaletteUtil {
         tag.putIntArray("n", numbersOfColors);
     }
 
+    /**
+     * Puts the custom colour arrays of a tag made by {@link #writeCustomColorArrayToNBT} into another tag, without copying them
+     */
+    public static void putCustomColorArrays(CompoundNBT tag, CompoundNBT colorArrays){
+        for(String key : new String[]{"r", "g", "b", "m", "n"}){
+            tag.put(key, colorArrays.get(key));
+        }
+    }
+
     public static void readCustomColorArrayFromNBT(CompoundNBT tag, PaletteUtil.CustomColor[] customColors){
         int[] totalReds = tag.getIntArray("r");
         int[] totalGreens = tag.getIntArray("g");
@@ -2,8 +2,15 @@ package xerca.xercapaint.common;
 
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.nbt.CompoundNBT;
+import xerca.xercapaint.common.entity.EntityCanvas;
+
+import javax.annotation.Nullable;
 
 public abstract class Proxy {
     public abstract void init();
     public abstract void showCanvasGui(PlayerEntity player);
+    public abstract void showPlacedCanvasGui(PlayerEntity player, EntityCanvas canvas);
+    @Nullable
+    public abstract byte[] getCanvasData(String hash);
+    public abstract boolean cacheCanvasData(String hash, byte[] data);
 }
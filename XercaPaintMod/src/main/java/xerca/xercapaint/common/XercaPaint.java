@@ -3,7 +3,9 @@ package xerca.xercapaint.common;
 import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.DistExecutor;
+import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.config.ModConfig;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraftforge.fml.event.lifecycle.InterModEnqueueEvent;
 import net.minecraftforge.fml.event.lifecycle.InterModProcessEvent;
@@ -13,8 +15,22 @@ import net.minecraftforge.fml.network.simple.SimpleChannel;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import xerca.xercapaint.client.ClientProxy;
+import xerca.xercapaint.common.packets.CanvasAckPacket;
+import xerca.xercapaint.common.packets.CanvasAckPacketHandler;
+import xerca.xercapaint.common.packets.CanvasDataPacket;
+import xerca.xercapaint.common.packets.CanvasDataPacketHandler;
+import xerca.xercapaint.common.packets.CanvasDataRequestPacket;
+import xerca.xercapaint.common.packets.CanvasDataRequestPacketHandler;
+import xerca.xercapaint.common.packets.CanvasDeltaPacket;
+import xerca.xercapaint.common.packets.CanvasDeltaPacketHandler;
+import xerca.xercapaint.common.packets.CanvasPaintBroadcastPacket;
+import xerca.xercapaint.common.packets.CanvasPaintBroadcastPacketHandler;
+import xerca.xercapaint.common.packets.CanvasPaintPacket;
+import xerca.xercapaint.common.packets.CanvasPaintPacketHandler;
 import xerca.xercapaint.common.packets.CanvasUpdatePacket;
 import xerca.xercapaint.common.packets.CanvasUpdatePacketHandler;
+import xerca.xercapaint.common.packets.PaletteAckPacket;
+import xerca.xercapaint.common.packets.PaletteAckPacketHandler;
 import xerca.xercapaint.common.packets.PaletteUpdatePacket;
 import xerca.xercapaint.common.packets.PaletteUpdatePacketHandler;
 import xerca.xercapaint.server.ServerProxy;
@@ -26,7 +42,7 @@ public class XercaPaint {
 
     public static Proxy proxy = DistExecutor.runForDist(() -> ClientProxy::new, () -> ServerProxy::new);
 
-    private static final String PROTOCOL_VERSION = Integer.toString(1);
+    private static final String PROTOCOL_VERSION = Integer.toString(7);
     public static final SimpleChannel NETWORK_HANDLER = NetworkRegistry.ChannelBuilder
             .named(new ResourceLocation(XercaPaint.MODID, "main_channel"))
             .clientAcceptedVersions(PROTOCOL_VERSION::equals)
@@ -42,12 +58,21 @@ public class XercaPaint {
         FMLJavaModLoadingContext.get().getModEventBus().addListener(this::processIMC);
 
         MinecraftForge.EVENT_BUS.register(this);
+
+        ModLoadingContext.get().registerConfig(ModConfig.Type.CLIENT, Config.CLIENT_CONFIG);
     }
 
     private void networkRegistry(){
         int msg_id = 0;
         NETWORK_HANDLER.registerMessage(msg_id++, CanvasUpdatePacket.class, CanvasUpdatePacket::encode, CanvasUpdatePacket::decode, CanvasUpdatePacketHandler::handle);
         NETWORK_HANDLER.registerMessage(msg_id++, PaletteUpdatePacket.class, PaletteUpdatePacket::encode, PaletteUpdatePacket::decode, PaletteUpdatePacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, CanvasDeltaPacket.class, CanvasDeltaPacket::encode, CanvasDeltaPacket::decode, CanvasDeltaPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, CanvasAckPacket.class, CanvasAckPacket::encode, CanvasAckPacket::decode, CanvasAckPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, CanvasDataRequestPacket.class, CanvasDataRequestPacket::encode, CanvasDataRequestPacket::decode, CanvasDataRequestPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, CanvasDataPacket.class, CanvasDataPacket::encode, CanvasDataPacket::decode, CanvasDataPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, CanvasPaintPacket.class, CanvasPaintPacket::encode, CanvasPaintPacket::decode, CanvasPaintPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, CanvasPaintBroadcastPacket.class, CanvasPaintBroadcastPacket::encode, CanvasPaintBroadcastPacket::decode, CanvasPaintBroadcastPacketHandler::handle);
+        NETWORK_HANDLER.registerMessage(msg_id++, PaletteAckPacket.class, PaletteAckPacket::encode, PaletteAckPacket::decode, PaletteAckPacketHandler::handle);
     }
 
     private void setup(final FMLCommonSetupEvent event)
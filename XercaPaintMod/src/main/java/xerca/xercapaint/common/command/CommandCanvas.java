@@ -0,0 +1,282 @@
+package xerca.xercapaint.common.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.brigadier.exceptions.DynamicCommandExceptionType;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.command.ISuggestionProvider;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.inventory.IInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.TranslationTextComponent;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraft.world.server.ServerWorld;
+import xerca.xercapaint.common.CanvasGallery;
+import xerca.xercapaint.common.CanvasId;
+import xerca.xercapaint.common.CanvasImages;
+import xerca.xercapaint.common.CanvasPixelCodec;
+import xerca.xercapaint.common.CanvasStore;
+import xerca.xercapaint.common.CanvasType;
+import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.entity.CanvasPaintSessions;
+import xerca.xercapaint.common.entity.EntityCanvas;
+import xerca.xercapaint.common.item.ItemCanvas;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * /xercapaint export: writes every canvas the world's canvas store holds for a canvas to PNG files in xercapaint/export of the world folder.
+ * /xercapaint import &lt;type&gt;: turns every PNG in xercapaint/import of the world folder into a canvas of that type for the player.
+ * The image work runs on {@link CanvasImages#getWorkers()}, only the store and inventory changes happen on the server thread.
+ * Images that fail to convert, also with an unexpected exception, are counted as not done and logged.
+ * /xercapaint gallery [author &lt;name&gt; | title &lt;text&gt;] [page]: lists signed canvases from the {@link CanvasGallery}.
+ */
+public class CommandCanvas {
+    private static final int galleryPageSize = 8;
+    private static final DynamicCommandExceptionType UNKNOWN_TYPE = new DynamicCommandExceptionType(name -> new TranslationTextComponent("commands.xercapaint.unknown_type", name));
+
+    public static void register(CommandDispatcher<CommandSource> dispatcher) {
+        dispatcher.register(Commands.literal("xercapaint")
+                .requires(source -> source.hasPermissionLevel(2))
+                .then(Commands.literal("export")
+                        .executes(context -> exportCanvases(context.getSource())))
+                .then(Commands.literal("import")
+                        .then(Commands.argument("type", StringArgumentType.word())
+                                .suggests((context, builder) -> ISuggestionProvider.suggest(CanvasType.values().stream().map(CanvasType::getName), builder))
+                                .executes(context -> importCanvases(context.getSource(), StringArgumentType.getString(context, "type")))))
+                .then(Commands.literal("gallery")
+                        .executes(context -> listGallery(context.getSource(), null, null, 1))
+                        .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                                .executes(context -> listGallery(context.getSource(), null, null, IntegerArgumentType.getInteger(context, "page"))))
+                        .then(Commands.literal("author")
+                                .then(Commands.argument("name", StringArgumentType.word())
+                                        .executes(context -> listGallery(context.getSource(), StringArgumentType.getString(context, "name"), null, 1))
+                                        .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                                                .executes(context -> listGallery(context.getSource(), StringArgumentType.getString(context, "name"), null, IntegerArgumentType.getInteger(context, "page"))))))
+                        .then(Commands.literal("title")
+                                .then(Commands.argument("text", StringArgumentType.string())
+                                        .executes(context -> listGallery(context.getSource(), null, StringArgumentType.getString(context, "text"), 1))
+                                        .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                                                .executes(context -> listGallery(context.getSource(), null, StringArgumentType.getString(context, "text"), IntegerArgumentType.getInteger(context, "page"))))))));
+    }
+
+    private static int listGallery(CommandSource source, String author, String title, int page) {
+        List<CanvasGallery.Entry> entries = CanvasGallery.get(source.getServer()).search(author, title);
+        if (entries.isEmpty()) {
+            source.sendErrorMessage(new TranslationTextComponent("commands.xercapaint.gallery.none"));
+            return 0;
+        }
+        int pageCount = (entries.size() + galleryPageSize - 1) / galleryPageSize;
+        page = Math.min(page, pageCount);
+        int from = (page - 1) * galleryPageSize;
+        int to = Math.min(entries.size(), from + galleryPageSize);
+        source.sendFeedback(new TranslationTextComponent("commands.xercapaint.gallery.header", entries.size(), page, pageCount), false);
+        for (CanvasGallery.Entry entry : entries.subList(from, to)) {
+            TranslationTextComponent generation = new TranslationTextComponent("canvas.generation." + Math.max(0, Math.min(2, entry.getGeneration() - 1)));
+            BlockPos pos = entry.getPos();
+            if (entry.getPlace() == CanvasGallery.Place.HELD) {
+                source.sendFeedback(new TranslationTextComponent("commands.xercapaint.gallery.held",
+                        entry.getTitle(), entry.getAuthor(), entry.getTypeName(), generation, entry.getWhere()), false);
+            } else {
+                source.sendFeedback(new TranslationTextComponent("commands.xercapaint.gallery." + (entry.getPlace() == CanvasGallery.Place.PLACED ? "placed" : "dropped"),
+                        entry.getTitle(), entry.getAuthor(), entry.getTypeName(), generation, pos.getX(), pos.getY(), pos.getZ(), entry.getWhere()), false);
+            }
+        }
+        return entries.size();
+    }
+
+    private static Path getFolder(MinecraftServer server, String name) {
+        return server.getWorld(DimensionType.OVERWORLD).getSaveHandler().getWorldDirectory().toPath().resolve(XercaPaint.MODID).resolve(name);
+    }
+
+    private static int exportCanvases(CommandSource source) {
+        MinecraftServer server = source.getServer();
+        CanvasPaintSessions.storeAll();
+        Map<String, byte[]> data = CanvasStore.get(server).getReferencedData();
+        Map<String, CanvasType> types = findCanvasTypes(server);
+        Path folder = getFolder(server, "export");
+
+        List<CompletableFuture<Boolean>> tasks = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : data.entrySet()) {
+            tasks.add(CompletableFuture.supplyAsync(() -> exportCanvas(entry.getKey(), entry.getValue(), types.get(entry.getKey()), folder), CanvasImages.getWorkers())
+                    .handle((exported, error) -> {
+                        if (error != null) {
+                            XercaPaint.LOGGER.warn("Could not export canvas data " + entry.getKey(), error);
+                            return false;
+                        }
+                        return exported;
+                    }));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).whenComplete((done, error) -> {
+            long exported = tasks.stream().filter(CompletableFuture::join).count();
+            server.execute(() -> source.sendFeedback(new TranslationTextComponent("commands.xercapaint.export.done", exported, folder.toString()), true));
+        });
+        source.sendFeedback(new TranslationTextComponent("commands.xercapaint.export.started", data.size()), false);
+        return data.size();
+    }
+
+    private static boolean exportCanvas(String hash, byte[] encoded, CanvasType type, Path folder) {
+        int[] pixels = CanvasPixelCodec.decode(encoded, CanvasType.getMaxArea());
+        if (pixels == null) {
+            XercaPaint.LOGGER.warn("Could not export invalid canvas data " + hash);
+            return false;
+        }
+        if (type == null || type.getArea() != pixels.length) {
+            type = guessCanvasType(pixels.length);
+            if (type == null) {
+                XercaPaint.LOGGER.warn("No canvas type with an area of " + pixels.length + " for canvas data " + hash);
+                return false;
+            }
+        }
+        try {
+            CanvasImages.writePng(pixels, type.getWidth(), type.getHeight(), folder.resolve(hash + "_" + type.getName() + ".png"));
+            return true;
+        } catch (IOException e) {
+            XercaPaint.LOGGER.warn("Could not export canvas data " + hash + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Store entries do not know their size. Canvases that are placed in loaded chunks or carried by online players tell it,
+     * the others are matched by their area.
+     */
+    private static Map<String, CanvasType> findCanvasTypes(MinecraftServer server) {
+        Map<String, CanvasType> types = new HashMap<>();
+        for (ServerWorld world : server.getWorlds()) {
+            world.getEntities().filter(entity -> entity instanceof EntityCanvas).forEach(entity -> {
+                EntityCanvas canvas = (EntityCanvas) entity;
+                if (canvas.getCanvasNBT() != null) {
+                    types.put(canvas.getCanvasNBT().getString(CanvasStore.HASH_KEY), canvas.getCanvasType());
+                }
+            });
+        }
+        for (ServerPlayerEntity player : server.getPlayerList().getPlayers()) {
+            addCanvasTypes(player.inventory, types);
+            addCanvasTypes(player.getInventoryEnderChest(), types);
+        }
+        return types;
+    }
+
+    private static void addCanvasTypes(IInventory inventory, Map<String, CanvasType> types) {
+        for (int i = 0; i < inventory.getSizeInventory(); i++) {
+            ItemStack stack = inventory.getStackInSlot(i);
+            if (stack.getItem() instanceof ItemCanvas && stack.getTag() != null) {
+                types.put(stack.getTag().getString(CanvasStore.HASH_KEY), ((ItemCanvas) stack.getItem()).getCanvasType());
+            }
+        }
+    }
+
+    private static CanvasType guessCanvasType(int area) {
+        for (CanvasType type : CanvasType.values()) {
+            if (type.getArea() == area) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private static int importCanvases(CommandSource source, String typeName) throws CommandSyntaxException {
+        CanvasType type = CanvasType.byName(typeName);
+        ItemCanvas item = type == null ? null : ItemCanvas.forType(type);
+        if (item == null) {
+            throw UNKNOWN_TYPE.create(typeName);
+        }
+        UUID playerId = source.asPlayer().getUniqueID();
+        MinecraftServer server = source.getServer();
+        Path folder = getFolder(server, "import");
+
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(folder)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*.png")) {
+                stream.forEach(files::add);
+            } catch (IOException e) {
+                XercaPaint.LOGGER.warn("Could not list canvas images in " + folder + ": " + e);
+            }
+        }
+        if (files.isEmpty()) {
+            source.sendErrorMessage(new TranslationTextComponent("commands.xercapaint.import.none", folder.toString()));
+            return 0;
+        }
+
+        List<CompletableFuture<ImportedCanvas>> tasks = files.stream()
+                .map(file -> CompletableFuture.supplyAsync(() -> importCanvas(file, type), CanvasImages.getWorkers())
+                        .handle((canvas, error) -> {
+                            if (error != null) {
+                                XercaPaint.LOGGER.warn("Could not import canvas image " + file.getFileName(), error);
+                                return null;
+                            }
+                            return canvas;
+                        }))
+                .collect(Collectors.toList());
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).whenComplete((done, error) -> server.execute(() -> {
+            // The player may have logged out while the images were converted
+            ServerPlayerEntity player = server.getPlayerList().getPlayerByUUID(playerId);
+            if (player == null) {
+                XercaPaint.LOGGER.warn("Player " + playerId + " left before their canvas import was done, nothing was imported");
+                return;
+            }
+            CanvasStore store = CanvasStore.get(server);
+            CanvasGallery gallery = CanvasGallery.get(server);
+            int imported = 0;
+            for (CompletableFuture<ImportedCanvas> task : tasks) {
+                ImportedCanvas canvas = task.join();
+                if (canvas == null) {
+                    continue;
+                }
+                CompoundNBT tag = new CompoundNBT();
+                CanvasId.put(tag, CanvasId.create());
+                tag.putInt("v", 1);
+                tag.putInt("generation", 0);
+                store.setEncodedPixels(tag, canvas.data, canvas.hash);
+                gallery.recordHeld(tag, type, player);
+
+                ItemStack stack = new ItemStack(item);
+                stack.setTag(tag);
+                if (!player.inventory.addItemStackToInventory(stack)) {
+                    player.dropItem(stack, false);
+                }
+                imported++;
+            }
+            source.sendFeedback(new TranslationTextComponent("commands.xercapaint.import.done", imported, files.size()), true);
+        }));
+        source.sendFeedback(new TranslationTextComponent("commands.xercapaint.import.started", files.size()), false);
+        return files.size();
+    }
+
+    private static ImportedCanvas importCanvas(Path file, CanvasType type) {
+        try {
+            byte[] data = CanvasPixelCodec.encode(CanvasImages.readCanvasPixels(file, type.getWidth(), type.getHeight()));
+            return new ImportedCanvas(data, CanvasStore.hashOf(data));
+        } catch (IOException e) {
+            XercaPaint.LOGGER.warn("Could not import canvas image " + file.getFileName() + ": " + e);
+            return null;
+        }
+    }
+
+    private static class ImportedCanvas {
+        final byte[] data;
+        final String hash;
+
+        ImportedCanvas(byte[] data, String hash) {
+            this.data = data;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package xerca.xercapaint.common.entity;
+
+import it.unimi.dsi.fastutil.ints.Int2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.world.IWorld;
+import net.minecraft.world.World;
+import net.minecraftforge.fml.network.PacketDistributor;
+import xerca.xercapaint.common.CanvasId;
+import xerca.xercapaint.common.CanvasPixelCodec;
+import xerca.xercapaint.common.CanvasStore;
+import xerca.xercapaint.common.CanvasTiles;
+import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.item.ItemPalette;
+import xerca.xercapaint.common.packets.CanvasPaintBroadcastPacket;
+import xerca.xercapaint.common.packets.CanvasRects;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Collaborative painting on placed canvases. Paint packets are applied to the canvas pixels in the order they arrive.
+ * At the end of the tick, the changed tiles of every canvas painted on are sent to the players tracking it
+ * in a single packet, however many players painted.
+ *
+ * The pixels of a session stay in memory and are put in the {@link CanvasStore} only when the session goes idle,
+ * when the canvas is saved, sent to a new tracker or broken, and before the store itself is saved.
+ * Until then the broadcasts carry no hash, and a last broadcast without changes tells the trackers the stored hash.
+ */
+public class CanvasPaintSessions {
+    private static final Map<IWorld, CanvasPaintSessions> sessionsByWorld = new WeakHashMap<>();
+    // Squared distance from which players can paint on a canvas
+    private static final double maxPaintDistanceSq = 8 * 8;
+    // Sessions are dropped after this many ticks without painting
+    private static final int idleTicks = 600;
+
+    private final Int2ObjectMap<Session> sessions = new Int2ObjectOpenHashMap<>();
+
+    private static class Session {
+        final EntityCanvas canvas;
+        final int[] pixels;
+        final CanvasTiles changedTiles;
+        // Last applied paint packet of each player who painted in this tick, by player entity id
+        final Int2IntLinkedOpenHashMap painterSeqs = new Int2IntLinkedOpenHashMap();
+        // True while the canvas tag still refers to the pixels from before the session
+        boolean unstored = false;
+        int idle = 0;
+
+        Session(EntityCanvas canvas, int[] pixels) {
+            this.canvas = canvas;
+            this.pixels = pixels;
+            this.changedTiles = new CanvasTiles(canvas.getWidthPixels(), canvas.getHeightPixels());
+        }
+    }
+
+    public static CanvasPaintSessions get(World world) {
+        return sessionsByWorld.computeIfAbsent(world, w -> new CanvasPaintSessions());
+    }
+
+    public static void remove(IWorld world) {
+        sessionsByWorld.remove(world);
+    }
+
+    /**
+     * Stores the pixels of every session in every world, called before the store is saved
+     */
+    public static void storeAll() {
+        for (CanvasPaintSessions worldSessions : sessionsByWorld.values()) {
+            for (Session session : worldSessions.sessions.values()) {
+                store(session);
+            }
+        }
+    }
+
+    /**
+     * Stores the pixels painted on the canvas, if it has a session, so that its tag refers to them
+     */
+    public void store(EntityCanvas canvas) {
+        Session session = sessions.get(canvas.getEntityId());
+        if (session != null && session.canvas == canvas) {
+            store(session);
+        }
+    }
+
+    private static void store(Session session) {
+        EntityCanvas canvas = session.canvas;
+        CanvasStore store = CanvasStore.get(canvas.world);
+        if (!session.unstored || store == null) {
+            return;
+        }
+        session.unstored = false;
+        store.setPixels(canvas.getCanvasNBT(), session.pixels);
+        if (canvas.isAlive()) {
+            int version = canvas.getCanvasNBT().getInt("v");
+            XercaPaint.NETWORK_HANDLER.send(PacketDistributor.TRACKING_ENTITY.with(() -> canvas),
+                    new CanvasPaintBroadcastPacket(canvas.getEntityId(), version, version, canvas.getCanvasNBT().getString(CanvasStore.HASH_KEY), new CanvasRects(), new int[0], new int[0]));
+        }
+        XercaPaint.LOGGER.debug("Stored placed canvas: Id: " + CanvasId.get(canvas.getCanvasNBT()) + " V: " + canvas.getCanvasNBT().getInt("v"));
+    }
+
+    /**
+     * Only unsigned canvases can be painted on, by nearby players holding a palette
+     */
+    public static boolean canPaint(EntityCanvas canvas, ServerPlayerEntity player) {
+        return canvas.isAlive() && canvas.getCanvasNBT() != null && canvas.getCanvasNBT().getInt("generation") == 0
+                && player.getDistanceSq(canvas) <= maxPaintDistanceSq
+                && (player.getHeldItemMainhand().getItem() instanceof ItemPalette || player.getHeldItemOffhand().getItem() instanceof ItemPalette);
+    }
+
+    /**
+     * Applies a paint packet to the canvas. Returns false if it was refused.
+     */
+    public boolean paint(EntityCanvas canvas, ServerPlayerEntity player, int seq, CanvasRects rects) {
+        if (!canPaint(canvas, player)) {
+            return false;
+        }
+        final int width = canvas.getWidthPixels();
+        if (!rects.fits(width, canvas.getHeightPixels())) {
+            return false;
+        }
+        Session session = sessions.get(canvas.getEntityId());
+        if (session == null || session.canvas != canvas) {
+            int[] pixels = readPixels(canvas);
+            if (pixels == null) {
+                return false;
+            }
+            session = new Session(canvas, pixels);
+            sessions.put(canvas.getEntityId(), session);
+        }
+        rects.apply(session.pixels, width);
+        final CanvasTiles changedTiles = session.changedTiles;
+        rects.forEach((x, y, w, h) -> {
+            for (int ty = y / CanvasTiles.TILE_SIZE; ty <= (y + h - 1) / CanvasTiles.TILE_SIZE; ty++) {
+                for (int tx = x / CanvasTiles.TILE_SIZE; tx <= (x + w - 1) / CanvasTiles.TILE_SIZE; tx++) {
+                    changedTiles.mark(tx * CanvasTiles.TILE_SIZE, ty * CanvasTiles.TILE_SIZE);
+                }
+            }
+        });
+        session.painterSeqs.put(player.getEntityId(), seq);
+        session.idle = 0;
+        return true;
+    }
+
+    private static int[] readPixels(EntityCanvas canvas) {
+        final int area = canvas.getWidthPixels() * canvas.getHeightPixels();
+        CanvasStore store = CanvasStore.get(canvas.world);
+        String hash = canvas.getCanvasNBT().getString(CanvasStore.HASH_KEY);
+        byte[] data = store == null ? null : store.getData(hash);
+        int[] pixels = data == null ? CanvasPixelCodec.readPixels(canvas.getCanvasNBT(), area) : CanvasPixelCodec.decode(data, area);
+        return pixels != null && pixels.length == area ? pixels : null;
+    }
+
+    /**
+     * Sends the changes of the canvases painted on in this tick, called at the end of the world tick
+     */
+    public void flush() {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next();
+            EntityCanvas canvas = session.canvas;
+            // A canvas that was broken or unloaded stored its pixels when it was dropped or saved
+            if (!canvas.isAlive()) {
+                iterator.remove();
+                continue;
+            }
+            if (session.idle++ > idleTicks) {
+                store(session);
+                iterator.remove();
+                continue;
+            }
+            if (session.changedTiles.isEmpty()) {
+                continue;
+            }
+
+            CanvasStore store = CanvasStore.get(canvas.world);
+            if (store == null) {
+                iterator.remove();
+                continue;
+            }
+            if (!session.unstored) {
+                session.unstored = true;
+                // So that the store is saved, storing the session first
+                store.markDirty();
+            }
+            int baseVersion = canvas.getCanvasNBT().getInt("v");
+            int version = baseVersion + 1;
+            canvas.getCanvasNBT().putInt("v", version);
+
+            final CanvasRects rects = new CanvasRects();
+            final int width = canvas.getWidthPixels();
+            session.changedTiles.forEachDirty((x, y, w, h) -> rects.add(x, y, w, h, session.pixels, width));
+            session.changedTiles.clear();
+
+            int[] painterIds = session.painterSeqs.keySet().toIntArray();
+            int[] seqs = session.painterSeqs.values().toIntArray();
+            session.painterSeqs.clear();
+
+            XercaPaint.NETWORK_HANDLER.send(PacketDistributor.TRACKING_ENTITY.with(() -> canvas),
+                    new CanvasPaintBroadcastPacket(canvas.getEntityId(), baseVersion, version, "", rects, painterIds, seqs));
+            XercaPaint.LOGGER.debug("Painted on placed canvas: Id: " + CanvasId.get(canvas.getCanvasNBT()) + " V: " + version);
+        }
+    }
+}
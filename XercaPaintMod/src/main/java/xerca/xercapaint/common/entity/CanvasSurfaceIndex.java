@@ -0,0 +1,106 @@
+package xerca.xercapaint.common.entity;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.IWorld;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Server side index of placed canvases by the block positions their surface check depends on:
+ * the blocks they hang in and the blocks they hang on. A block change next to a canvas queues that canvas
+ * for a check at the end of the tick, so canvases nobody touches are never checked.
+ */
+public class CanvasSurfaceIndex {
+    private static final Map<IWorld, CanvasSurfaceIndex> indices = new WeakHashMap<>();
+
+    private final Long2ObjectMap<List<EntityCanvas>> canvasesByPos = new Long2ObjectOpenHashMap<>();
+    private final Set<EntityCanvas> pending = new LinkedHashSet<>();
+
+    public static CanvasSurfaceIndex get(IWorld world) {
+        return indices.computeIfAbsent(world, w -> new CanvasSurfaceIndex());
+    }
+
+    public static void remove(IWorld world) {
+        indices.remove(world);
+    }
+
+    /**
+     * Block positions that can make the canvas invalid when they change
+     */
+    private static long[] watchedPositions(EntityCanvas canvas) {
+        AxisAlignedBB box = canvas.getBoundingBox();
+        BlockPos back = BlockPos.ZERO.offset(canvas.getHorizontalFacing().getOpposite());
+        int minX = MathHelper.floor(box.minX), maxX = MathHelper.floor(box.maxX);
+        int minY = MathHelper.floor(box.minY), maxY = MathHelper.floor(box.maxY);
+        int minZ = MathHelper.floor(box.minZ), maxZ = MathHelper.floor(box.maxZ);
+        long[] positions = new long[2 * (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1)];
+        int i = 0;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    positions[i++] = BlockPos.pack(x, y, z);
+                    positions[i++] = BlockPos.pack(x + back.getX(), y + back.getY(), z + back.getZ());
+                }
+            }
+        }
+        return positions;
+    }
+
+    void add(EntityCanvas canvas) {
+        long[] positions = watchedPositions(canvas);
+        canvas.watchedPositions = positions;
+        for (long pos : positions) {
+            canvasesByPos.computeIfAbsent(pos, k -> new ArrayList<>(1)).add(canvas);
+        }
+    }
+
+    void remove(EntityCanvas canvas) {
+        if (canvas.watchedPositions == null) {
+            return;
+        }
+        for (long pos : canvas.watchedPositions) {
+            List<EntityCanvas> canvases = canvasesByPos.get(pos);
+            if (canvases != null) {
+                canvases.remove(canvas);
+                if (canvases.isEmpty()) {
+                    canvasesByPos.remove(pos);
+                }
+            }
+        }
+        canvas.watchedPositions = null;
+        pending.remove(canvas);
+    }
+
+    /**
+     * Queues the canvases that depend on a block that changed
+     */
+    public void onBlockChanged(BlockPos pos) {
+        List<EntityCanvas> canvases = canvasesByPos.get(pos.toLong());
+        if (canvases != null) {
+            pending.addAll(canvases);
+        }
+    }
+
+    /**
+     * Checks the queued canvases, breaking the ones that lost their surface
+     */
+    public void validatePending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<EntityCanvas> toCheck = new ArrayList<>(pending);
+        pending.clear();
+        for (EntityCanvas canvas : toCheck) {
+            canvas.validateSurface();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.network.IPacket;
 import net.minecraft.network.PacketBuffer;
 import net.minecraft.util.Direction;
+import net.minecraft.util.Hand;
 import net.minecraft.util.SoundEvents;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.GameRules;
@@ -16,22 +17,32 @@ import net.minecraft.world.World;
 import net.minecraftforge.fml.common.registry.IEntityAdditionalSpawnData;
 import net.minecraftforge.fml.network.FMLPlayMessages;
 import net.minecraftforge.fml.network.NetworkHooks;
+import xerca.xercapaint.common.CanvasPixelCodec;
+import xerca.xercapaint.common.CanvasGallery;
+import xerca.xercapaint.common.CanvasId;
+import xerca.xercapaint.common.CanvasStore;
 import xerca.xercapaint.common.CanvasType;
 import xerca.xercapaint.common.XercaPaint;
-import xerca.xercapaint.common.item.Items;
+import xerca.xercapaint.common.item.ItemCanvas;
+import xerca.xercapaint.common.item.ItemPalette;
 
 import javax.annotation.Nullable;
 
 
 public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpawnData {
     private CompoundNBT canvasNBT;
+    // Block changes that do not notify neighbours (e.g. from other mods) are caught by this slow check
+    private static final int fallbackCheckInterval = 1200;
     private int tickCounter1 = 0;
+    // Positions this canvas is indexed at in CanvasSurfaceIndex, null when it is not indexed
+    long[] watchedPositions;
     private CanvasType canvasType;
 
     public EntityCanvas(World world, CompoundNBT canvasNBT, BlockPos pos, Direction facing, CanvasType canvasType) {
         super(Entities.CANVAS, world, pos);
         this.canvasNBT = canvasNBT;
         this.canvasType = canvasType;
+        internCanvasNBT();
 
         this.updateFacingWithBoundingBox(facing);
     }
@@ -44,10 +55,31 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
         super(Entities.CANVAS, world);
     }
 
+    private void internCanvasNBT() {
+        CanvasStore store = CanvasStore.get(world);
+        if (store != null) {
+            store.intern(canvasNBT);
+        } else {
+            CanvasId.migrate(canvasNBT);
+            CanvasPixelCodec.migrate(canvasNBT);
+        }
+    }
+
+    private void releaseCanvasData() {
+        CanvasStore store = CanvasStore.get(world);
+        if (store != null && canvasNBT.contains(CanvasStore.HASH_KEY, 8)) {
+            store.release(canvasNBT.getString(CanvasStore.HASH_KEY));
+        }
+    }
+
     public CompoundNBT getCanvasNBT() {
         return canvasNBT;
     }
 
+    public CanvasType getCanvasType() {
+        return canvasType;
+    }
+
     @Override
     public int getWidthPixels() {
         return CanvasType.getWidth(canvasType);
@@ -60,34 +92,38 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
 
     @Override
     public void onBroken(@Nullable Entity brokenEntity) {
+        CanvasPaintSessions.get(world).store(this);
+        CanvasGallery gallery = CanvasGallery.get(world);
         if (this.world.getGameRules().getBoolean(GameRules.DO_ENTITY_DROPS)) {
             this.playSound(SoundEvents.ENTITY_PAINTING_BREAK, 1.0F, 1.0F);
             if (brokenEntity instanceof PlayerEntity) {
                 PlayerEntity playerentity = (PlayerEntity)brokenEntity;
                 if (playerentity.abilities.isCreativeMode) {
+                    // Nothing is dropped, the item creative players placed it with is a separate copy that stays in the gallery
+                    if (gallery != null) {
+                        gallery.remove(canvasNBT);
+                    }
+                    releaseCanvasData();
                     return;
                 }
             }
-            ItemStack canvasItem;
-            if(canvasType == CanvasType.SMALL){
-                canvasItem = new ItemStack(Items.ITEM_CANVAS);
-            }
-            else if(canvasType == CanvasType.LARGE){
-                canvasItem = new ItemStack(Items.ITEM_CANVAS_LARGE);
-
-            }
-            else if(canvasType == CanvasType.LONG){
-                canvasItem = new ItemStack(Items.ITEM_CANVAS_LONG);
-
-            }
-            else if(canvasType == CanvasType.TALL){
-                canvasItem = new ItemStack(Items.ITEM_CANVAS_TALL);
-            }else{
+            ItemCanvas item = ItemCanvas.forType(canvasType);
+            if(item == null){
                 XercaPaint.LOGGER.error("Invalid canvas type");
                 return;
             }
+            ItemStack canvasItem = new ItemStack(item);
             canvasItem.setTag(this.canvasNBT.copy());
             this.entityDropItem(canvasItem);
+            if (gallery != null) {
+                gallery.recordDropped(canvasNBT, canvasType, world, hangingPosition);
+            }
+        }
+        else {
+            if (gallery != null) {
+                gallery.remove(canvasNBT);
+            }
+            releaseCanvasData();
         }
     }
 
@@ -95,14 +131,55 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
         this.prevPosX = this.getPosX();
         this.prevPosY = this.getPosY();
         this.prevPosZ = this.getPosZ();
-        if (this.tickCounter1++ == 50 && !this.world.isRemote) {
+        if (this.tickCounter1++ == fallbackCheckInterval && !this.world.isRemote) {
             this.tickCounter1 = 0;
-            if (this.isAlive() && !this.onValidSurface()) {
-                this.remove();
-                this.onBroken(null);
-            }
+            validateSurface();
         }
+    }
 
+    /**
+     * Breaks the canvas if it lost the surface it hangs on
+     */
+    void validateSurface() {
+        if (this.isAlive() && !this.onValidSurface()) {
+            this.remove();
+            this.onBroken(null);
+        }
+    }
+
+    @Override
+    public void onAddedToWorld() {
+        super.onAddedToWorld();
+        if (!this.world.isRemote) {
+            // Spread the fallback checks of canvases loaded together over the interval
+            this.tickCounter1 = this.rand.nextInt(fallbackCheckInterval);
+            CanvasSurfaceIndex.get(this.world).add(this);
+        }
+    }
+
+    @Override
+    public void onRemovedFromWorld() {
+        super.onRemovedFromWorld();
+        if (!this.world.isRemote) {
+            CanvasSurfaceIndex.get(this.world).remove(this);
+        }
+    }
+
+    /**
+     * Players holding a palette paint on unsigned placed canvases together, see {@link CanvasPaintSessions}
+     */
+    @Override
+    public boolean processInitialInteract(PlayerEntity player, Hand hand) {
+        if (hand != Hand.MAIN_HAND || canvasNBT == null || canvasNBT.getInt("generation") > 0) {
+            return false;
+        }
+        if (!(player.getHeldItemMainhand().getItem() instanceof ItemPalette) && !(player.getHeldItemOffhand().getItem() instanceof ItemPalette)) {
+            return false;
+        }
+        if (this.world.isRemote) {
+            XercaPaint.proxy.showPlacedCanvasGui(player, this);
+        }
+        return true;
     }
 
     @Override
@@ -125,29 +202,42 @@ public class EntityCanvas extends HangingEntity implements IEntityAdditionalSpaw
     @Override
     public void readAdditional(CompoundNBT tagCompound) {
         this.canvasNBT = tagCompound.getCompound("canvas");
+        internCanvasNBT();
         this.canvasType = CanvasType.fromByte(tagCompound.getByte("ctype"));
         super.readAdditional(tagCompound);
     }
 
     @Override
     public void writeAdditional(CompoundNBT tagCompound) {
+        if (!this.world.isRemote) {
+            CanvasPaintSessions.get(world).store(this);
+        }
         tagCompound.put("canvas", canvasNBT);
-        tagCompound.putByte("ctype", (byte)canvasType.ordinal());
+        tagCompound.putByte("ctype", (byte)canvasType.getId());
         super.writeAdditional(tagCompound);
     }
 
     @Override
     public void writeSpawnData(PacketBuffer buffer) {
-        buffer.writeCompoundTag(canvasNBT);
+        // Clients fetch the pixels by hash when they do not have them cached
+        CanvasPaintSessions.get(world).store(this);
+        buffer.writeUniqueId(CanvasId.get(canvasNBT));
+        buffer.writeInt(canvasNBT.getInt("v"));
+        buffer.writeString(canvasNBT.getString(CanvasStore.HASH_KEY));
+        buffer.writeInt(canvasNBT.getInt("generation"));
         buffer.writeInt(facingDirection.getIndex());
-        buffer.writeByte(canvasType.ordinal());
+        buffer.writeByte(canvasType.getId());
         buffer.writeBlockPos(hangingPosition); // this has to be written, otherwise pos gets broken
 //        XercaPaint.LOGGER.debug("writeSpawnData Pos: " + this.hangingPosition.toString() + " posY: " + this.posY);
     }
 
     @Override
     public void readSpawnData(PacketBuffer buffer) {
-        canvasNBT = buffer.readCompoundTag();
+        canvasNBT = new CompoundNBT();
+        CanvasId.put(canvasNBT, buffer.readUniqueId());
+        canvasNBT.putInt("v", buffer.readInt());
+        canvasNBT.putString(CanvasStore.HASH_KEY, buffer.readString(64));
+        canvasNBT.putInt("generation", buffer.readInt());
         facingDirection = Direction.byIndex(buffer.readInt());
         canvasType = CanvasType.fromByte(buffer.readByte());
         hangingPosition = buffer.readBlockPos();
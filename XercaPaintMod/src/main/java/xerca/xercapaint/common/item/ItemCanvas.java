@@ -1,11 +1,14 @@
 package xerca.xercapaint.common.item;
 
 import net.minecraft.client.util.ITooltipFlag;
+import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.item.HangingEntityItem;
 import net.minecraft.item.ItemStack;
 import net.minecraft.item.ItemUseContext;
 import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.*;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.ITextComponent;
@@ -15,24 +18,43 @@ import net.minecraft.util.text.TranslationTextComponent;
 import net.minecraft.world.World;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.fml.server.ServerLifecycleHooks;
 import org.lwjgl.system.NonnullDefault;
+import xerca.xercapaint.client.RenderItemCanvas;
+import xerca.xercapaint.common.CanvasGallery;
+import xerca.xercapaint.common.CanvasId;
+import xerca.xercapaint.common.CanvasPixelCodec;
+import xerca.xercapaint.common.CanvasStore;
 import xerca.xercapaint.common.CanvasType;
+import xerca.xercapaint.common.HeldCanvasEdits;
 import xerca.xercapaint.common.XercaPaint;
 import xerca.xercapaint.common.entity.Entities;
 import xerca.xercapaint.common.entity.EntityCanvas;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @NonnullDefault
 public class ItemCanvas extends HangingEntityItem {
+    private static final Map<CanvasType, ItemCanvas> byType = new HashMap<>();
     private CanvasType canvasType;
 
-    ItemCanvas(String name, CanvasType canvasType) {
-        super(Entities.CANVAS, new Properties().group(Items.paintTab).maxStackSize(1));
+    public ItemCanvas(String name, CanvasType canvasType) {
+        super(Entities.CANVAS, new Properties().group(Items.paintTab).maxStackSize(1).setISTER(() -> RenderItemCanvas::new));
         this.setRegistryName(name);
         this.canvasType = canvasType;
+        byType.put(canvasType, this);
+    }
+
+    /**
+     * Returns the canvas item of a canvas type, or null if no item was registered for it
+     */
+    @Nullable
+    public static ItemCanvas forType(CanvasType canvasType) {
+        return byType.get(canvasType);
     }
 
     @Override
@@ -55,17 +77,38 @@ public class ItemCanvas extends HangingEntityItem {
             World world = context.getWorld();
 
             CompoundNBT tag = itemstack.getTag();
-            if(tag == null || !tag.contains("pixels") || !tag.contains("name")){
+            if(tag == null || !CanvasPixelCodec.hasPixels(tag) || !CanvasId.has(tag)){
                 XercaPaint.proxy.showCanvasGui(playerentity);
                 return ActionResultType.SUCCESS;
             }
 
-            EntityCanvas entityCanvas = new EntityCanvas(world, tag, pos, direction, canvasType);
+            // Pixels of an editor whose full update did not arrive yet
+            if (playerentity instanceof ServerPlayerEntity) {
+                HeldCanvasEdits.commit((ServerPlayerEntity) playerentity);
+            }
+            // The entity gets its own tag, the item keeps being edited in creative mode
+            CompoundNBT canvasTag = tag.copy();
+            EntityCanvas entityCanvas = new EntityCanvas(world, canvasTag, pos, direction, canvasType);
 
             if (entityCanvas.onValidSurface()) {
                 if (!world.isRemote) {
                     entityCanvas.playPlaceSound();
                     world.addEntity(entityCanvas);
+
+                    // The item is not used up in creative mode, so the entity is an extra reference and copy
+                    CanvasStore store = CanvasStore.get(world);
+                    CanvasGallery gallery = CanvasGallery.get(world);
+                    if (playerentity != null && playerentity.abilities.isCreativeMode) {
+                        if (store != null) {
+                            store.acquire(canvasTag.getString(CanvasStore.HASH_KEY));
+                        }
+                        if (gallery != null) {
+                            gallery.addCopy(canvasTag);
+                        }
+                    }
+                    if (gallery != null) {
+                        gallery.recordPlaced(canvasTag, canvasType, world, pos);
+                    }
                 }
 
                 itemstack.shrink(1);
@@ -75,6 +118,58 @@ public class ItemCanvas extends HangingEntityItem {
         }
     }
 
+    @Override
+    public void inventoryTick(ItemStack stack, World worldIn, Entity entityIn, int itemSlot, boolean isSelected) {
+        // Move inline or legacy pixels into the canvas store
+        CanvasStore store = CanvasStore.get(worldIn);
+        if (store != null) {
+            store.intern(stack.getTag());
+        }
+    }
+
+    @Override
+    public void onCreated(ItemStack stack, World worldIn, PlayerEntity playerIn) {
+        // Cloned canvases share the data of the original
+        CanvasStore store = CanvasStore.get(worldIn);
+        CompoundNBT tag = stack.getTag();
+        if (store != null && tag != null && tag.contains(CanvasStore.HASH_KEY, 8)) {
+            store.acquire(tag.getString(CanvasStore.HASH_KEY));
+        }
+        CanvasGallery gallery = CanvasGallery.get(worldIn);
+        if (gallery != null) {
+            gallery.addCopy(tag);
+        }
+    }
+
+    /**
+     * Inlines the stored pixels when sending the canvas to a client
+     */
+    @Nullable
+    @Override
+    public CompoundNBT getShareTag(ItemStack stack) {
+        CompoundNBT tag = stack.getTag();
+        if (tag != null && tag.contains(CanvasStore.HASH_KEY, 8) && !tag.contains(CanvasPixelCodec.TAG_KEY, 7)) {
+            MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+            if (server != null) {
+                return CanvasStore.get(server).expand(tag);
+            }
+        }
+        return tag;
+    }
+
+    /**
+     * Moves inlined pixels to the client cache, so the client tag matches the server tag
+     */
+    @Override
+    public void readShareTag(ItemStack stack, @Nullable CompoundNBT nbt) {
+        if (nbt != null && nbt.contains(CanvasStore.HASH_KEY, 8) && nbt.contains(CanvasPixelCodec.TAG_KEY, 7)) {
+            if (XercaPaint.proxy.cacheCanvasData(nbt.getString(CanvasStore.HASH_KEY), nbt.getByteArray(CanvasPixelCodec.TAG_KEY))) {
+                nbt.remove(CanvasPixelCodec.TAG_KEY);
+            }
+        }
+        stack.setTag(nbt);
+    }
+
     @Nonnull
     @Override
     public ITextComponent getDisplayName(@Nonnull ItemStack stack) {
@@ -91,6 +91,7 @@ public class RecipeCanvasCloning extends SpecialRecipe {
         int gen = WrittenBookItem.getGeneration(orgCanvas);
         if (!orgCanvas.isEmpty() && orgCanvas.hasTag() && !freshCanvas.isEmpty() && !freshCanvas.hasTag() && gen < 3 && gen > 0) {
             ItemStack resultStack = new ItemStack(orgCanvas.getItem());
+            // The copy takes its canvas store reference in ItemCanvas.onCreated, when it is actually taken out of the grid
             CompoundNBT nbttagcompound = orgCanvas.getTag().copy();
             nbttagcompound.putInt("generation", gen + 1);
             resultStack.setTag(nbttagcompound);
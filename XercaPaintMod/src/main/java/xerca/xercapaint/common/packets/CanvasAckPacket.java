@@ -0,0 +1,61 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+
+import java.util.UUID;
+
+/**
+ * Tells the painting client which canvas version the server has, and whether its last update was applied
+ */
+public class CanvasAckPacket {
+    private UUID canvasId;
+    private int version;
+    private boolean accepted;
+    private boolean messageIsValid;
+
+    public CanvasAckPacket(UUID canvasId, int version, boolean accepted) {
+        this.canvasId = canvasId;
+        this.version = version;
+        this.accepted = accepted;
+    }
+
+    public CanvasAckPacket() {
+        this.messageIsValid = false;
+    }
+
+    public static void encode(CanvasAckPacket pkt, PacketBuffer buf) {
+        buf.writeUniqueId(pkt.canvasId);
+        buf.writeInt(pkt.version);
+        buf.writeBoolean(pkt.accepted);
+    }
+
+    public static CanvasAckPacket decode(PacketBuffer buf) {
+        CanvasAckPacket result = new CanvasAckPacket();
+        try {
+            result.canvasId = buf.readUniqueId();
+            result.version = buf.readInt();
+            result.accepted = buf.readBoolean();
+        } catch (IndexOutOfBoundsException ioe) {
+            System.err.println("Exception while reading CanvasAckPacket: " + ioe);
+            return null;
+        }
+        result.messageIsValid = true;
+        return result;
+    }
+
+    public UUID getCanvasId() {
+        return canvasId;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    public boolean isMessageValid() {
+        return messageIsValid;
+    }
+}
@@ -0,0 +1,30 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.fml.network.NetworkEvent;
+import xerca.xercapaint.client.GuiCanvasEdit;
+import xerca.xercapaint.client.PendingCanvasUpdates;
+
+import java.util.function.Supplier;
+
+public class CanvasAckPacketHandler {
+    public static void handle(final CanvasAckPacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+
+        ctx.get().enqueueWork(() -> processMessage(message));
+        ctx.get().setPacketHandled(true);
+    }
+
+    @OnlyIn(Dist.CLIENT)
+    private static void processMessage(CanvasAckPacket msg) {
+        PendingCanvasUpdates.onCanvasAck(msg.getCanvasId(), msg.getVersion(), msg.isAccepted());
+        if(Minecraft.getInstance().currentScreen instanceof GuiCanvasEdit){
+            ((GuiCanvasEdit) Minecraft.getInstance().currentScreen).onCanvasAck(msg.getCanvasId(), msg.getVersion(), msg.isAccepted());
+        }
+    }
+}
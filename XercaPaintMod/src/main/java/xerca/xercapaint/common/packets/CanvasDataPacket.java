@@ -0,0 +1,53 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+import xerca.xercapaint.common.CanvasPixelCodec;
+import xerca.xercapaint.common.CanvasType;
+
+/**
+ * Pixels of a canvas, sent in answer to a {@link CanvasDataRequestPacket}
+ */
+public class CanvasDataPacket {
+    private String hash;
+    private byte[] data;
+    private boolean messageIsValid;
+
+    public CanvasDataPacket(String hash, byte[] data) {
+        this.hash = hash;
+        this.data = data;
+    }
+
+    public CanvasDataPacket() {
+        this.messageIsValid = false;
+    }
+
+    public static void encode(CanvasDataPacket pkt, PacketBuffer buf) {
+        buf.writeString(pkt.hash);
+        buf.writeByteArray(pkt.data);
+    }
+
+    public static CanvasDataPacket decode(PacketBuffer buf) {
+        CanvasDataPacket result = new CanvasDataPacket();
+        try {
+            result.hash = buf.readString(64);
+            result.data = buf.readByteArray(CanvasPixelCodec.maxEncodedSize(CanvasType.getMaxArea()));
+        } catch (IndexOutOfBoundsException ioe) {
+            System.err.println("Exception while reading CanvasDataPacket: " + ioe);
+            return null;
+        }
+        result.messageIsValid = true;
+        return result;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean isMessageValid() {
+        return messageIsValid;
+    }
+}
@@ -0,0 +1,26 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.fml.network.NetworkEvent;
+import xerca.xercapaint.client.ClientCanvasCache;
+
+import java.util.function.Supplier;
+
+public class CanvasDataPacketHandler {
+    public static void handle(final CanvasDataPacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+
+        // The cache is thread safe, hashing and disk writes stay off the main thread
+        processMessage(message);
+        ctx.get().setPacketHandled(true);
+    }
+
+    @OnlyIn(Dist.CLIENT)
+    private static void processMessage(CanvasDataPacket msg) {
+        ClientCanvasCache.onReceived(msg.getHash(), msg.getData());
+    }
+}
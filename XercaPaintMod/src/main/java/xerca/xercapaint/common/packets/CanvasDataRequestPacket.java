@@ -0,0 +1,58 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Asks the server for the pixels of canvases the client does not have cached
+ */
+public class CanvasDataRequestPacket {
+    public static final int maxHashes = 16;
+    private List<String> hashes;
+    private boolean messageIsValid;
+
+    public CanvasDataRequestPacket(List<String> hashes) {
+        this.hashes = hashes;
+    }
+
+    public CanvasDataRequestPacket() {
+        this.messageIsValid = false;
+    }
+
+    public static void encode(CanvasDataRequestPacket pkt, PacketBuffer buf) {
+        buf.writeByte(pkt.hashes.size());
+        for(String hash : pkt.hashes){
+            buf.writeString(hash);
+        }
+    }
+
+    public static CanvasDataRequestPacket decode(PacketBuffer buf) {
+        CanvasDataRequestPacket result = new CanvasDataRequestPacket();
+        try {
+            int count = buf.readUnsignedByte();
+            if(count > maxHashes){
+                System.err.println("Too many hashes in CanvasDataRequestPacket: " + count);
+                return null;
+            }
+            result.hashes = new ArrayList<>(count);
+            for(int i=0; i<count; i++){
+                result.hashes.add(buf.readString(64));
+            }
+        } catch (IndexOutOfBoundsException ioe) {
+            System.err.println("Exception while reading CanvasDataRequestPacket: " + ioe);
+            return null;
+        }
+        result.messageIsValid = true;
+        return result;
+    }
+
+    public List<String> getHashes() {
+        return hashes;
+    }
+
+    public boolean isMessageValid() {
+        return messageIsValid;
+    }
+}
@@ -0,0 +1,41 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraftforge.fml.network.NetworkEvent;
+import net.minecraftforge.fml.network.PacketDistributor;
+import xerca.xercapaint.common.CanvasStore;
+import xerca.xercapaint.common.XercaPaint;
+
+import java.util.function.Supplier;
+
+public class CanvasDataRequestPacketHandler {
+    public static void handle(final CanvasDataRequestPacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+        ServerPlayerEntity sendingPlayer = ctx.get().getSender();
+        if (sendingPlayer == null) {
+            System.err.println("EntityPlayerMP was null when CanvasDataRequestPacket was received");
+            return;
+        }
+        if (!PacketRateLimiter.CANVAS_DATA.tryAcquire(sendingPlayer, message.getHashes().size())) {
+            // Not answered, the client asks again after its request times out
+            ctx.get().setPacketHandled(true);
+            return;
+        }
+
+        ctx.get().enqueueWork(() -> processMessage(message, sendingPlayer));
+        ctx.get().setPacketHandled(true);
+    }
+
+    private static void processMessage(CanvasDataRequestPacket msg, ServerPlayerEntity pl) {
+        CanvasStore store = CanvasStore.get(pl.server);
+        for(String hash : msg.getHashes()){
+            byte[] data = store.getData(hash);
+            // Empty data tells the client to stop waiting for it
+            CanvasDataPacket pack = new CanvasDataPacket(hash, data == null ? new byte[0] : data);
+            XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> pl), pack);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+import xerca.xercapaint.common.CanvasPixelCodec;
+import xerca.xercapaint.common.CanvasType;
+
+import java.util.UUID;
+
+/**
+ * Carries the pixels of a changed rectangle of a canvas that is being painted.
+ * Only applied on top of baseVersion, the resulting canvas has the given version.
+ */
+public class CanvasDeltaPacket {
+    private UUID canvasId;
+    private CanvasType canvasType;
+    private int baseVersion;
+    private int version;
+    private int x, y, width, height;
+    private int[] pixels;
+    private boolean messageIsValid;
+
+    public CanvasDeltaPacket(UUID canvasId, CanvasType canvasType, int baseVersion, int version, int x, int y, int width, int height, int[] pixels) {
+        this.canvasId = canvasId;
+        this.canvasType = canvasType;
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    public CanvasDeltaPacket() {
+        this.messageIsValid = false;
+    }
+
+    public static void encode(CanvasDeltaPacket pkt, PacketBuffer buf) {
+        buf.writeUniqueId(pkt.canvasId);
+        buf.writeByte(pkt.canvasType.getId());
+        buf.writeInt(pkt.baseVersion);
+        buf.writeInt(pkt.version);
+        buf.writeByte(pkt.x);
+        buf.writeByte(pkt.y);
+        buf.writeByte(pkt.width);
+        buf.writeByte(pkt.height);
+        buf.writeByteArray(CanvasPixelCodec.encode(pkt.pixels));
+    }
+
+    public static CanvasDeltaPacket decode(PacketBuffer buf) {
+        CanvasDeltaPacket result = new CanvasDeltaPacket();
+        try {
+            result.canvasId = buf.readUniqueId();
+            result.canvasType = CanvasType.fromByte(buf.readByte());
+            result.baseVersion = buf.readInt();
+            result.version = buf.readInt();
+            result.x = buf.readUnsignedByte();
+            result.y = buf.readUnsignedByte();
+            result.width = buf.readUnsignedByte();
+            result.height = buf.readUnsignedByte();
+            if(result.canvasType == null || result.width <= 0 || result.height <= 0
+                    || result.x + result.width > CanvasType.getWidth(result.canvasType)
+                    || result.y + result.height > CanvasType.getHeight(result.canvasType)){
+                System.err.println("Invalid rectangle in CanvasDeltaPacket");
+                return null;
+            }
+            int area = result.width*result.height;
+            result.pixels = CanvasPixelCodec.decode(buf.readByteArray(CanvasPixelCodec.maxEncodedSize(area)), area);
+            if(result.pixels == null || result.pixels.length != area){
+                System.err.println("Invalid pixel data in CanvasDeltaPacket");
+                return null;
+            }
+        } catch (IndexOutOfBoundsException ioe) {
+            System.err.println("Exception while reading CanvasDeltaPacket: " + ioe);
+            return null;
+        }
+        result.messageIsValid = true;
+        return result;
+    }
+
+    public UUID getCanvasId() {
+        return canvasId;
+    }
+
+    public CanvasType getCanvasType() {
+        return canvasType;
+    }
+
+    public int getBaseVersion() {
+        return baseVersion;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public boolean isMessageValid() {
+        return messageIsValid;
+    }
+}
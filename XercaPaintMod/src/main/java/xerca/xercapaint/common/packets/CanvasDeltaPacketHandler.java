@@ -0,0 +1,72 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraftforge.fml.network.NetworkEvent;
+import net.minecraftforge.fml.network.PacketDistributor;
+import xerca.xercapaint.common.CanvasId;
+import xerca.xercapaint.common.CanvasType;
+import xerca.xercapaint.common.HeldCanvasEdits;
+import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.item.ItemCanvas;
+import xerca.xercapaint.common.item.Items;
+
+import java.util.function.Supplier;
+
+public class CanvasDeltaPacketHandler {
+    public static void handle(final CanvasDeltaPacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+        ServerPlayerEntity sendingPlayer = ctx.get().getSender();
+        if (sendingPlayer == null) {
+            System.err.println("EntityPlayerMP was null when CanvasDeltaPacket was received");
+            return;
+        }
+        if (!PacketRateLimiter.CANVAS.tryAcquire(sendingPlayer, 1)) {
+            XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> sendingPlayer), new CanvasAckPacket(message.getCanvasId(), -1, false));
+            ctx.get().setPacketHandled(true);
+            return;
+        }
+
+        ctx.get().enqueueWork(() -> processMessage(message, sendingPlayer));
+        ctx.get().setPacketHandled(true);
+    }
+
+    private static void processMessage(CanvasDeltaPacket msg, ServerPlayerEntity pl) {
+        ItemStack canvas = pl.getHeldItemMainhand();
+        if(canvas.getItem() == Items.ITEM_PALETTE){
+            canvas = pl.getHeldItemOffhand();
+        }
+
+        int serverVersion = -1;
+        boolean accepted = false;
+        if (!canvas.isEmpty() && canvas.getItem() instanceof ItemCanvas && ((ItemCanvas) canvas.getItem()).getCanvasType() == msg.getCanvasType()) {
+            CompoundNBT comp = canvas.getOrCreateTag();
+            serverVersion = comp.getInt("v");
+
+            // Deltas only apply to the unsigned canvas they were painted on, in order
+            if (msg.getCanvasId().equals(CanvasId.get(comp)) && comp.getInt("generation") == 0
+                    && serverVersion == msg.getBaseVersion() && msg.getVersion() > serverVersion) {
+                CanvasType canvasType = msg.getCanvasType();
+                int canvasWidth = CanvasType.getWidth(canvasType);
+                int area = canvasWidth*CanvasType.getHeight(canvasType);
+                // Painted on a working copy, the pixels are stored once the editor is done
+                int[] pixels = HeldCanvasEdits.getPixels(pl, comp, area);
+                if (pixels != null) {
+                    for (int i = 0; i < msg.getHeight(); i++) {
+                        System.arraycopy(msg.getPixels(), i*msg.getWidth(), pixels, (msg.getY() + i)*canvasWidth + msg.getX(), msg.getWidth());
+                    }
+                    comp.putInt("v", msg.getVersion());
+                    serverVersion = msg.getVersion();
+                    accepted = true;
+                    XercaPaint.LOGGER.debug("Handling canvas delta: Id: " + msg.getCanvasId() + " V: " + msg.getVersion());
+                }
+            }
+        }
+
+        XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> pl), new CanvasAckPacket(msg.getCanvasId(), serverVersion, accepted));
+    }
+}
@@ -0,0 +1,112 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * All pixels painted on a placed canvas during one server tick, sent to every player tracking it.
+ * painterIds and painterSeqs hold the last paint packet applied for each player who painted in that tick.
+ */
+public class CanvasPaintBroadcastPacket {
+    private int entityId;
+    private int baseVersion;
+    private int version;
+    private String hash;
+    private CanvasRects rects;
+    private int[] painterIds;
+    private int[] painterSeqs;
+    private boolean messageIsValid;
+
+    public CanvasPaintBroadcastPacket(int entityId, int baseVersion, int version, String hash, CanvasRects rects, int[] painterIds, int[] painterSeqs) {
+        this.entityId = entityId;
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.hash = hash;
+        this.rects = rects;
+        this.painterIds = painterIds;
+        this.painterSeqs = painterSeqs;
+    }
+
+    public CanvasPaintBroadcastPacket() {
+        this.messageIsValid = false;
+    }
+
+    public static void encode(CanvasPaintBroadcastPacket pkt, PacketBuffer buf) {
+        buf.writeVarInt(pkt.entityId);
+        buf.writeInt(pkt.baseVersion);
+        buf.writeInt(pkt.version);
+        buf.writeString(pkt.hash);
+        pkt.rects.write(buf);
+        buf.writeVarInt(pkt.painterIds.length);
+        for (int i = 0; i < pkt.painterIds.length; i++) {
+            buf.writeVarInt(pkt.painterIds[i]);
+            buf.writeVarInt(pkt.painterSeqs[i]);
+        }
+    }
+
+    public static CanvasPaintBroadcastPacket decode(PacketBuffer buf) {
+        CanvasPaintBroadcastPacket result = new CanvasPaintBroadcastPacket();
+        try {
+            result.entityId = buf.readVarInt();
+            result.baseVersion = buf.readInt();
+            result.version = buf.readInt();
+            result.hash = buf.readString(64);
+            result.rects = CanvasRects.read(buf);
+            if(result.rects == null){
+                System.err.println("Invalid pixel data in CanvasPaintBroadcastPacket");
+                return null;
+            }
+            int painterCount = buf.readVarInt();
+            if(painterCount < 0 || painterCount > 256){
+                System.err.println("Invalid painter count in CanvasPaintBroadcastPacket");
+                return null;
+            }
+            result.painterIds = new int[painterCount];
+            result.painterSeqs = new int[painterCount];
+            for (int i = 0; i < painterCount; i++) {
+                result.painterIds[i] = buf.readVarInt();
+                result.painterSeqs[i] = buf.readVarInt();
+            }
+        } catch (IndexOutOfBoundsException ioe) {
+            System.err.println("Exception while reading CanvasPaintBroadcastPacket: " + ioe);
+            return null;
+        }
+        result.messageIsValid = true;
+        return result;
+    }
+
+    public int getEntityId() {
+        return entityId;
+    }
+
+    public int getBaseVersion() {
+        return baseVersion;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public CanvasRects getRects() {
+        return rects;
+    }
+
+    /**
+     * Last applied paint packet of the player, or -1 if the player did not paint in this tick
+     */
+    public int getSeqOf(int playerEntityId) {
+        for (int i = 0; i < painterIds.length; i++) {
+            if (painterIds[i] == playerEntityId) {
+                return painterSeqs[i];
+            }
+        }
+        return -1;
+    }
+
+    public boolean isMessageValid() {
+        return messageIsValid;
+    }
+}
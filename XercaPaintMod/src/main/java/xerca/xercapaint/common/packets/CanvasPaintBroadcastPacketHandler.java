@@ -0,0 +1,66 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.entity.Entity;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.fml.network.NetworkEvent;
+import xerca.xercapaint.client.GuiCanvasEdit;
+import xerca.xercapaint.common.CanvasPixelCodec;
+import xerca.xercapaint.common.CanvasStore;
+import xerca.xercapaint.common.entity.EntityCanvas;
+
+import java.util.function.Supplier;
+
+public class CanvasPaintBroadcastPacketHandler {
+    public static void handle(final CanvasPaintBroadcastPacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+
+        ctx.get().enqueueWork(() -> processMessage(message));
+        ctx.get().setPacketHandled(true);
+    }
+
+    @OnlyIn(Dist.CLIENT)
+    private static void processMessage(CanvasPaintBroadcastPacket msg) {
+        Minecraft minecraft = Minecraft.getInstance();
+        if (minecraft.world == null) {
+            return;
+        }
+        Entity entity = minecraft.world.getEntityByID(msg.getEntityId());
+        if (!(entity instanceof EntityCanvas)) {
+            return;
+        }
+        EntityCanvas canvas = (EntityCanvas) entity;
+        CompoundNBT tag = canvas.getCanvasNBT();
+        int width = canvas.getWidthPixels();
+        int area = width * canvas.getHeightPixels();
+        if (!msg.getRects().fits(width, canvas.getHeightPixels())) {
+            return;
+        }
+
+        // Patch the pixels we have if they are the version the changes were made on, otherwise fetch the new pixels by hash.
+        // While the server has not stored the pixels there is no hash, the canvas stays as it is until the hash comes.
+        int[] pixels = tag.getInt("v") == msg.getBaseVersion() ? CanvasPixelCodec.readPixels(tag, area) : null;
+        boolean patched = pixels != null && pixels.length == area;
+        if (patched || !msg.getHash().isEmpty()) {
+            tag.putInt("v", msg.getVersion());
+        }
+        if (!msg.getHash().isEmpty()) {
+            tag.putString(CanvasStore.HASH_KEY, msg.getHash());
+        }
+        if (patched) {
+            msg.getRects().apply(pixels, width);
+            CanvasPixelCodec.writePixels(tag, pixels);
+        } else if (!msg.getHash().isEmpty()) {
+            tag.remove(CanvasPixelCodec.TAG_KEY);
+        }
+
+        if (minecraft.currentScreen instanceof GuiCanvasEdit && minecraft.player != null) {
+            ((GuiCanvasEdit) minecraft.currentScreen).onPlacedCanvasPainted(canvas, msg.getRects(), msg.getSeqOf(minecraft.player.getEntityId()));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Pixels painted by a player on a placed canvas since their last paint packet. seq counts the packets of the painting session.
+ */
+public class CanvasPaintPacket {
+    private int entityId;
+    private int seq;
+    private CanvasRects rects;
+    private boolean messageIsValid;
+
+    public CanvasPaintPacket(int entityId, int seq, CanvasRects rects) {
+        this.entityId = entityId;
+        this.seq = seq;
+        this.rects = rects;
+    }
+
+    public CanvasPaintPacket() {
+        this.messageIsValid = false;
+    }
+
+    public static void encode(CanvasPaintPacket pkt, PacketBuffer buf) {
+        buf.writeVarInt(pkt.entityId);
+        buf.writeVarInt(pkt.seq);
+        pkt.rects.write(buf);
+    }
+
+    public static CanvasPaintPacket decode(PacketBuffer buf) {
+        CanvasPaintPacket result = new CanvasPaintPacket();
+        try {
+            result.entityId = buf.readVarInt();
+            result.seq = buf.readVarInt();
+            result.rects = CanvasRects.read(buf);
+            if(result.rects == null){
+                System.err.println("Invalid pixel data in CanvasPaintPacket");
+                return null;
+            }
+        } catch (IndexOutOfBoundsException ioe) {
+            System.err.println("Exception while reading CanvasPaintPacket: " + ioe);
+            return null;
+        }
+        result.messageIsValid = true;
+        return result;
+    }
+
+    public int getEntityId() {
+        return entityId;
+    }
+
+    public int getSeq() {
+        return seq;
+    }
+
+    public CanvasRects getRects() {
+        return rects;
+    }
+
+    public boolean isMessageValid() {
+        return messageIsValid;
+    }
+}
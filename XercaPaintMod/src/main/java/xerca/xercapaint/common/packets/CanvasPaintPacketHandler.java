@@ -0,0 +1,42 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraftforge.fml.network.NetworkEvent;
+import net.minecraftforge.fml.network.PacketDistributor;
+import xerca.xercapaint.common.CanvasId;
+import xerca.xercapaint.common.XercaPaint;
+import xerca.xercapaint.common.entity.CanvasPaintSessions;
+import xerca.xercapaint.common.entity.EntityCanvas;
+
+import java.util.function.Supplier;
+
+public class CanvasPaintPacketHandler {
+    public static void handle(final CanvasPaintPacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+        ServerPlayerEntity sendingPlayer = ctx.get().getSender();
+        if (sendingPlayer == null) {
+            System.err.println("EntityPlayerMP was null when CanvasPaintPacket was received");
+            return;
+        }
+
+        final boolean allowed = PacketRateLimiter.CANVAS.tryAcquire(sendingPlayer, 1);
+        ctx.get().enqueueWork(() -> processMessage(message, sendingPlayer, allowed));
+        ctx.get().setPacketHandled(true);
+    }
+
+    private static void processMessage(CanvasPaintPacket msg, ServerPlayerEntity pl, boolean allowed) {
+        Entity entity = pl.world.getEntityByID(msg.getEntityId());
+        if (!(entity instanceof EntityCanvas)) {
+            return;
+        }
+        EntityCanvas canvas = (EntityCanvas) entity;
+        if (!allowed || !CanvasPaintSessions.get(pl.world).paint(canvas, pl, msg.getSeq(), msg.getRects())) {
+            // The painter sends its unconfirmed pixels again
+            XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> pl), new CanvasAckPacket(CanvasId.get(canvas.getCanvasNBT()), -1, false));
+        }
+    }
+}
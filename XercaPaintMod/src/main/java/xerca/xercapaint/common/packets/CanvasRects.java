@@ -0,0 +1,124 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+import xerca.xercapaint.common.CanvasPixelCodec;
+import xerca.xercapaint.common.CanvasTiles;
+import xerca.xercapaint.common.CanvasType;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Rectangles of canvas pixels, written as their bounds followed by the pixels of all of them in one encoded array
+ */
+public class CanvasRects {
+    // Rectangle bounds, four ints (x, y, width, height) per rectangle
+    private int[] bounds = new int[16];
+    private int[] pixels = new int[256];
+    private int count = 0;
+    private int pixelCount = 0;
+
+    /**
+     * Copies a rectangle out of canvas pixels
+     */
+    public void add(int x, int y, int width, int height, int[] source, int sourceWidth) {
+        if (bounds.length < (count + 1) * 4) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+        if (pixels.length < pixelCount + width * height) {
+            pixels = Arrays.copyOf(pixels, Math.max(pixels.length * 2, pixelCount + width * height));
+        }
+        bounds[count * 4] = x;
+        bounds[count * 4 + 1] = y;
+        bounds[count * 4 + 2] = width;
+        bounds[count * 4 + 3] = height;
+        for (int i = 0; i < height; i++) {
+            System.arraycopy(source, (y + i) * sourceWidth + x, pixels, pixelCount + i * width, width);
+        }
+        pixelCount += width * height;
+        count++;
+    }
+
+    /**
+     * Copies the rectangles into canvas pixels
+     */
+    public void apply(int[] target, int targetWidth) {
+        int offset = 0;
+        for (int r = 0; r < count; r++) {
+            int x = bounds[r * 4], y = bounds[r * 4 + 1], width = bounds[r * 4 + 2], height = bounds[r * 4 + 3];
+            for (int i = 0; i < height; i++) {
+                System.arraycopy(pixels, offset + i * width, target, (y + i) * targetWidth + x, width);
+            }
+            offset += width * height;
+        }
+    }
+
+    /**
+     * Calls the visitor with the bounds of every rectangle
+     */
+    public void forEach(CanvasTiles.Visitor visitor) {
+        for (int r = 0; r < count; r++) {
+            visitor.visit(bounds[r * 4], bounds[r * 4 + 1], bounds[r * 4 + 2], bounds[r * 4 + 3]);
+        }
+    }
+
+    /**
+     * True if every rectangle is inside a canvas of the given size
+     */
+    public boolean fits(int canvasWidth, int canvasHeight) {
+        for (int r = 0; r < count; r++) {
+            if (bounds[r * 4] + bounds[r * 4 + 2] > canvasWidth || bounds[r * 4 + 1] + bounds[r * 4 + 3] > canvasHeight) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public void write(PacketBuffer buf) {
+        buf.writeVarInt(count);
+        for (int i = 0; i < count * 4; i++) {
+            buf.writeByte(bounds[i]);
+        }
+        buf.writeByteArray(CanvasPixelCodec.encode(Arrays.copyOf(pixels, pixelCount)));
+    }
+
+    /**
+     * Reads rectangles written by {@link #write}, returns null if they are malformed or outside of the largest canvas size
+     */
+    @Nullable
+    public static CanvasRects read(PacketBuffer buf) {
+        CanvasRects result = new CanvasRects();
+        int count = buf.readVarInt();
+        final int maxArea = CanvasType.getMaxArea();
+        if (count < 0 || count > maxArea) {
+            return null;
+        }
+        result.bounds = new int[Math.max(count * 4, 4)];
+        int area = 0;
+        for (int r = 0; r < count; r++) {
+            for (int i = 0; i < 4; i++) {
+                result.bounds[r * 4 + i] = buf.readUnsignedByte();
+            }
+            int width = result.bounds[r * 4 + 2], height = result.bounds[r * 4 + 3];
+            if (width <= 0 || height <= 0 || result.bounds[r * 4] + width > CanvasType.MAX_SIZE || result.bounds[r * 4 + 1] + height > CanvasType.MAX_SIZE) {
+                return null;
+            }
+            area += width * height;
+            if (area > maxArea) {
+                return null;
+            }
+        }
+        int[] pixels = CanvasPixelCodec.decode(buf.readByteArray(CanvasPixelCodec.maxEncodedSize(area)), area);
+        if (pixels == null || pixels.length != area) {
+            return null;
+        }
+        result.pixels = pixels;
+        result.pixelCount = area;
+        result.count = count;
+        return result;
+    }
+}
@@ -1,10 +1,14 @@
 package xerca.xercapaint.common.packets;
 
+import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.network.PacketBuffer;
+import xerca.xercapaint.common.CanvasPixelCodec;
+import xerca.xercapaint.common.CanvasStore;
 import xerca.xercapaint.common.CanvasType;
 import xerca.xercapaint.common.PaletteUtil;
 
 import java.util.Arrays;
+import java.util.UUID;
 
 public class CanvasUpdatePacket {
     private PaletteUtil.CustomColor[] paletteColors;
@@ -12,15 +16,20 @@ public class CanvasUpdatePacket {
     private boolean signed;
     private String title;
     private CanvasType canvasType;
-    private String name; //name must be unique
+    private UUID canvasId;
     private int version;
     private boolean messageIsValid;
 
-    public CanvasUpdatePacket(int[] pixels, boolean signed, String title, String name, int version, PaletteUtil.CustomColor[] paletteColors, CanvasType canvasType) {
+    // Prepared on the network thread, so the server thread only has to put them into the item tags
+    private byte[] encodedPixels;
+    private String pixelHash;
+    private CompoundNBT paletteTag;
+
+    public CanvasUpdatePacket(int[] pixels, boolean signed, String title, UUID canvasId, int version, PaletteUtil.CustomColor[] paletteColors, CanvasType canvasType) {
         this.paletteColors = Arrays.copyOfRange(paletteColors, 0, 12);
         this.signed = signed;
         this.title = title;
-        this.name = name;
+        this.canvasId = canvasId;
         this.version = version;
         this.canvasType = canvasType;
         int area = CanvasType.getHeight(canvasType)*CanvasType.getWidth(canvasType);
@@ -35,12 +44,12 @@ public class CanvasUpdatePacket {
         for(PaletteUtil.CustomColor color : pkt.paletteColors){
             color.writeToBuffer(buf);
         }
-        buf.writeByte(pkt.canvasType.ordinal());
+        buf.writeByte(pkt.canvasType.getId());
         buf.writeInt(pkt.version);
-        buf.writeString(pkt.name);
+        buf.writeUniqueId(pkt.canvasId);
         buf.writeString(pkt.title);
         buf.writeBoolean(pkt.signed);
-        buf.writeVarIntArray(pkt.pixels);
+        buf.writeByteArray(CanvasPixelCodec.encode(pkt.pixels));
     }
 
     public static CanvasUpdatePacket decode(PacketBuffer buf) {
@@ -52,11 +61,26 @@ public class CanvasUpdatePacket {
             }
             result.canvasType = CanvasType.fromByte(buf.readByte());
             result.version = buf.readInt();
-            result.name = buf.readString(64);
-            result.title = buf.readString(32);
+            result.canvasId = buf.readUniqueId();
+            result.title = buf.readString(32).trim();
             result.signed = buf.readBoolean();
+            if(result.canvasType == null){
+                System.err.println("Invalid canvas type in CanvasUpdatePacket");
+                return null;
+            }
             int area = CanvasType.getHeight(result.canvasType)*CanvasType.getWidth(result.canvasType);
-            result.pixels = buf.readVarIntArray(area);
+            result.pixels = CanvasPixelCodec.decode(buf.readByteArray(CanvasPixelCodec.maxEncodedSize(area)), area);
+            if(result.pixels == null || result.pixels.length != area){
+                System.err.println("Invalid pixel data in CanvasUpdatePacket");
+                return null;
+            }
+            for(PaletteUtil.CustomColor color : result.paletteColors){
+                color.clampValues();
+            }
+            result.paletteTag = new CompoundNBT();
+            PaletteUtil.writeCustomColorArrayToNBT(result.paletteTag, result.paletteColors);
+            result.encodedPixels = CanvasPixelCodec.encode(result.pixels);
+            result.pixelHash = CanvasStore.hashOf(result.encodedPixels);
         } catch (IndexOutOfBoundsException ioe) {
             System.err.println("Exception while reading CanvasUpdatePacket: " + ioe);
             return null;
@@ -81,8 +105,8 @@ public class CanvasUpdatePacket {
         return title;
     }
 
-    public String getName() {
-        return name;
+    public UUID getCanvasId() {
+        return canvasId;
     }
 
     public boolean isMessageValid() {
@@ -96,4 +120,16 @@ public class CanvasUpdatePacket {
     public CanvasType getCanvasType() {
         return canvasType;
     }
+
+    public byte[] getEncodedPixels() {
+        return encodedPixels;
+    }
+
+    public String getPixelHash() {
+        return pixelHash;
+    }
+
+    public CompoundNBT getPaletteTag() {
+        return paletteTag;
+    }
 }
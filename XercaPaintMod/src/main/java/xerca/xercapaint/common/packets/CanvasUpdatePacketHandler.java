@@ -4,14 +4,18 @@ import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraftforge.fml.network.NetworkEvent;
+import net.minecraftforge.fml.network.PacketDistributor;
+import xerca.xercapaint.common.CanvasGallery;
+import xerca.xercapaint.common.CanvasId;
+import xerca.xercapaint.common.CanvasStore;
+import xerca.xercapaint.common.HeldCanvasEdits;
+import xerca.xercapaint.common.PaletteUtil;
 import xerca.xercapaint.common.XercaPaint;
 import xerca.xercapaint.common.item.ItemCanvas;
 import xerca.xercapaint.common.item.Items;
 
 import java.util.function.Supplier;
 
-import static xerca.xercapaint.common.PaletteUtil.writeCustomColorArrayToNBT;
-
 public class CanvasUpdatePacketHandler {
     public static void handle(final CanvasUpdatePacket message, Supplier<NetworkEvent.Context> ctx) {
         if (!message.isMessageValid()) {
@@ -23,6 +27,12 @@ public class CanvasUpdatePacketHandler {
             System.err.println("EntityPlayerMP was null when CanvasUpdatePacket was received");
             return;
         }
+        if (!PacketRateLimiter.CANVAS.tryAcquire(sendingPlayer, 4)) {
+            // The client sends the whole canvas again after a rejection
+            XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> sendingPlayer), new CanvasAckPacket(message.getCanvasId(), -1, false));
+            ctx.get().setPacketHandled(true);
+            return;
+        }
 
         ctx.get().enqueueWork(() -> processMessage(message, sendingPlayer));
         ctx.get().setPacketHandled(true);
@@ -40,22 +50,31 @@ public class CanvasUpdatePacketHandler {
         if (!canvas.isEmpty() && canvas.getItem() instanceof ItemCanvas) {
             CompoundNBT comp = canvas.getOrCreateTag();
 
-            comp.putIntArray("pixels", msg.getPixels());
-            comp.putString("name", msg.getName());
+            // Ignore updates that are older than what the canvas already has
+            if (msg.getCanvasId().equals(CanvasId.get(comp)) && msg.getVersion() <= comp.getInt("v")) {
+                XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> pl), new CanvasAckPacket(msg.getCanvasId(), comp.getInt("v"), false));
+                return;
+            }
+
+            HeldCanvasEdits.discard(pl);
+            CanvasStore.get(pl.server).setEncodedPixels(comp, msg.getEncodedPixels(), msg.getPixelHash());
+            CanvasId.put(comp, msg.getCanvasId());
             comp.putInt("v", msg.getVersion());
             comp.putInt("generation", 0);
             if (msg.getSigned()) {
                 comp.putString("author", pl.getName().getString());
-                comp.putString("title", msg.getTitle().trim());
+                comp.putString("title", msg.getTitle());
                 comp.putInt("generation", 1);
             }
+            CanvasGallery.get(pl.server).recordHeld(comp, ((ItemCanvas) canvas.getItem()).getCanvasType(), pl);
 
             if (!palette.isEmpty() && palette.getItem() == Items.ITEM_PALETTE) {
                 CompoundNBT paletteComp = palette.getOrCreateTag();
-                writeCustomColorArrayToNBT(paletteComp, msg.getPaletteColors());
+                PaletteUtil.putCustomColorArrays(paletteComp, msg.getPaletteTag());
             }
 
-            XercaPaint.LOGGER.debug("Handling canvas update: Name: " + msg.getName() + " V: " + msg.getVersion());
+            XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> pl), new CanvasAckPacket(msg.getCanvasId(), msg.getVersion(), true));
+            XercaPaint.LOGGER.debug("Handling canvas update: Id: " + msg.getCanvasId() + " V: " + msg.getVersion());
         }
     }
 }
@@ -0,0 +1,56 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.entity.player.ServerPlayerEntity;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-player token bucket for packets that cost server tick time. Checked on the network thread, before any work is queued.
+ */
+public class PacketRateLimiter {
+    public static final PacketRateLimiter CANVAS = new PacketRateLimiter(40, 10);
+    // Charged per requested hash, a client joining a world full of canvases asks for many at once
+    public static final PacketRateLimiter CANVAS_DATA = new PacketRateLimiter(128, 64);
+
+    private final int capacity;
+    private final double tokensPerSecond;
+    private final Map<UUID, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private static class Bucket {
+        double tokens;
+        long lastRefill;
+
+        Bucket(double tokens, long lastRefill) {
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+        }
+    }
+
+    PacketRateLimiter(int capacity, double tokensPerSecond) {
+        this.capacity = capacity;
+        this.tokensPerSecond = tokensPerSecond;
+    }
+
+    /**
+     * Takes cost tokens from the player's bucket. Returns false, taking nothing, if there are not enough.
+     */
+    public boolean tryAcquire(ServerPlayerEntity player, int cost) {
+        final long now = System.nanoTime();
+        Bucket bucket = buckets.computeIfAbsent(player.getUniqueID(), id -> new Bucket(capacity, now));
+        synchronized (bucket) {
+            bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.lastRefill) * tokensPerSecond / 1.0e9);
+            bucket.lastRefill = now;
+            if (bucket.tokens < cost) {
+                return false;
+            }
+            bucket.tokens -= cost;
+            return true;
+        }
+    }
+
+    public void remove(UUID player) {
+        buckets.remove(player);
+    }
+}
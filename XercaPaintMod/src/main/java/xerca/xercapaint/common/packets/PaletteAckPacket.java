@@ -0,0 +1,51 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * Tells the client whether a palette update was applied
+ */
+public class PaletteAckPacket {
+    private int updateId;
+    private boolean accepted;
+    private boolean messageIsValid;
+
+    public PaletteAckPacket(int updateId, boolean accepted) {
+        this.updateId = updateId;
+        this.accepted = accepted;
+    }
+
+    public PaletteAckPacket() {
+        this.messageIsValid = false;
+    }
+
+    public static void encode(PaletteAckPacket pkt, PacketBuffer buf) {
+        buf.writeInt(pkt.updateId);
+        buf.writeBoolean(pkt.accepted);
+    }
+
+    public static PaletteAckPacket decode(PacketBuffer buf) {
+        PaletteAckPacket result = new PaletteAckPacket();
+        try {
+            result.updateId = buf.readInt();
+            result.accepted = buf.readBoolean();
+        } catch (IndexOutOfBoundsException ioe) {
+            System.err.println("Exception while reading PaletteAckPacket: " + ioe);
+            return null;
+        }
+        result.messageIsValid = true;
+        return result;
+    }
+
+    public int getUpdateId() {
+        return updateId;
+    }
+
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    public boolean isMessageValid() {
+        return messageIsValid;
+    }
+}
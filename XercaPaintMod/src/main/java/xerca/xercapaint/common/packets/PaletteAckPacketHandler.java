@@ -0,0 +1,25 @@
+package xerca.xercapaint.common.packets;
+
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.fml.network.NetworkEvent;
+import xerca.xercapaint.client.PendingCanvasUpdates;
+
+import java.util.function.Supplier;
+
+public class PaletteAckPacketHandler {
+    public static void handle(final PaletteAckPacket message, Supplier<NetworkEvent.Context> ctx) {
+        if (!message.isMessageValid()) {
+            System.err.println("Packet was invalid");
+            return;
+        }
+
+        ctx.get().enqueueWork(() -> processMessage(message));
+        ctx.get().setPacketHandled(true);
+    }
+
+    @OnlyIn(Dist.CLIENT)
+    private static void processMessage(PaletteAckPacket msg) {
+        PendingCanvasUpdates.onPaletteAck(msg.getUpdateId(), msg.isAccepted());
+    }
+}
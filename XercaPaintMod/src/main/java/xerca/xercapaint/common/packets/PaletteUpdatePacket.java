@@ -1,15 +1,20 @@
 package xerca.xercapaint.common.packets;
 
+import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.network.PacketBuffer;
 import xerca.xercapaint.common.PaletteUtil;
 
 import java.util.Arrays;
 
 public class PaletteUpdatePacket {
+    private int updateId;
     private PaletteUtil.CustomColor[] paletteColors;
     private boolean messageIsValid;
+    // Built on the network thread
+    private CompoundNBT paletteTag;
 
-    public PaletteUpdatePacket(PaletteUtil.CustomColor[] paletteColors) {
+    public PaletteUpdatePacket(int updateId, PaletteUtil.CustomColor[] paletteColors) {
+        this.updateId = updateId;
         this.paletteColors = Arrays.copyOfRange(paletteColors, 0, 12);
     }
 
@@ -18,6 +23,7 @@ public class PaletteUpdatePacket {
     }
 
     public static void encode(PaletteUpdatePacket pkt, PacketBuffer buf) {
+        buf.writeInt(pkt.updateId);
         for(PaletteUtil.CustomColor color : pkt.paletteColors){
             color.writeToBuffer(buf);
         }
@@ -26,10 +32,14 @@ public class PaletteUpdatePacket {
     public static PaletteUpdatePacket decode(PacketBuffer buf) {
         PaletteUpdatePacket result = new PaletteUpdatePacket();
         try {
+            result.updateId = buf.readInt();
             result.paletteColors = new PaletteUtil.CustomColor[12];
             for(int i=0; i<result.paletteColors.length; i++){
                 result.paletteColors[i] = new PaletteUtil.CustomColor(buf);
+                result.paletteColors[i].clampValues();
             }
+            result.paletteTag = new CompoundNBT();
+            PaletteUtil.writeCustomColorArrayToNBT(result.paletteTag, result.paletteColors);
         } catch (IndexOutOfBoundsException ioe) {
             System.err.println("Exception while reading MusicUpdatePacket: " + ioe);
             return null;
@@ -38,10 +48,18 @@ public class PaletteUpdatePacket {
         return result;
     }
 
+    public int getUpdateId() {
+        return updateId;
+    }
+
     public PaletteUtil.CustomColor[] getPaletteColors() {
         return paletteColors;
     }
 
+    public CompoundNBT getPaletteTag() {
+        return paletteTag;
+    }
+
     public boolean isMessageValid() {
         return messageIsValid;
     }
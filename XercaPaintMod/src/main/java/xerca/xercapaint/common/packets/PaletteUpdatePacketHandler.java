@@ -4,12 +4,13 @@ import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundNBT;
 import net.minecraftforge.fml.network.NetworkEvent;
+import net.minecraftforge.fml.network.PacketDistributor;
+import xerca.xercapaint.common.PaletteUtil;
+import xerca.xercapaint.common.XercaPaint;
 import xerca.xercapaint.common.item.Items;
 
 import java.util.function.Supplier;
 
-import static xerca.xercapaint.common.PaletteUtil.writeCustomColorArrayToNBT;
-
 public class PaletteUpdatePacketHandler {
     public static void handle(final PaletteUpdatePacket message, Supplier<NetworkEvent.Context> ctx) {
         if (!message.isMessageValid()) {
@@ -21,6 +22,12 @@ public class PaletteUpdatePacketHandler {
             System.err.println("EntityPlayerMP was null when PaletteUpdatePacket was received");
             return;
         }
+        if (!PacketRateLimiter.CANVAS.tryAcquire(sendingPlayer, 1)) {
+            // The client sends the palette again after a rejection
+            XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> sendingPlayer), new PaletteAckPacket(message.getUpdateId(), false));
+            ctx.get().setPacketHandled(true);
+            return;
+        }
 
         ctx.get().enqueueWork(() -> processMessage(message, sendingPlayer));
         ctx.get().setPacketHandled(true);
@@ -31,7 +38,9 @@ public class PaletteUpdatePacketHandler {
 
         if (!palette.isEmpty() && palette.getItem() == Items.ITEM_PALETTE) {
             CompoundNBT paletteComp = palette.getOrCreateTag();
-            writeCustomColorArrayToNBT(paletteComp, msg.getPaletteColors());
+            PaletteUtil.putCustomColorArrays(paletteComp, msg.getPaletteTag());
         }
+        // Not holding a palette anymore is not worth another try
+        XercaPaint.NETWORK_HANDLER.send(PacketDistributor.PLAYER.with(() -> pl), new PaletteAckPacket(msg.getUpdateId(), true));
     }
 }
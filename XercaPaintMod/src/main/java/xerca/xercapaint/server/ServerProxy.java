@@ -2,7 +2,11 @@ package xerca.xercapaint.server;
 
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.nbt.CompoundNBT;
+import xerca.xercapaint.common.CanvasStore;
 import xerca.xercapaint.common.Proxy;
+import xerca.xercapaint.common.entity.EntityCanvas;
+
+import javax.annotation.Nullable;
 
 public class ServerProxy extends Proxy {
 
@@ -15,4 +19,20 @@ public class ServerProxy extends Proxy {
     public void showCanvasGui(PlayerEntity player) {
 
     }
+
+    @Override
+    public void showPlacedCanvasGui(PlayerEntity player, EntityCanvas canvas) {
+
+    }
+
+    @Nullable
+    @Override
+    public byte[] getCanvasData(String hash) {
+        return CanvasStore.lookup(hash);
+    }
+
+    @Override
+    public boolean cacheCanvasData(String hash, byte[] data) {
+        return false;
+    }
 }
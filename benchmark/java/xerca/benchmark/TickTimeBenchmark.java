@@ -0,0 +1,126 @@
+package xerca.benchmark;
+
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.util.text.StringTextComponent;
+import net.minecraft.world.dimension.DimensionType;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.TickEvent;
+
+/**
+ * Shared part of the in-game benchmarks of the mods, which run on the benchmarkServer run of each mod.
+ * A run measures the overworld tick time for measuredTicks ticks, places count objects, lets them settle for settleTicks,
+ * measures again, reports both and removes the objects. Subclasses place, report and remove, and forward the world ticks.
+ * The sources are shared by the benchmark source sets of the mods, they are not part of any mod jar.
+ */
+public abstract class TickTimeBenchmark {
+    protected static final int measuredTicks = 200;
+    private static final int settleTicks = 20;
+
+    private enum Phase {IDLE, BASELINE, SETTLE, LOADED}
+
+    private final String what;
+    private Phase phase = Phase.IDLE;
+    private CommandSource source;
+    private int count;
+    private int ticksLeft;
+    private long tickStart;
+    private long baselineNanos;
+    private long loadedNanos;
+
+    /**
+     * what names the placed objects in messages, e.g. "canvases"
+     */
+    protected TickTimeBenchmark(String what) {
+        this.what = what;
+    }
+
+    /**
+     * The "benchmark &lt;what&gt; &lt;count&gt;" part of the command, for the root command of the mod
+     */
+    public LiteralArgumentBuilder<CommandSource> command(int maxCount) {
+        return Commands.literal("benchmark")
+                .then(Commands.literal(what)
+                        .then(Commands.argument("count", IntegerArgumentType.integer(1, maxCount))
+                                .executes(context -> start(context.getSource(), IntegerArgumentType.getInteger(context, "count")))));
+    }
+
+    private int start(CommandSource commandSource, int objectCount) {
+        if (phase != Phase.IDLE) {
+            commandSource.sendErrorMessage(new StringTextComponent("A benchmark of " + what + " is already running"));
+            return 0;
+        }
+        source = commandSource;
+        count = objectCount;
+        baselineNanos = 0;
+        loadedNanos = 0;
+        ticksLeft = measuredTicks;
+        phase = Phase.BASELINE;
+        feedback("Measuring " + measuredTicks + " ticks without " + what);
+        return 1;
+    }
+
+    public void onWorldTick(TickEvent.WorldTickEvent event) {
+        if (phase == Phase.IDLE || event.world.isRemote || event.world.getDimension().getType() != DimensionType.OVERWORLD) {
+            return;
+        }
+        if (event.phase == TickEvent.Phase.START) {
+            tickStart = System.nanoTime();
+            return;
+        }
+        final long tickNanos = System.nanoTime() - tickStart;
+        final ServerWorld world = (ServerWorld) event.world;
+        switch (phase) {
+            case BASELINE:
+                baselineNanos += tickNanos;
+                if (--ticksLeft == 0) {
+                    int placed = place(world, count);
+                    feedback("Placed " + placed + " " + what + ", measuring " + measuredTicks + " ticks");
+                    ticksLeft = settleTicks;
+                    phase = Phase.SETTLE;
+                }
+                break;
+            case SETTLE:
+                if (--ticksLeft == 0) {
+                    ticksLeft = measuredTicks;
+                    phase = Phase.LOADED;
+                }
+                break;
+            case LOADED:
+                loadedNanos += tickNanos;
+                if (--ticksLeft == 0) {
+                    report(world, baselineNanos / 1.0e6 / measuredTicks, loadedNanos / 1.0e6 / measuredTicks);
+                    remove(world);
+                    source = null;
+                    phase = Phase.IDLE;
+                }
+                break;
+        }
+    }
+
+    protected void feedback(String message) {
+        source.sendFeedback(new StringTextComponent(message), false);
+    }
+
+    /**
+     * Formats the two tick times and the cost per object
+     */
+    protected String tickTimes(double baselineMillis, double loadedMillis, int placed) {
+        return String.format("Overworld tick: %.3f ms without %s, %.3f ms with %d idle %s (%.2f us each)",
+                baselineMillis, what, loadedMillis, placed, what, placed == 0 ? 0 : (loadedMillis - baselineMillis) * 1000 / placed);
+    }
+
+    /**
+     * Places up to count objects and returns how many were placed
+     */
+    protected abstract int place(ServerWorld world, int count);
+
+    /**
+     * Reports the results, tick times are in milliseconds per tick
+     */
+    protected abstract void report(ServerWorld world, double baselineMillis, double loadedMillis);
+
+    protected abstract void remove(ServerWorld world);
+}